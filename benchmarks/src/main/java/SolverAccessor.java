@@ -0,0 +1,194 @@
+import benchmarks.Solver;
+
+/**
+ * The solver for the benchmarks (see {@link Solver}): each method casts its arguments back to the solver
+ * classes and calls them, package private members included.
+ *
+ * @author Harry Long
+ *
+ */
+public class SolverAccessor implements Solver {
+
+	/**
+	 * Size of the square the cities are generated in
+	 */
+	private static final int MAP_SIZE = 1000;
+
+	@Override
+	public void configure(String algorithm, int populationSize)
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		config.setAlgorithm(ConfigurationManager.EvolutionaryAlgorithm.valueOf(algorithm));
+		config.setPopulationSize(populationSize);
+		config.setChildrenPerGeneration(populationSize * 7 / 10); // Same ratio as the defaults
+		config.setThreads(1);
+		config.setSeed(SEED);
+		Utils.setThreadRandom(Rng.stream(SEED, Rng.MAIN_STREAM));
+	}
+
+	@Override
+	public void setStateTableLayout(String layout)
+	{
+		ConfigurationManager.instance().setStateTableLayout(StateTable.Layout.valueOf(layout));
+	}
+
+	@Override
+	public void setMutationMove(String move)
+	{
+		ConfigurationManager.instance().setMutationMove(ConfigurationManager.MutationMove.valueOf(move));
+	}
+
+	@Override
+	public int getChildrenPerGeneration()
+	{
+		return ConfigurationManager.instance().getChildrenPerGeneration();
+	}
+
+	@Override
+	public Object generateCities(int cityCount)
+	{
+		return Utils.generateCityList(cityCount, MAP_SIZE, MAP_SIZE);
+	}
+
+	@Override
+	public Object[] generatePopulation(Object cities, int populationSize)
+	{
+		Chromosome[] chromosomes = new Chromosome[populationSize];
+		for(int i = 0; i < populationSize; ++i)
+		{
+			switch(ConfigurationManager.instance().getAlgorithm()){
+			case EVOLUTIONARY_PROGRAMMING:
+				chromosomes[i] = new EPChromosome((City[]) cities);
+				break;
+			case LIN_KERNIGHAN:
+				chromosomes[i] = new LKChromosome((City[]) cities);
+				break;
+			case GENETIC_ALGORITHM:
+			default:
+				chromosomes[i] = new GAChromosome((City[]) cities);
+				break;
+			}
+			chromosomes[i].calculateCost();
+		}
+		return chromosomes;
+	}
+
+	@Override
+	public Object copy(Object chromosome)
+	{
+		return ((Chromosome) chromosome).copy();
+	}
+
+	@Override
+	public double getCost(Object chromosome)
+	{
+		return ((Chromosome) chromosome).getCost();
+	}
+
+	@Override
+	public Object newEvaluator()
+	{
+		return new ParallelEvaluator(ConfigurationManager.instance().getThreads());
+	}
+
+	@Override
+	public void shutdown(Object evaluator)
+	{
+		((ParallelEvaluator) evaluator).shutdown();
+	}
+
+	@Override
+	public Object newIsland(Object cities, int populationSize, Object evaluator)
+	{
+		return new Island((City[]) cities, populationSize, ConfigurationManager.instance().getChildrenPerGeneration(),
+				(ParallelEvaluator) evaluator, Rng.stream(SEED, Rng.FIRST_ISLAND_STREAM));
+	}
+
+	@Override
+	public Object newTournamentSelector()
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		return new TournamentSelector(config.getK(), config.getProbabilityOfSelectingFittestParent());
+	}
+
+	@Override
+	public Object newRouletteWheel()
+	{
+		return new RouletteWheel();
+	}
+
+	@Override
+	public double calculateCost(Object chromosome)
+	{
+		((Chromosome) chromosome).calculateCost();
+		return ((Chromosome) chromosome).getCost();
+	}
+
+	@Override
+	public void sortChromosomes(Object[] chromosomes)
+	{
+		Chromosome.sortChromosomes((Chromosome[]) chromosomes);
+	}
+
+	@Override
+	public void calculateCityDistances(Object cities, String layout)
+	{
+		City.calculateCityDistances((City[]) cities, DistanceMatrix.Layout.valueOf(layout),
+				ConfigurationManager.instance().getCandidateListSize());
+	}
+
+	@Override
+	public void generateCityList(Object epChromosome)
+	{
+		((EPChromosome) epChromosome).generateCityList();
+	}
+
+	@Override
+	public void mateInto(Object husband, Object wife, Object firstChild, Object secondChild)
+	{
+		((Chromosome) husband).mateInto((Chromosome) wife, (Chromosome) firstChild, (Chromosome) secondChild);
+	}
+
+	@Override
+	public Object[] mate(Object husband, Object wife)
+	{
+		return ((Chromosome) husband).mate((Chromosome) wife);
+	}
+
+	@Override
+	public void mutate(Object chromosome)
+	{
+		((Chromosome) chromosome).mutate();
+	}
+
+	@Override
+	public void evolve(Object island)
+	{
+		((Island) island).evolve();
+	}
+
+	@Override
+	public void selectByTournament(Object selector, Object[] chromosomes, int count, Object[] winners, Object[] losers)
+	{
+		((TournamentSelector) selector).select((Chromosome[]) chromosomes, count, winners.length, (Chromosome[]) winners,
+				(Chromosome[]) losers);
+	}
+
+	@Override
+	public void resetRouletteWheel(Object wheel, double[] weights, int count)
+	{
+		((RouletteWheel) wheel).reset(weights, count);
+	}
+
+	@Override
+	public int spinWithoutReplacement(Object wheel)
+	{
+		return ((RouletteWheel) wheel).spinWithoutReplacement();
+	}
+
+	@Override
+	public void spinUniversal(Object wheel, int n, int[] selected)
+	{
+		((RouletteWheel) wheel).spinUniversal(n, selected);
+	}
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Evaluating a tour and ranking a population, common to both algorithms
+ *
+ * @author Harry Long
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChromosomeBenchmark {
+
+	@Param({"25", "200", "1000"})
+	public int cityCount;
+
+	@Param({"100", "1000"})
+	public int populationSize;
+
+	private final Solver solver = Solver.get();
+	private Object chromosome;
+	// The unsorted population is copied before each sort, so every sort starts from the same order
+	private Object[] population;
+	private Object[] sorted;
+
+	@Setup
+	public void setUp()
+	{
+		solver.configure("GENETIC_ALGORITHM", populationSize);
+		population = solver.generatePopulation(solver.generateCities(cityCount), populationSize);
+		sorted = population.clone();
+		chromosome = population[0];
+	}
+
+	@Benchmark
+	public double calculateCost()
+	{
+		return solver.calculateCost(chromosome);
+	}
+
+	@Benchmark
+	public Object sortChromosomes()
+	{
+		System.arraycopy(population, 0, sorted, 0, populationSize);
+		solver.sortChromosomes(sorted);
+		return sorted;
+	}
+}
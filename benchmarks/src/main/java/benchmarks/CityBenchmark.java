@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the distance matrix and candidate lists of a map
+ *
+ * @author Harry Long
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CityBenchmark {
+
+	@Param({"25", "200", "1000"})
+	public int cityCount;
+
+	@Param({"INT", "FLOAT", "QUANTIZED"})
+	public String distanceLayout;
+
+	private final Solver solver = Solver.get();
+	private Object cities;
+
+	@Setup
+	public void setUp()
+	{
+		solver.configure("GENETIC_ALGORITHM", 1);
+		cities = solver.generateCities(cityCount);
+	}
+
+	@Benchmark
+	public Object calculateCityDistances()
+	{
+		solver.calculateCityDistances(cities, distanceLayout);
+		return cities;
+	}
+}
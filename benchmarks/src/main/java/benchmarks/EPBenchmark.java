@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operators of Evolutionary Programming: decoding a state table, mating and mutating state tables
+ *
+ * @author Harry Long
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EPBenchmark {
+
+	@Param({"25", "200", "1000"})
+	public int cityCount;
+
+	@Param({"CHAR", "PACKED"})
+	public String stateTableLayout;
+
+	private final Solver solver = Solver.get();
+	private Object husband, wife;
+	private Object firstChild, secondChild;
+
+	@Setup
+	public void setUp()
+	{
+		solver.configure("EVOLUTIONARY_PROGRAMMING", 2);
+		solver.setStateTableLayout(stateTableLayout);
+		Object[] parents = solver.generatePopulation(solver.generateCities(cityCount), 2);
+		husband = parents[0];
+		wife = parents[1];
+		firstChild = solver.copy(husband);
+		secondChild = solver.copy(wife);
+	}
+
+	@Benchmark
+	public Object generateCityList()
+	{
+		solver.generateCityList(husband);
+		return husband;
+	}
+
+	@Benchmark
+	public Object mateInto()
+	{
+		solver.mateInto(husband, wife, firstChild, secondChild);
+		return firstChild;
+	}
+
+	@Benchmark
+	public Object mate()
+	{
+		return solver.mate(husband, wife);
+	}
+
+	@Benchmark
+	public Object mutate()
+	{
+		solver.mutate(firstChild);
+		return firstChild;
+	}
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operators of the Genetic Algorithm. mateInto includes the cycle search of the crossover, mate also allocates the children
+ *
+ * @author Harry Long
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GABenchmark {
+
+	@Param({"25", "200", "1000"})
+	public int cityCount;
+
+	@Param({"SWAP", "INVERSION", "INSERTION"})
+	public String mutationMove;
+
+	private final Solver solver = Solver.get();
+	private Object husband, wife;
+	private Object firstChild, secondChild;
+
+	@Setup
+	public void setUp()
+	{
+		solver.configure("GENETIC_ALGORITHM", 2);
+		solver.setMutationMove(mutationMove);
+		Object[] parents = solver.generatePopulation(solver.generateCities(cityCount), 2);
+		husband = parents[0];
+		wife = parents[1];
+		firstChild = solver.copy(husband);
+		secondChild = solver.copy(wife);
+	}
+
+	@Benchmark
+	public Object mateInto()
+	{
+		solver.mateInto(husband, wife, firstChild, secondChild);
+		return firstChild;
+	}
+
+	@Benchmark
+	public Object mate()
+	{
+		return solver.mate(husband, wife);
+	}
+
+	@Benchmark
+	public Object mutate()
+	{
+		solver.mutate(firstChild);
+		return firstChild;
+	}
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole generation of each algorithm, on a single island and thread
+ *
+ * @author Harry Long
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark {
+
+	@Param({"GENETIC_ALGORITHM", "EVOLUTIONARY_PROGRAMMING", "LIN_KERNIGHAN"})
+	public String algorithm;
+
+	@Param({"25", "200", "1000"})
+	public int cityCount;
+
+	@Param({"100", "1000"})
+	public int populationSize;
+
+	private final Solver solver = Solver.get();
+	private Object evaluator;
+	// Keeps evolving between runs of the benchmark, as in a run
+	private Object island;
+
+	@Setup
+	public void setUp()
+	{
+		solver.configure(algorithm, populationSize);
+		evaluator = solver.newEvaluator();
+		island = solver.newIsland(solver.generateCities(cityCount), populationSize, evaluator);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		solver.shutdown(evaluator);
+	}
+
+	@Benchmark
+	public Object generation()
+	{
+		solver.evolve(island);
+		return island;
+	}
+}
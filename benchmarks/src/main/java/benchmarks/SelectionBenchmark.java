@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selection of the parents: the tournaments of EP and the roulette wheel of GA
+ *
+ * @author Harry Long
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int populationSize;
+
+	private final Solver solver = Solver.get();
+	private Object[] population;
+	private Object[] winners, losers;
+	private Object tournamentSelector;
+	private Object rouletteWheel;
+	private double[] weights;
+	private int[] selected;
+
+	@Setup
+	public void setUp()
+	{
+		solver.configure("GENETIC_ALGORITHM", populationSize);
+		population = solver.generatePopulation(solver.generateCities(25), populationSize);
+		int nParents = solver.getChildrenPerGeneration();
+		winners = Arrays.copyOf(population, nParents);
+		losers = population.clone();
+		tournamentSelector = solver.newTournamentSelector();
+		rouletteWheel = solver.newRouletteWheel();
+		weights = new double[populationSize];
+		for(int i = 0; i < populationSize; ++i)
+			weights[i] = 1 / solver.getCost(population[i]);
+		selected = new int[nParents];
+	}
+
+	@Benchmark
+	public Object tournament()
+	{
+		solver.selectByTournament(tournamentSelector, population, populationSize, winners, losers);
+		return winners;
+	}
+
+	@Benchmark
+	public int rouletteWithoutReplacement()
+	{
+		solver.resetRouletteWheel(rouletteWheel, weights, populationSize);
+		int last = 0;
+		for(int i = 0; i < selected.length; ++i)
+			last = solver.spinWithoutReplacement(rouletteWheel);
+		return last;
+	}
+
+	@Benchmark
+	public Object rouletteUniversal()
+	{
+		solver.resetRouletteWheel(rouletteWheel, weights, populationSize);
+		solver.spinUniversal(rouletteWheel, selected.length, selected);
+		return selected;
+	}
+}
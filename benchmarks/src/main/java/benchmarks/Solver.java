@@ -0,0 +1,108 @@
+package benchmarks;
+
+import java.util.ServiceLoader;
+
+/**
+ * The solver as seen by the benchmarks. The solver lives in the default package, which classes of a named
+ * package can't reference, while JMH requires benchmarks to be in a named package. This accessor is therefore
+ * implemented in the default package (SolverAccessor), registered as a service, and solver objects are passed
+ * through it as Object.
+ *
+ * @author Harry Long
+ *
+ */
+public interface Solver {
+
+	/**
+	 * Seed of every benchmark, so all runs measure the same maps and populations
+	 */
+	long SEED = 42;
+
+	/**
+	 * @return: The accessor of the solver
+	 */
+	static Solver get()
+	{
+		for(Solver solver : ServiceLoader.load(Solver.class))
+			return solver;
+		System.err.println("No accessor of the solver is registered (META-INF/services/benchmarks.Solver). Exiting");
+		System.exit(1);
+		return null;
+	}
+
+	/**
+	 * Configures a run on a single thread, and seeds the random generator of the calling thread.
+	 * Benchmarks run on their own threads, so each set up calls it
+	 * @param algorithm: The name of the algorithm benchmarked
+	 * @param populationSize: The number of chromosomes per generation
+	 */
+	void configure(String algorithm, int populationSize);
+
+	void setStateTableLayout(String layout);
+
+	void setMutationMove(String move);
+
+	int getChildrenPerGeneration();
+
+	/**
+	 * @param cityCount: The number of cities
+	 * @return: Random cities (City[]), with their distances calculated
+	 */
+	Object generateCities(int cityCount);
+
+	/**
+	 * @param cities: The cities
+	 * @param populationSize: The number of chromosomes
+	 * @return: A random and evaluated population (Chromosome[]) of the configured algorithm
+	 */
+	Object[] generatePopulation(Object cities, int populationSize);
+
+	Object copy(Object chromosome);
+
+	double getCost(Object chromosome);
+
+	/**
+	 * @return: An evaluator running on the configured number of threads, to be shut down
+	 */
+	Object newEvaluator();
+
+	void shutdown(Object evaluator);
+
+	/**
+	 * @return: An island of the configured algorithm, seeded as the first island of a run
+	 */
+	Object newIsland(Object cities, int populationSize, Object evaluator);
+
+	Object newTournamentSelector();
+
+	Object newRouletteWheel();
+
+	// The operations measured
+
+	double calculateCost(Object chromosome);
+
+	void sortChromosomes(Object[] chromosomes);
+
+	/**
+	 * Builds the distance matrix and the candidate lists of the cities, with the configured candidate count
+	 */
+	void calculateCityDistances(Object cities, String layout);
+
+	void generateCityList(Object epChromosome);
+
+	void mateInto(Object husband, Object wife, Object firstChild, Object secondChild);
+
+	Object[] mate(Object husband, Object wife);
+
+	void mutate(Object chromosome);
+
+	void evolve(Object island);
+
+	void selectByTournament(Object selector, Object[] chromosomes, int count, Object[] winners, Object[] losers);
+
+	void resetRouletteWheel(Object wheel, double[] weights, int count);
+
+	int spinWithoutReplacement(Object wheel);
+
+	void spinUniversal(Object wheel, int n, int[] selected);
+}
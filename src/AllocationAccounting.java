@@ -0,0 +1,260 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Accounts the memory allocated and the garbage collections of the run, when enabled (see
+ * {@link ConfigurationManager#isAllocationAccounting()}), so allocation budgets can be set and checked:
+ *   - per generation: the bytes allocated by all threads, and the collections and their time
+ *   - per phase (see {@link Instrumentation.Phase}): the bytes allocated by the thread running the phase. The phases
+ *     timed per chromosome account the worker threads, so GENERATION and CHILDREN only count what their own
+ *     thread allocated. Collections are counted for the phases of the islands only
+ *   - per evaluation: the bytes allocated per generation over the chromosomes evaluated
+ * It also breaks down the memory footprint of the solver (see {@link #footprint(City[], IslandEngine)}).
+ *
+ * Allocations are read from the thread MXBean of HotSpot (getThreadAllocatedBytes), and collections from the garbage
+ * collector MXBeans. Phases are accounted by {@link Instrumentation}, so accounting needs it enabled
+ * (see {@link Instrumentation#ENABLED}). Reading the allocations costs more than reading the time: leave it off when
+ * timing the solver. Reading those of all threads allocates a couple of KB, included in the bytes per generation.
+ *
+ * @author Harry Long
+ *
+ */
+public class AllocationAccounting {
+
+	private static final ThreadMXBean threads = getThreadMXBean();
+	private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+	private static boolean enabled;
+
+	// Per phase
+	private static final AtomicLongArray phaseBytes = new AtomicLongArray(Instrumentation.Phase.values().length);
+	private static final AtomicLongArray phaseCalls = new AtomicLongArray(Instrumentation.Phase.values().length);
+	private static final AtomicLongArray phaseCollections = new AtomicLongArray(Instrumentation.Phase.values().length);
+
+	// Per generation, from the solver thread only
+	private static final Histogram generationBytes = new Histogram();
+	private static long generationCollections, generationCollectionMillis, evaluations;
+	private static long startBytes, startCollections, startCollectionMillis;
+
+	private AllocationAccounting()
+	{
+	}
+
+	private static ThreadMXBean getThreadMXBean()
+	{
+		Object bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof ThreadMXBean && ((ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+			return (ThreadMXBean) bean;
+		return null;
+	}
+
+	/**
+	 * Turns the accounting on or off, and forgets what was accounted so far
+	 * @param enabled: Whether to account
+	 */
+	public static void setEnabled(boolean enabled)
+	{
+		if(enabled && (threads == null || !Instrumentation.ENABLED))
+		{
+			System.err.println(threads == null ? "This JVM doesn't account the memory allocated by threads, allocation accounting is off"
+					: "The instrumentation is off (-Dtsp.instrumentation=false), allocation accounting too");
+			enabled = false;
+		}
+		if(enabled)
+			threads.setThreadAllocatedMemoryEnabled(true);
+		AllocationAccounting.enabled = enabled;
+		reset();
+	}
+
+	public static boolean isEnabled()
+	{
+		return Instrumentation.ENABLED && enabled;
+	}
+
+	/**
+	 * @return: The bytes allocated so far by the current thread, 0 if disabled
+	 */
+	public static long threadAllocated()
+	{
+		return isEnabled() ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	/**
+	 * @return: The bytes allocated so far by all live threads
+	 */
+	private static long totalAllocated()
+	{
+		long total = 0;
+		for(long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			total += Math.max(0, bytes); // -1 for threads which died meanwhile
+		return total;
+	}
+
+	/**
+	 * @return: The number of garbage collections so far, 0 if disabled
+	 */
+	public static long collections()
+	{
+		if(!isEnabled())
+			return 0;
+		long count = 0;
+		for(GarbageCollectorMXBean collector : collectors)
+			count += Math.max(0, collector.getCollectionCount());
+		return count;
+	}
+
+	private static long collectionMillis()
+	{
+		long time = 0;
+		for(GarbageCollectorMXBean collector : collectors)
+			time += Math.max(0, collector.getCollectionTime());
+		return time;
+	}
+
+	/**
+	 * Accounts the bytes allocated by the current thread during a phase
+	 * @param phase: The phase
+	 * @param allocated: The bytes allocated by the thread when the phase started (see {@link #threadAllocated()})
+	 */
+	static void record(Instrumentation.Phase phase, long allocated)
+	{
+		phaseBytes.addAndGet(phase.ordinal(), threadAllocated() - allocated);
+		phaseCalls.incrementAndGet(phase.ordinal());
+	}
+
+	/**
+	 * Accounts the garbage collections which happened during a phase
+	 * @param phase: The phase
+	 * @param collections: The number of collections when the phase started (see {@link #collections()})
+	 */
+	static void recordCollections(Instrumentation.Phase phase, long collections)
+	{
+		phaseCollections.addAndGet(phase.ordinal(), collections() - collections);
+	}
+
+	/**
+	 * Starts accounting a generation of the run, from the solver thread
+	 */
+	public static void startGeneration()
+	{
+		if(!isEnabled())
+			return;
+		startBytes = totalAllocated();
+		startCollections = collections();
+		startCollectionMillis = collectionMillis();
+	}
+
+	/**
+	 * Ends accounting a generation of the run, from the solver thread
+	 * @param evaluated: The number of chromosomes evaluated during the generation
+	 */
+	public static void endGeneration(long evaluated)
+	{
+		if(!isEnabled())
+			return;
+		generationBytes.record(totalAllocated() - startBytes);
+		generationCollections += collections() - startCollections;
+		generationCollectionMillis += collectionMillis() - startCollectionMillis;
+		evaluations += evaluated;
+	}
+
+	/**
+	 * @return: The bytes allocated during each phase so far, in the order of {@link Instrumentation.Phase}
+	 */
+	public static long[] getPhaseBytes()
+	{
+		long[] bytes = new long[phaseBytes.length()];
+		for(int i = 0; i < bytes.length; ++i)
+			bytes[i] = phaseBytes.get(i);
+		return bytes;
+	}
+
+	/**
+	 * @return: The histogram of the bytes allocated per generation
+	 */
+	public static Histogram getGenerationBytes()
+	{
+		return generationBytes;
+	}
+
+	/**
+	 * @return: The bytes allocated per chromosome evaluated, 0 before any evaluation
+	 */
+	public static double getBytesPerEvaluation()
+	{
+		return evaluations == 0 ? 0 : (double) generationBytes.getTotal() / evaluations;
+	}
+
+	/**
+	 * Forgets what was accounted so far
+	 */
+	public static void reset()
+	{
+		for(int i = 0; i < phaseBytes.length(); ++i)
+		{
+			phaseBytes.set(i, 0);
+			phaseCalls.set(i, 0);
+			phaseCollections.set(i, 0);
+		}
+		generationBytes.reset();
+		generationCollections = generationCollectionMillis = evaluations = 0;
+	}
+
+	/**
+	 * @return: The allocations and collections per generation, per evaluation and per phase
+	 */
+	public static String report()
+	{
+		long generations = generationBytes.getCount();
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("Allocations: %.0f bytes per generation (median %d, 99th percentile %d, max %d), %.0f bytes per evaluation%n",
+				generationBytes.getMean(), generationBytes.getValueAtPercentile(50), generationBytes.getValueAtPercentile(99),
+				generationBytes.getMax(), getBytesPerEvaluation()));
+		builder.append(String.format("Garbage collections: %d (%d ms), %.3f per generation%n", generationCollections, generationCollectionMillis,
+				generations == 0 ? 0 : (double) generationCollections / generations));
+		builder.append("Allocations per phase (bytes, bytes per call, collections):");
+		for(Instrumentation.Phase phase : Instrumentation.Phase.values())
+		{
+			long calls = phaseCalls.get(phase.ordinal());
+			if(calls == 0)
+				continue;
+			builder.append(String.format("%n  %-18s %14d %12.0f %6d", phase, phaseBytes.get(phase.ordinal()),
+					(double) phaseBytes.get(phase.ordinal()) / calls, phaseCollections.get(phase.ordinal())));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Breaks down the memory footprint of the solver: the payload of its main arrays, without object headers
+	 * @param cities: The cities of the map
+	 * @param islands: The islands being evolved
+	 * @return: The footprint of the distances, candidate lists, fitness cache, chromosomes and state tables
+	 */
+	public static String footprint(City[] cities, IslandEngine islands)
+	{
+		DistanceMatrix distances = cities[0].getDistanceMatrix();
+		CandidateLists candidates = cities[0].getCandidateLists();
+		FitnessCache cache = FitnessCache.getCurrent();
+		long[] footprints = {
+				distances != null ? distances.getFootprint() : 0,
+				candidates != null ? candidates.getFootprint() : 0,
+				cache != null ? cache.getFootprint() : 0,
+				islands.getFootprint(),
+				islands.getStateTableFootprint() };
+		String[] names = { "Distances", "Candidate lists", "Fitness cache",
+				"Chromosomes (" + islands.getAllocatedChromosomes() + ")", "State tables" };
+		StringBuilder builder = new StringBuilder("Footprint (bytes):");
+		long total = 0;
+		for(int i = 0; i < footprints.length; ++i)
+		{
+			builder.append(String.format("%n  %-18s %14d", names[i], footprints[i]));
+			total += footprints[i];
+		}
+		builder.append(String.format("%n  %-18s %14d", "Total", total));
+		return builder.toString();
+	}
+}
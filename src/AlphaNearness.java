@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+/**
+ * Candidate cities ranked by alpha-nearness rather than by distance.
+ *
+ * The alpha value of an edge (i,j) is how much longer a minimum spanning tree forced to contain it would be:
+ * its length minus the longest edge on the path from i to j in the tree (0 for the edges of the tree). Edges
+ * of optimal tours tend to have small alpha values much more often than they are among the shortest, so
+ * alpha-nearness candidates let a local search consider fewer, better edges (Helsgaun).
+ *
+ * To scale to large maps, the tree is the minimum spanning forest of the candidate graph (the k closest cities
+ * of each city, see {@link CandidateLists}), and only these k cities are ranked by alpha. The longest edge on a
+ * tree path is found by binary lifting in O(log n). Cities of different trees get their distance as alpha.
+ *
+ * @author Harry Long
+ *
+ */
+public class AlphaNearness {
+
+	private final int cityCount;
+
+	/**
+	 * Number of candidates per city
+	 */
+	private final int k;
+
+	/**
+	 * Row i holds the candidates of city i, lowest alpha first (ties broken by distance)
+	 */
+	private final int[] candidates;
+
+	// Rooted spanning forest: depth of each city, and for each level j the 2^j-th ancestor and the longest edge up to it
+	private final int[] depth;
+	private final int[] ancestors;
+	private final double[] longestEdges;
+	private final int levels;
+
+	/**
+	 * Builds the alpha-nearness candidates
+	 * @param distances: The distances between the cities
+	 * @param candidateLists: The closest cities of each city, among which the candidates are chosen
+	 * @param k: The number of candidates per city
+	 */
+	AlphaNearness(DistanceMatrix distances, CandidateLists candidateLists, int k)
+	{
+		cityCount = candidateLists.getCityCount();
+		int nearest = candidateLists.getCandidateCount();
+		this.k = Math.min(k, nearest);
+		levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(cityCount));
+		depth = new int[cityCount];
+		ancestors = new int[levels * cityCount];
+		longestEdges = new double[levels * cityCount];
+
+		buildForest(distances, candidateLists, nearest);
+
+		// Rank the closest cities of each city by alpha
+		candidates = new int[cityCount * this.k];
+		double[] alphas = new double[nearest];
+		double[] lengths = new double[nearest];
+		int[] ranked = new int[nearest];
+		for(int city = 0; city < cityCount; ++city)
+		{
+			for(int rank = 0; rank < nearest; ++rank)
+			{
+				int other = candidateLists.getNeighbour(city, rank);
+				double length = distances.getDistance(city, other);
+				double alpha = length - longestEdgeOnPath(city, other);
+				// Insertion sort, the lists are short
+				int i = rank;
+				while(i > 0 && (alphas[i-1] > alpha || (alphas[i-1] == alpha && lengths[i-1] > length)))
+				{
+					alphas[i] = alphas[i-1];
+					lengths[i] = lengths[i-1];
+					ranked[i] = ranked[i-1];
+					--i;
+				}
+				alphas[i] = alpha;
+				lengths[i] = length;
+				ranked[i] = other;
+			}
+			System.arraycopy(ranked, 0, candidates, city * this.k, this.k);
+		}
+	}
+
+	/**
+	 * Kruskal's algorithm over the candidate graph, then roots every tree for the path queries
+	 */
+	private void buildForest(DistanceMatrix distances, CandidateLists candidateLists, int nearest)
+	{
+		// Edges sorted by length: the (non-negative) float length in the high bits keeps the order of the longs
+		long[] edges = new long[cityCount * nearest];
+		for(int city = 0; city < cityCount; ++city)
+		{
+			for(int rank = 0; rank < nearest; ++rank)
+			{
+				float length = (float) distances.getDistance(city, candidateLists.getNeighbour(city, rank));
+				edges[city * nearest + rank] = ((long) Float.floatToIntBits(length) << 32) | (city * nearest + rank);
+			}
+		}
+		Arrays.sort(edges);
+
+		int[] components = new int[cityCount];
+		for(int i = 0; i < cityCount; ++i)
+			components[i] = i;
+		int[] treeFrom = new int[cityCount], treeTo = new int[cityCount];
+		int treeEdges = 0;
+		for(long edge : edges)
+		{
+			int index = (int) edge;
+			int from = index / nearest, to = candidateLists.getNeighbour(from, index % nearest);
+			int a = find(components, from), b = find(components, to);
+			if(a != b)
+			{
+				components[a] = b;
+				treeFrom[treeEdges] = from;
+				treeTo[treeEdges++] = to;
+			}
+		}
+
+		// Adjacency of the forest, flattened
+		int[] offsets = new int[cityCount+1];
+		for(int i = 0; i < treeEdges; ++i)
+		{
+			offsets[treeFrom[i]+1]++;
+			offsets[treeTo[i]+1]++;
+		}
+		for(int i = 0; i < cityCount; ++i)
+			offsets[i+1] += offsets[i];
+		int[] adjacent = new int[2 * treeEdges];
+		int[] next = Arrays.copyOf(offsets, cityCount);
+		for(int i = 0; i < treeEdges; ++i)
+		{
+			adjacent[next[treeFrom[i]]++] = treeTo[i];
+			adjacent[next[treeTo[i]]++] = treeFrom[i];
+		}
+
+		// Breadth first from the root of every tree. A root is its own ancestor, through an edge of length 0
+		boolean[] reached = new boolean[cityCount];
+		int[] queue = new int[cityCount];
+		for(int root = 0; root < cityCount; ++root)
+		{
+			if(reached[root])
+				continue;
+			reached[root] = true;
+			ancestors[root] = root;
+			int head = 0, tail = 0;
+			queue[tail++] = root;
+			while(head < tail)
+			{
+				int city = queue[head++];
+				for(int i = offsets[city]; i < offsets[city+1]; ++i)
+				{
+					int child = adjacent[i];
+					if(reached[child])
+						continue;
+					reached[child] = true;
+					depth[child] = depth[city] + 1;
+					ancestors[child] = city;
+					longestEdges[child] = distances.getDistance(city, child);
+					queue[tail++] = child;
+				}
+			}
+		}
+		for(int level = 1; level < levels; ++level)
+		{
+			int row = level * cityCount, previousRow = row - cityCount;
+			for(int city = 0; city < cityCount; ++city)
+			{
+				int half = ancestors[previousRow + city];
+				ancestors[row + city] = ancestors[previousRow + half];
+				longestEdges[row + city] = Math.max(longestEdges[previousRow + city], longestEdges[previousRow + half]);
+			}
+		}
+	}
+
+	private static int find(int[] components, int i)
+	{
+		while(components[i] != i)
+		{
+			components[i] = components[components[i]];
+			i = components[i];
+		}
+		return i;
+	}
+
+	/**
+	 * @return: The longest edge on the tree path between two cities, 0 if they aren't in the same tree
+	 */
+	double longestEdgeOnPath(int a, int b)
+	{
+		double longest = 0;
+		if(depth[a] < depth[b])
+		{
+			int tmp = a;
+			a = b;
+			b = tmp;
+		}
+		for(int level = levels - 1; level >= 0; --level)
+		{
+			if(depth[a] - (1 << level) >= depth[b])
+			{
+				longest = Math.max(longest, longestEdges[level * cityCount + a]);
+				a = ancestors[level * cityCount + a];
+			}
+		}
+		if(a == b)
+			return longest;
+		for(int level = levels - 1; level >= 0; --level)
+		{
+			int row = level * cityCount;
+			if(ancestors[row + a] != ancestors[row + b])
+			{
+				longest = Math.max(longest, Math.max(longestEdges[row + a], longestEdges[row + b]));
+				a = ancestors[row + a];
+				b = ancestors[row + b];
+			}
+		}
+		if(ancestors[a] != ancestors[b])
+			return 0; // Different trees
+		return Math.max(longest, Math.max(longestEdges[a], longestEdges[b]));
+	}
+
+	/**
+	 * @return: The number of candidates of each city
+	 */
+	public int getCandidateCount()
+	{
+		return k;
+	}
+
+	/**
+	 * @param city: The city name
+	 * @param rank: The rank of the candidate (0 for the lowest alpha)
+	 * @return: The candidate of the given rank
+	 */
+	public int getCandidate(int city, int rank)
+	{
+		return candidates[city * k + rank];
+	}
+
+	/**
+	 * @return: The memory used by the candidates and the spanning forest, in bytes
+	 */
+	public long getFootprint()
+	{
+		return 4L * (candidates.length + depth.length + ancestors.length) + 8L * longestEdges.length;
+	}
+}
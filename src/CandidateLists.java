@@ -0,0 +1,375 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * For each city, the list of other cities ranked by distance (closest first).
+ *
+ * Only the k closest cities of each city are computed upfront (using a k-d tree when
+ * the coordinates allow it), stored as fixed size rows of a single int[]. The complete
+ * ranking of a city is only computed the first time a rank beyond k is requested. Complete
+ * rankings are stored as char[] whenever city names fit in 16 bits.
+ *
+ * The reverse of the (first 64) candidates is also kept: for each city, the cities which
+ * have it as candidate and at which rank. This lets a decoder keep track of the unvisited
+ * candidates of every city as a 64 bit mask (see {@link EPDecoder}).
+ *
+ * Cities at the same distance are ranked by name.
+ *
+ * @author Harry Long
+ *
+ */
+public class CandidateLists {
+
+	/**
+	 * The number of cities processed by a single task when building in parallel
+	 */
+	private static final int CITIES_PER_TASK = 256;
+
+	private final DistanceMatrix distances;
+	private final int cityCount;
+
+	/**
+	 * Number of candidates per city
+	 */
+	private final int k;
+
+	/**
+	 * Row i holds the k closest cities of city i
+	 */
+	private final int[] candidates;
+
+	/**
+	 * Complete rankings, lazily calculated. Only one of the two is used depending on the number of cities
+	 */
+	private final AtomicReferenceArray<char[]> compactRankings;
+	private final AtomicReferenceArray<int[]> rankings;
+
+	/**
+	 * Reverse candidates of city i are in reverseCandidates[reverseOffsets[i], reverseOffsets[i+1]),
+	 * each stored as (city name * 64 + rank)
+	 */
+	private int[] reverseOffsets;
+	private int[] reverseCandidates;
+
+	/**
+	 * Candidates ranked by alpha-nearness, lazily calculated (see {@link #getAlphaNearness(int)})
+	 */
+	private AlphaNearness alphaNearness;
+
+	private CandidateLists(DistanceMatrix distances, int k)
+	{
+		this.distances = distances;
+		this.cityCount = distances.getCityCount();
+		this.k = Math.max(0, Math.min(k, cityCount-1));
+		candidates = new int[cityCount * this.k];
+		if(cityCount <= Character.MAX_VALUE + 1)
+		{
+			compactRankings = new AtomicReferenceArray<char[]>(cityCount);
+			rankings = null;
+		}
+		else
+		{
+			compactRankings = null;
+			rankings = new AtomicReferenceArray<int[]>(cityCount);
+		}
+	}
+
+	/**
+	 * Builds the candidate lists of the given cities
+	 *
+	 * @param cities: The cities. The city names must be their index in the array
+	 * @param distances: The distances between the cities
+	 * @param k: The number of candidates to keep per city
+	 * @return: The candidate lists
+	 */
+	public static CandidateLists build(City[] cities, DistanceMatrix distances, int k)
+	{
+		double[] xs = null, ys = null;
+		// The k-d tree relies on distances never being smaller than the rounded down euclidean distance
+		if(distances.getQuantizationStep() <= 1d)
+		{
+			xs = new double[cities.length];
+			ys = new double[cities.length];
+			for(City c : cities)
+			{
+				xs[c.getName()] = c.getx();
+				ys[c.getName()] = c.gety();
+			}
+		}
+		return build(distances, xs, ys, k);
+	}
+
+	/**
+	 * Builds the candidate lists from a distance matrix
+	 *
+	 * @param distances: The distances between the cities
+	 * @param xs: The horizontal coordinates of the cities, or null if the distances aren't (at least) the rounded down euclidean distances
+	 * @param ys: The vertical coordinates of the cities, or null
+	 * @param k: The number of candidates to keep per city
+	 * @return: The candidate lists
+	 */
+	public static CandidateLists build(DistanceMatrix distances, double[] xs, double[] ys, int k)
+	{
+		CandidateLists lists = new CandidateLists(distances, k);
+		KdTree tree = xs != null && ys != null ? new KdTree(xs, ys) : null;
+
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.invoke(new BuildTask(lists, tree, 0, lists.cityCount));
+		pool.shutdown();
+		lists.buildReverseCandidates();
+
+		return lists;
+	}
+
+	/**
+	 * Inverts the (first 64) candidate lists
+	 */
+	private void buildReverseCandidates()
+	{
+		int maskedCount = getMaskedCandidateCount();
+		reverseOffsets = new int[cityCount+1];
+		reverseCandidates = new int[cityCount * maskedCount];
+		for(int city = 0; city < cityCount; ++city)
+		{
+			for(int rank = 0; rank < maskedCount; ++rank)
+				reverseOffsets[candidates[city * k + rank] + 1]++;
+		}
+		for(int city = 0; city < cityCount; ++city)
+			reverseOffsets[city+1] += reverseOffsets[city];
+
+		int[] next = Arrays.copyOf(reverseOffsets, cityCount);
+		for(int city = 0; city < cityCount; ++city)
+		{
+			for(int rank = 0; rank < maskedCount; ++rank)
+				reverseCandidates[next[candidates[city * k + rank]]++] = city * 64 + rank;
+		}
+	}
+
+	/**
+	 * Fills in the candidates of a single city
+	 */
+	private void buildRow(int city, KdTree tree, int[] row)
+	{
+		if(tree != null)
+		{
+			tree.nearest(city, distances, row);
+		}
+		else
+		{
+			KdTree.Heap heap = new KdTree.Heap(k);
+			for(int other = 0; other < cityCount; ++other)
+			{
+				if(other != city)
+					heap.offer(other, distances.getDistance(city, other));
+			}
+			heap.drain(row);
+		}
+		System.arraycopy(row, 0, candidates, city * k, k);
+	}
+
+	/**
+	 * @return: The number of candidates stored for each city
+	 */
+	public int getCandidateCount()
+	{
+		return k;
+	}
+
+	public int getCityCount()
+	{
+		return cityCount;
+	}
+
+	/**
+	 * @return: Whether complete rankings are stored as char[] (see {@link #getCompactRanking(int)}) rather than int[]
+	 */
+	public boolean isCompact()
+	{
+		return compactRankings != null;
+	}
+
+	/**
+	 * @return: The number of candidates of each city which are listed in the reverse candidates (at most 64)
+	 */
+	public int getMaskedCandidateCount()
+	{
+		return Math.min(k, 64);
+	}
+
+	/**
+	 * @param city: The city name
+	 * @return: The start of the reverse candidates of the city in {@link #getReverseCandidates()}
+	 */
+	public int getReverseCandidatesStart(int city)
+	{
+		return reverseOffsets[city];
+	}
+
+	/**
+	 * @param city: The city name
+	 * @return: The end (exclusive) of the reverse candidates of the city in {@link #getReverseCandidates()}
+	 */
+	public int getReverseCandidatesEnd(int city)
+	{
+		return reverseOffsets[city+1];
+	}
+
+	/**
+	 * @return: The cities having a given city as candidate, stored as (city name * 64 + rank). Not to be modified.
+	 */
+	public int[] getReverseCandidates()
+	{
+		return reverseCandidates;
+	}
+
+	/**
+	 * @return: The memory used by the candidates, the reverse candidates, and the rankings and alpha-nearness calculated so far, in bytes
+	 */
+	public synchronized long getFootprint()
+	{
+		long footprint = 4L * (candidates.length + reverseOffsets.length + reverseCandidates.length);
+		for(int city = 0; city < cityCount; ++city)
+		{
+			if(compactRankings != null)
+			{
+				char[] ranking = compactRankings.get(city);
+				footprint += ranking != null ? 2L * ranking.length : 0;
+			}
+			else
+			{
+				int[] ranking = rankings.get(city);
+				footprint += ranking != null ? 4L * ranking.length : 0;
+			}
+		}
+		if(alphaNearness != null)
+			footprint += alphaNearness.getFootprint();
+		return footprint;
+	}
+
+	/**
+	 * Returns the candidates ranked by alpha-nearness, calculating them the first time
+	 *
+	 * @param count: The number of candidates wanted per city (at most the candidate count)
+	 * @return: The best candidates of each city by alpha-nearness
+	 */
+	public synchronized AlphaNearness getAlphaNearness(int count)
+	{
+		if(alphaNearness == null || alphaNearness.getCandidateCount() != Math.min(count, k))
+			alphaNearness = new AlphaNearness(distances, this, count);
+		return alphaNearness;
+	}
+
+	/**
+	 * Returns the city at the given rank from a city
+	 *
+	 * @param city: The city name
+	 * @param rank: The rank, 0 being the closest city (Range: [0, city count - 2])
+	 * @return: The name of the city at the given rank
+	 */
+	public int getNeighbour(int city, int rank)
+	{
+		if(rank < k)
+			return candidates[city * k + rank];
+		if(compactRankings != null)
+			return getCompactRanking(city)[rank];
+		return getRanking(city)[rank];
+	}
+
+	/**
+	 * Returns the complete ranking of a city, calculating it if needed. Only for maps of up to 65536 cities.
+	 *
+	 * @param city: The city name
+	 * @return: All other cities, closest first
+	 */
+	char[] getCompactRanking(int city)
+	{
+		char[] ranking = compactRankings.get(city);
+		if(ranking == null)
+		{
+			long[] keys = sortedKeys(city);
+			ranking = new char[keys.length];
+			for(int i = 0; i < keys.length; ++i)
+				ranking[i] = (char) keys[i];
+
+			// Several threads may calculate the same ranking, they would all be identical
+			compactRankings.compareAndSet(city, null, ranking);
+		}
+		return ranking;
+	}
+
+	/**
+	 * Returns the complete ranking of a city, calculating it if needed. Only for maps of more than 65536 cities.
+	 *
+	 * @param city: The city name
+	 * @return: All other cities, closest first
+	 */
+	int[] getRanking(int city)
+	{
+		int[] ranking = rankings.get(city);
+		if(ranking == null)
+		{
+			long[] keys = sortedKeys(city);
+			ranking = new int[keys.length];
+			for(int i = 0; i < keys.length; ++i)
+				ranking[i] = (int) keys[i];
+
+			rankings.compareAndSet(city, null, ranking);
+		}
+		return ranking;
+	}
+
+	/**
+	 * Sorts the other cities on the distance, then the name, packed in a single primitive key.
+	 * Distances are positive so their float bits have the same order as the distances themselves
+	 */
+	private long[] sortedKeys(int city)
+	{
+		long[] keys = new long[cityCount-1];
+		int i = 0;
+		for(int other = 0; other < cityCount; ++other)
+		{
+			if(other != city)
+				keys[i++] = ((long) Float.floatToIntBits((float) distances.getDistance(city, other)) << 32) | other;
+		}
+		Arrays.sort(keys);
+		return keys;
+	}
+
+	/**
+	 * Calculates the candidates of a range of cities, splitting the work until small enough
+	 */
+	private static class BuildTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 5182367045710231147L;
+
+		private final CandidateLists lists;
+		private final KdTree tree;
+		private final int fromCity, toCity;
+
+		BuildTask(CandidateLists lists, KdTree tree, int fromCity, int toCity)
+		{
+			this.lists = lists;
+			this.tree = tree;
+			this.fromCity = fromCity;
+			this.toCity = toCity;
+		}
+
+		@Override
+		protected void compute() {
+			if(toCity - fromCity <= CITIES_PER_TASK)
+			{
+				int[] row = new int[lists.k];
+				for(int city = fromCity; city < toCity; ++city)
+					lists.buildRow(city, tree, row);
+			}
+			else
+			{
+				int split = (fromCity + toCity) >>> 1;
+				invokeAll(new BuildTask(lists, tree, fromCity, split),
+						new BuildTask(lists, tree, split, toCity));
+			}
+		}
+	}
+}
@@ -0,0 +1,442 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Binary checkpoint of a run, from which it can be resumed as if it had never stopped.
+ *
+ * A checkpoint holds, in order:
+ *   - a header (magic number, version and size)
+ *   - the configuration
+ *   - the statistics of the run: generation, best run number, mean cost per generation, best chromosome
+ *   - the islands (see {@link IslandEngine#writeCheckpoint(ByteBuffer)}): the state of their random generators,
+ *     and the tour, cost and genes (EP state tables, as stored) of every chromosome of their population, then the
+ *     migrants in transit between them
+ * Values are little endian, arrays are written and read in bulk, so resuming takes time linear in the size of the
+ * file. Costs are restored with the tours, nothing is evaluated again. The cities aren't written: they are built
+ * again from the configuration (the TSPLIB file, or the master seed).
+ *
+ * Checkpoints are written through a memory mapped file (see {@link Writer}). The file is only replaced once
+ * the new checkpoint is completely on disk, so a run dying while writing one still has the previous one.
+ *
+ * @author Harry Long
+ *
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x54535043; // TSPC
+	private static final int VERSION = 7;
+	private static final int HEADER_SIZE = 16;
+
+	private final ByteBuffer buffer;
+	private final int generation;
+	private final int bestRunNumber;
+	private final double[] meanPerGeneration;
+	private Chromosome best;
+
+	private Checkpoint(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		generation = buffer.getInt();
+		bestRunNumber = buffer.getInt();
+		meanPerGeneration = new double[buffer.getInt()];
+		buffer.asDoubleBuffer().get(meanPerGeneration);
+		buffer.position(buffer.position() + 8 * meanPerGeneration.length);
+	}
+
+	/**
+	 * Reads a checkpoint, and restores its configuration (see {@link ConfigurationManager#instance()})
+	 * @param filename: The checkpoint file
+	 * @return: The checkpoint, at its statistics
+	 */
+	public static Checkpoint load(String filename)
+	{
+		ByteBuffer buffer;
+		try
+		{
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			try
+			{
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			}
+			finally
+			{
+				file.close(); // The mapping stays valid
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to read the checkpoint " + filename + ": " + e.getMessage() + ". Exiting");
+			System.exit(1);
+			return null;
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if(buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != buffer.capacity())
+		{
+			System.err.println(filename + " isn't a complete checkpoint of this version. Exiting");
+			System.exit(1);
+		}
+		readConfiguration(buffer, ConfigurationManager.instance());
+		return new Checkpoint(buffer);
+	}
+
+	/**
+	 * The generation the run resumes at
+	 */
+	public int getGeneration()
+	{
+		return generation;
+	}
+
+	public int getBestRunNumber()
+	{
+		return bestRunNumber;
+	}
+
+	/**
+	 * @return: The mean cost of each generation before the checkpoint
+	 */
+	public double[] getMeanPerGeneration()
+	{
+		return meanPerGeneration;
+	}
+
+	/**
+	 * Reads the islands, then the best chromosome of the run (see {@link #getBest()}). To be called once
+	 * @param cities: The cities, built again from the restored configuration
+	 * @return: The islands, as they were at the checkpoint
+	 */
+	public IslandEngine restore(City[] cities)
+	{
+		IslandEngine islands = new IslandEngine(cities, buffer);
+		best = Island.createEmptyChromosome(cities);
+		best.readCheckpoint(buffer);
+		return islands;
+	}
+
+	/**
+	 * @return: The best chromosome of the run, once restored (see {@link #restore(City[])})
+	 */
+	public Chromosome getBest()
+	{
+		return best;
+	}
+
+	/**
+	 * @return: The size of the checkpoint of a run
+	 */
+	private static long size(ConfigurationManager config, int generation, Chromosome best, IslandEngine islands)
+	{
+		return HEADER_SIZE + configurationSize(config) + 12 + 8L * generation + islands.checkpointSize() + best.checkpointSize();
+	}
+
+	/**
+	 * Writes the checkpoint of a run
+	 */
+	private static void writeRun(ByteBuffer out, ConfigurationManager config, int generation, double[] meanPerGeneration, int bestRunNumber,
+			Chromosome best, IslandEngine islands)
+	{
+		out.putInt(MAGIC).putInt(VERSION).putLong(out.capacity());
+		writeConfiguration(out, config);
+		out.putInt(generation);
+		out.putInt(bestRunNumber);
+		out.putInt(generation);
+		out.asDoubleBuffer().put(meanPerGeneration, 0, generation);
+		out.position(out.position() + 8 * generation);
+		islands.writeCheckpoint(out);
+		best.writeCheckpoint(out);
+		if(out.position() != out.capacity())
+		{
+			System.err.println("Checkpoint of " + out.position() + " bytes written instead of " + out.capacity() + ". Exiting"); // This will never happen
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Writes the configuration, except the checkpoint to resume from
+	 */
+	private static void writeConfiguration(ByteBuffer out, ConfigurationManager config)
+	{
+		out.putInt(config.getK());
+		out.putInt(config.getQ());
+		out.putInt(config.getPopulationSize());
+		out.putInt(config.getChildrenPerGeneration());
+		out.putDouble(config.getProbabilityOfSelectingFittestParent());
+		out.putDouble(config.getProbabilityOfMutation());
+		out.putInt(config.getCityCount());
+		out.putInt(config.getAlgorithm().ordinal());
+		out.putInt(config.getDistanceLayout().ordinal());
+		out.putInt(config.getCandidateListSize());
+		out.putInt(config.getMutationMove().ordinal());
+		out.put((byte) (config.isDebugMode() ? 1 : 0));
+		out.putInt(config.getThreads());
+		out.putInt(config.getIslands());
+		out.putInt(config.getMigrationTopology().ordinal());
+		out.putInt(config.getMigrationInterval());
+		out.putInt(config.getMigrants());
+		out.putInt(config.getStateTableLayout().ordinal());
+		out.put((byte) (config.isParallelSelection() ? 1 : 0));
+		out.putInt(config.getRouletteSampling().ordinal());
+		out.putLong(config.getSeed());
+		putString(out, config.getTsplibFile());
+		putString(out, config.getOptimalTourFile());
+		out.putInt(config.getLocalSearch().ordinal());
+		out.putInt(config.getLocalSearchInterval());
+		out.putInt(config.getLocalSearchElites());
+		out.putInt(config.getLkTrials());
+		out.putDouble(config.getSeedingFraction());
+		out.putInt(config.getSeedingHeuristic().ordinal());
+		out.putInt(config.getFitnessCache().ordinal());
+		out.putInt(config.getFitnessCacheSize());
+		putString(out, config.getCheckpointFile());
+		out.putInt(config.getCheckpointInterval());
+		putString(out, config.getStatisticsFile());
+		out.putInt(config.getStatisticsFormat().ordinal());
+		out.put((byte) (config.isAllocationAccounting() ? 1 : 0));
+		out.putInt(config.getStatisticsOverflow().ordinal());
+	}
+
+	private static void readConfiguration(ByteBuffer in, ConfigurationManager config)
+	{
+		config.setK(in.getInt());
+		config.setQ(in.getInt());
+		config.setPopulationSize(in.getInt());
+		config.setChildrenPerGeneration(in.getInt());
+		config.setProbabilityOfSelectingFittestParent(in.getDouble());
+		config.setProbabilityOfMutation(in.getDouble());
+		config.setCityCount(in.getInt());
+		config.setAlgorithm(ConfigurationManager.EvolutionaryAlgorithm.values()[in.getInt()]);
+		config.setDistanceLayout(DistanceMatrix.Layout.values()[in.getInt()]);
+		config.setCandidateListSize(in.getInt());
+		config.setMutationMove(ConfigurationManager.MutationMove.values()[in.getInt()]);
+		config.setDebugMode(in.get() != 0);
+		config.setThreads(in.getInt());
+		config.setIslands(in.getInt());
+		config.setMigrationTopology(IslandEngine.Topology.values()[in.getInt()]);
+		config.setMigrationInterval(in.getInt());
+		config.setMigrants(in.getInt());
+		config.setStateTableLayout(StateTable.Layout.values()[in.getInt()]);
+		config.setParallelSelection(in.get() != 0);
+		config.setRouletteSampling(RouletteWheel.Sampling.values()[in.getInt()]);
+		config.setSeed(in.getLong());
+		config.setTsplibFile(getString(in));
+		config.setOptimalTourFile(getString(in));
+		config.setLocalSearch(LocalSearch.Budget.values()[in.getInt()]);
+		config.setLocalSearchInterval(in.getInt());
+		config.setLocalSearchElites(in.getInt());
+		config.setLkTrials(in.getInt());
+		config.setSeedingFraction(in.getDouble());
+		config.setSeedingHeuristic(Seeding.Heuristic.values()[in.getInt()]);
+		config.setFitnessCache(FitnessCache.Eviction.values()[in.getInt()]);
+		config.setFitnessCacheSize(in.getInt());
+		config.setCheckpointFile(getString(in));
+		config.setCheckpointInterval(in.getInt());
+		config.setStatisticsFile(getString(in));
+		config.setStatisticsFormat(StatisticsPipeline.Format.values()[in.getInt()]);
+		config.setAllocationAccounting(in.get() != 0);
+		config.setStatisticsOverflow(StatisticsPipeline.Overflow.values()[in.getInt()]);
+	}
+
+	private static int configurationSize(ConfigurationManager config)
+	{
+		return 4 * 26 + 8 * 4 + 3 + stringSize(config.getTsplibFile()) + stringSize(config.getOptimalTourFile())
+				+ stringSize(config.getCheckpointFile()) + stringSize(config.getStatisticsFile());
+	}
+
+	/**
+	 * Strings are written as their length (-1 for null) followed by their characters
+	 */
+	private static void putString(ByteBuffer out, String value)
+	{
+		if(value == null)
+		{
+			out.putInt(-1);
+			return;
+		}
+		out.putInt(value.length());
+		for(int i = 0; i < value.length(); ++i)
+			out.putChar(value.charAt(i));
+	}
+
+	private static String getString(ByteBuffer in)
+	{
+		int length = in.getInt();
+		if(length < 0)
+			return null;
+		char[] chars = new char[length];
+		for(int i = 0; i < length; ++i)
+			chars[i] = in.getChar();
+		return new String(chars);
+	}
+
+	private static int stringSize(String value)
+	{
+		return 4 + (value == null ? 0 : 2 * value.length());
+	}
+
+	/**
+	 * Writes the checkpoints of a run, every <checkpoint interval> generations.
+	 *
+	 * The state of the run is copied into a memory mapped file by the evolving thread (a bulk copy into the page
+	 * cache, as the run can't carry on while it is copied), then a background thread flushes it to disk and
+	 * replaces the previous checkpoint with it. A checkpoint due while the previous one is still being flushed is
+	 * skipped, so the run never waits for the disk.
+	 */
+	public static class Writer {
+
+		private final Path target;
+		private final Path temporary;
+
+		/**
+		 * Flushes the checkpoints, on a single daemon thread
+		 */
+		private final ExecutorService flusher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Checkpoint writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		/**
+		 * The checkpoint being flushed, null if none was written yet
+		 */
+		private Future<?> flushing;
+
+		/**
+		 * @param filename: The checkpoint file. Checkpoints are first written next to it, with a .tmp extension
+		 */
+		public Writer(String filename)
+		{
+			target = Paths.get(filename);
+			temporary = Paths.get(filename + ".tmp");
+		}
+
+		/**
+		 * Checkpoints a run, between two generations
+		 * @param generation: The number of generations evolved
+		 * @param meanPerGeneration: The mean cost of each generation evolved
+		 * @param bestRunNumber: The generation which found the best chromosome
+		 * @param best: The best chromosome of the run
+		 * @param islands: The islands
+		 * @return: Whether the checkpoint was written, false if the previous one is still being flushed
+		 */
+		public boolean write(int generation, double[] meanPerGeneration, int bestRunNumber, Chromosome best, IslandEngine islands)
+		{
+			if(flushing != null && !flushing.isDone())
+				return false;
+			SolverEvents.Checkpoint event = new SolverEvents.Checkpoint();
+			event.begin();
+			ConfigurationManager config = ConfigurationManager.instance();
+			long size = size(config, generation, best, islands);
+			if(size > Integer.MAX_VALUE)
+			{
+				System.err.println("A checkpoint of " + size + " bytes exceeds the size of a mapping, not written");
+				return false;
+			}
+			final MappedByteBuffer buffer;
+			try
+			{
+				RandomAccessFile file = new RandomAccessFile(temporary.toFile(), "rw");
+				try
+				{
+					file.setLength(size);
+					buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				}
+				finally
+				{
+					file.close(); // The mapping stays valid
+				}
+			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to write the checkpoint " + temporary + ": " + e.getMessage());
+				return false;
+			}
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			writeRun(buffer, config, generation, meanPerGeneration, bestRunNumber, best, islands);
+			event.end();
+			if(event.shouldCommit())
+			{
+				event.generation = generation;
+				event.filename = target.toString();
+				event.size = size;
+				event.commit();
+			}
+
+			flushing = flusher.submit(new Runnable() {
+				@Override
+				public void run() {
+					buffer.force();
+					try
+					{
+						try
+						{
+							Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+						}
+						catch(AtomicMoveNotSupportedException e)
+						{
+							Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+						}
+					}
+					catch(IOException e)
+					{
+						System.err.println("Unable to replace the checkpoint " + target + ": " + e.getMessage());
+					}
+				}
+			});
+			return true;
+		}
+
+		/**
+		 * Checkpoints the end of a run, waiting for the previous checkpoint to be flushed rather than skipping this one
+		 * (see {@link #write(int, double[], int, Chromosome, IslandEngine)})
+		 * @return: Whether the checkpoint was written
+		 */
+		public boolean writeLast(int generation, double[] meanPerGeneration, int bestRunNumber, Chromosome best, IslandEngine islands)
+		{
+			awaitFlush();
+			return write(generation, meanPerGeneration, bestRunNumber, best, islands);
+		}
+
+		/**
+		 * Waits for the last checkpoint to be flushed, and stops the writer thread
+		 */
+		public void close()
+		{
+			awaitFlush();
+			flusher.shutdown();
+		}
+
+		private void awaitFlush()
+		{
+			try
+			{
+				if(flushing != null)
+					flushing.get();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch(ExecutionException e)
+			{
+				System.err.println("Unable to flush the checkpoint " + target + ": " + e.getCause());
+			}
+		}
+	}
+}
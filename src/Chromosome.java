@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+
 public abstract class Chromosome 
 {
   /**
@@ -11,11 +13,34 @@ public abstract class Chromosome
    * chromosome.
    */
   protected double cost;
+
+  /**
+   * Whether the cost is up to date with the cityList order.
+   * Moves which only change a few edges keep it up to date by applying the change in cost of these edges.
+   */
+  protected boolean costUpToDate;
+
+  /**
+   * The hash of the tour, keying its cost in the {@link FitnessCache}, and whether it is up to date with the cityList order.
+   * Moves which only change a few edges keep it up to date by XORing the keys of these edges.
+   */
+  protected long tourHash;
+  protected boolean hashUpToDate;
+  
+  /**
+   * The slot of this chromosome in the {@link PopulationArena} owning it, -1 if none
+   */
+  int arenaSlot = -1;
   
   /**
    * The cities
    */
   protected City[] cities;
+
+  /**
+   * The distances between the cities (shared by all chromosomes)
+   */
+  protected DistanceMatrix distances;
       
   /**
    * @param cities: The list of cities. Order is important
@@ -23,6 +48,7 @@ public abstract class Chromosome
   Chromosome(City[] cities) 
   {
     this.cities = cities;
+    this.distances = cities.length > 0 ? cities[0].getDistanceMatrix() : null;
     cityList = new int[cities.length];
   }
   
@@ -32,15 +58,59 @@ public abstract class Chromosome
    */
   Chromosome(Chromosome other)
   {
-	  this.cities = new City[other.cities.length]; // Its immutable so this is fine
-	  for(int i = 0; i < cities.length; ++i)
-		  this.cities[i] = other.cities[i];
-	  this.cityList = new int[cities.length];
-	  for(int i = 0; i < cities.length ; ++i)
-	  {
-		  this.cityList[i] = other.getCity(i);
-	  }
-	  this.cost = other.getCost();
+	  this.cities = other.cities; // Its immutable so it can be shared
+	  this.distances = other.distances;
+	  this.cityList = other.cityList.clone();
+	  this.cost = other.cost;
+	  this.costUpToDate = other.costUpToDate;
+	  this.tourHash = other.tourHash;
+	  this.hashUpToDate = other.hashUpToDate;
+  }
+
+  /**
+   * Overwrites this chromosome with the genes and cost of another one, reusing its own memory
+   * @param other: The chromosome to copy. Must be of the same class and for the same cities
+   */
+  void copyFrom(Chromosome other)
+  {
+	  System.arraycopy(other.cityList, 0, cityList, 0, cityList.length);
+	  this.cost = other.cost;
+	  this.costUpToDate = other.costUpToDate;
+	  this.tourHash = other.tourHash;
+	  this.hashUpToDate = other.hashUpToDate;
+  }
+
+  /**
+   * @return The number of bytes written by {@link #writeCheckpoint(ByteBuffer)}
+   */
+  long checkpointSize()
+  {
+	  return 9 + 4L * cityList.length;
+  }
+
+  /**
+   * Writes the genes and cost of this chromosome into a checkpoint (see {@link Checkpoint})
+   * @param out: The buffer written
+   */
+  void writeCheckpoint(ByteBuffer out)
+  {
+	  out.putDouble(cost);
+	  out.put((byte) (costUpToDate ? 1 : 0));
+	  out.asIntBuffer().put(cityList);
+	  out.position(out.position() + 4 * cityList.length);
+  }
+
+  /**
+   * Restores the genes and cost written by {@link #writeCheckpoint(ByteBuffer)}, without evaluating anything
+   * @param in: The buffer read
+   */
+  void readCheckpoint(ByteBuffer in)
+  {
+	  cost = in.getDouble();
+	  costUpToDate = in.get() != 0;
+	  in.asIntBuffer().get(cityList);
+	  in.position(in.position() + 4 * cityList.length);
+	  hashUpToDate = false;
   }
 
 /**
@@ -50,6 +120,12 @@ public abstract class Chromosome
    *   2. Each city is visited ONLY once
    */
   public void calculateCost() {
+	  costUpToDate = true;
+	  if(distances != null)
+	  {
+		  cost = distances.getTourCost(cityList);
+		  return;
+	  }
 	  cost=0;
 	  for ( int i=0;i<cityList.length-1;i++ ) {
 		  double dist = cities[cityList[i]].proximity(cities[cityList[i+1]]);
@@ -57,6 +133,254 @@ public abstract class Chromosome
 	  }	
   }
 
+  /**
+   * Calculate the cost only if it isn't up to date with the current order of the cities.
+   * When the tour hash is up to date, the cost is looked up in the {@link FitnessCache} first, and cached once calculated.
+   */
+  public void evaluate() {
+	  if(costUpToDate)
+		  return;
+	  FitnessCache cache = hashUpToDate ? FitnessCache.get(distances) : null;
+	  if(cache == null) {
+		  calculateCost();
+		  return;
+	  }
+	  double cachedCost = cache.lookup(tourHash);
+	  if(Double.isNaN(cachedCost)) {
+		  calculateCost();
+		  cache.store(tourHash, cost);
+		  return;
+	  }
+	  cost = cachedCost;
+	  costUpToDate = true;
+	  checkDelta("fitness cache");
+  }
+
+  /**
+   * @return The hash of the tour (see {@link FitnessCache}), calculated if it isn't up to date
+   */
+  public long getTourHash() {
+	  if(!hashUpToDate) {
+		  tourHash = FitnessCache.hash(cityList);
+		  hashUpToDate = true;
+	  }
+	  return tourHash;
+  }
+
+  /**
+   * Sets the tour hash from the hash of a similar tour, XORing the keys of the edges which differ.
+   * Cheaper than hashing the whole tour when few cities moved.
+   * 
+   * @param similar A chromosome for the same cities
+   */
+  void deriveTourHash(Chromosome similar) {
+	  long hash = similar.getTourHash();
+	  int[] other = similar.cityList;
+	  for(int i = 0; i < cityList.length-1; i++) {
+		  if(cityList[i] != other[i] || cityList[i+1] != other[i+1])
+			  hash ^= FitnessCache.edgeKey(other[i], other[i+1]) ^ FitnessCache.edgeKey(cityList[i], cityList[i+1]);
+	  }
+	  tourHash = hash;
+	  hashUpToDate = true;
+  }
+
+  /**
+   * @return Whether the cost is up to date with the current order of the cities
+   */
+  public boolean isCostUpToDate() {
+	  return costUpToDate;
+  }
+
+  /**
+   * The distance between two cities (by name)
+   */
+  protected double distance(int from, int to) {
+	  return distances != null ? distances.getDistance(from, to) : cities[from].proximity(cities[to]);
+  }
+
+  /**
+   * The distance of the edge leaving the given position of the city list (0 for the last position as the tour is not closed)
+   */
+  private double edge(int position) {
+	  return position >= 0 && position < cityList.length-1 ? distance(cityList[position], cityList[position+1]) : 0;
+  }
+
+  /**
+   * The key of the edge leaving the given position of the city list in the tour hash (0 for the last position)
+   */
+  private long edgeKey(int position) {
+	  return position >= 0 && position < cityList.length-1 ? FitnessCache.edgeKey(cityList[position], cityList[position+1]) : 0;
+  }
+
+  /**
+   * Swaps the cities at two positions of the city list.
+   * If the cost is up to date it is updated from the (at most four) edges which change.
+   * 
+   * @param i The first position
+   * @param j The second position
+   */
+  void swapCities(int i, int j) {
+	  if(i == j)
+		  return;
+	  if(i > j) {
+		  int tmp = i;
+		  i = j;
+		  j = tmp;
+	  }
+	  // Edges leaving positions i-1, i, j-1 and j. When adjacent, the edge leaving i is the edge leaving j-1
+	  double before = 0;
+	  if(costUpToDate)
+		  before = edge(i-1) + edge(i) + (j-1 != i ? edge(j-1) : 0) + edge(j);
+	  if(hashUpToDate)
+		  tourHash ^= edgeKey(i-1) ^ edgeKey(i) ^ (j-1 != i ? edgeKey(j-1) : 0) ^ edgeKey(j);
+
+	  int tmp = cityList[i];
+	  cityList[i] = cityList[j];
+	  cityList[j] = tmp;
+
+	  if(hashUpToDate)
+		  tourHash ^= edgeKey(i-1) ^ edgeKey(i) ^ (j-1 != i ? edgeKey(j-1) : 0) ^ edgeKey(j);
+
+	  if(costUpToDate) {
+		  cost += edge(i-1) + edge(i) + (j-1 != i ? edge(j-1) : 0) + edge(j) - before;
+		  checkDelta("swap");
+	  }
+  }
+
+  /**
+   * Reverses the order of the cities between two positions (a 2-opt move).
+   * Distances being symmetric, only the two edges at the ends of the segment change.
+   * 
+   * @param i The first position of the segment
+   * @param j The last position of the segment (inclusive)
+   */
+  void reverseCities(int i, int j) {
+	  if(i > j) {
+		  int tmp = i;
+		  i = j;
+		  j = tmp;
+	  }
+	  double before = 0;
+	  if(costUpToDate)
+		  before = edge(i-1) + edge(j);
+	  if(hashUpToDate)
+		  tourHash ^= edgeKey(i-1) ^ edgeKey(j);
+
+	  for(int lo = i, hi = j; lo < hi; ++lo, --hi) {
+		  int tmp = cityList[lo];
+		  cityList[lo] = cityList[hi];
+		  cityList[hi] = tmp;
+	  }
+	  if(hashUpToDate)
+		  tourHash ^= edgeKey(i-1) ^ edgeKey(j); // The edges in between are the same, reversed
+
+	  if(costUpToDate) {
+		  cost += edge(i-1) + edge(j) - before;
+		  checkDelta("inversion");
+	  }
+  }
+
+  /**
+   * Moves the city at one position to another position, shifting the cities in between.
+   * Only the edges around the old and the new position change.
+   * 
+   * @param from The current position of the city
+   * @param to The position of the city once moved
+   */
+  void moveCity(int from, int to) {
+	  if(from == to)
+		  return;
+	  int city = cityList[from];
+	  // Removing the city joins its neighbours
+	  double delta = 0;
+	  if(costUpToDate) {
+		  delta -= edge(from-1) + edge(from);
+		  if(from > 0 && from < cityList.length-1)
+			  delta += distance(cityList[from-1], cityList[from+1]);
+	  }
+	  if(hashUpToDate) {
+		  tourHash ^= edgeKey(from-1) ^ edgeKey(from);
+		  if(from > 0 && from < cityList.length-1)
+			  tourHash ^= FitnessCache.edgeKey(cityList[from-1], cityList[from+1]);
+	  }
+
+	  if(from < to)
+		  System.arraycopy(cityList, from+1, cityList, from, to-from);
+	  else
+		  System.arraycopy(cityList, to, cityList, to+1, from-to);
+	  cityList[to] = city;
+
+	  if(hashUpToDate) {
+		  tourHash ^= edgeKey(to-1) ^ edgeKey(to);
+		  if(to > 0 && to < cityList.length-1)
+			  tourHash ^= FitnessCache.edgeKey(cityList[to-1], cityList[to+1]);
+	  }
+
+	  // Inserting it splits the edge between its new neighbours
+	  if(costUpToDate) {
+		  delta += edge(to-1) + edge(to);
+		  if(to > 0 && to < cityList.length-1)
+			  delta -= distance(cityList[to-1], cityList[to+1]);
+		  cost += delta;
+		  checkDelta("insertion");
+	  }
+  }
+
+  /**
+   * Improves the tour with 2-opt and Or-opt moves until none improves it (the memetic step, see {@link LocalSearch})
+   * 
+   * @return Whether the tour changed
+   */
+  boolean improve() {
+	  if(distances == null)
+		  return false;
+	  evaluate();
+	  double gain = LocalSearch.get(distances, cities[0].getCandidateLists()).optimize(cityList);
+	  if(gain == 0)
+		  return false;
+	  cost -= gain;
+	  hashUpToDate = false;
+	  encodeCityList();
+	  checkDelta("local search");
+	  return true;
+  }
+
+  /**
+   * Called when the city list is changed directly, for genes which aren't the city list itself
+   */
+  protected void encodeCityList() {
+  }
+
+  /**
+   * Overwrites the genes with the given tour (see {@link Seeding})
+   * 
+   * @param tour The cities in the order they are visited
+   */
+  void seed(int[] tour) {
+	  setCities(tour);
+	  encodeCityList();
+  }
+
+  /**
+   * In debug mode, checks the cost (and tour hash) updated by a move against a full calculation
+   * 
+   * @param move The move which updated the cost
+   */
+  void checkDelta(String move) {
+	  if(!ConfigurationManager.instance().isDebugMode())
+		  return;
+	  double updatedCost = cost;
+	  calculateCost();
+	  if(Math.abs(updatedCost - cost) > 1e-6 * Math.max(1d, cost)) {
+		  System.err.println("Cost updated by " + move + " move (" + updatedCost + ") differs from the calculated cost (" + cost + "). Exiting");
+		  System.exit(1);
+	  }
+	  if(hashUpToDate && tourHash != FitnessCache.hash(cityList)) {
+		  System.err.println("Tour hash updated by " + move + " move differs from the calculated hash. Exiting");
+		  System.exit(1);
+	  }
+  }
+
   /**
    * Get the cost for this chromosome. This is the
    * amount of distance that must be traveled.
@@ -65,6 +389,13 @@ public abstract class Chromosome
     return cost;
   }
 
+  /**
+   * @return The memory used by the genes (the city list), in bytes
+   */
+  public long getFootprint() {
+    return 4L * cityList.length;
+  }
+
   /**
    * @param i The city you want.
    * @return The ith city.
@@ -92,6 +423,8 @@ public abstract class Chromosome
     for ( int i=0;i<cityList.length;i++ ) {
       cityList[i] = list[i];
     }
+    costUpToDate = false;
+    hashUpToDate = false;
   }
 
   /**
@@ -102,19 +435,40 @@ public abstract class Chromosome
    */
   void setCity(int index, int value) {
     cityList[index] = value;
+    costUpToDate = false;
+    hashUpToDate = false;
   }
   
   /**
-   * Abstract method to force implementation of mating in derived classes
+   * Mates with another chromosome into two new children
    * @param chromosome: The chromosome with which to mate
    * @return An array of child Chromosomes resulting from the mating
    */
-  public abstract Chromosome[] mate(Chromosome chromosome);
+  public Chromosome[] mate(Chromosome chromosome) {
+	  Chromosome[] children = new Chromosome[] { copy(), chromosome.copy() };
+	  mateInto(chromosome, children[0], children[1]);
+	  return children;
+  }
+
+  /**
+   * Abstract method to force implementation of mating in derived classes.
+   * The children are existing chromosomes whose genes are overwritten, so mating allocates nothing.
+   * @param chromosome: The chromosome with which to mate
+   * @param firstChild: Overwritten with the first child. Must not be one of the parents
+   * @param secondChild: Overwritten with the second child. Must not be one of the parents
+   */
+  public abstract void mateInto(Chromosome chromosome, Chromosome firstChild, Chromosome secondChild);
   
   /**
    * Abstract method to force implementation of mutation in derived classes
    */
   public abstract void mutate();
+
+  /**
+   * Abstract method to force implementation of copying in derived classes
+   * @return A copy of this chromosome
+   */
+  public abstract Chromosome copy();
   
   @Override 
   public String toString()
@@ -132,24 +486,13 @@ public abstract class Chromosome
 
   /**
    * Sort the chromosomes by their cost.
+   * Chromosomes of equal cost keep their relative order.
    * 
    * @param chromosomes An array of chromosomes to sort.
    * @param num How much of the chromosome list to sort.
    */
   public static void sortChromosomes(Chromosome[] chromosomes,int num) {
-    Chromosome ctemp;
-    boolean swapped = true;
-    while ( swapped ) {
-      swapped = false;
-      for ( int i=0;i<num-1;i++ ) {
-        if ( chromosomes[i].getCost() > chromosomes[i+1].getCost() ) {
-          ctemp = chromosomes[i];
-          chromosomes[i] = chromosomes[i+1];
-          chromosomes[i+1] = ctemp;
-          swapped = true;
-        }
-      }
-    }
+    Ranking.sort(chromosomes, num);
   }
   
   /**
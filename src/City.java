@@ -1,8 +1,4 @@
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 public class City {
 
@@ -22,19 +18,14 @@ public class City {
   private int name; 
   
   /**
-   * The distance from this city to all other cities
+   * The distances between all cities. Shared by all the cities of the same map
    */
-  private Map<Integer, Integer> cityDistances;
+  private DistanceMatrix distanceMatrix;
   
   /**
-   * List of cities ranked in order of distance (closest to furthest)
+   * The closest cities of every city. Shared by all the cities of the same map
    */
-  private List<Integer> citiesRankedByName;
-  
-  /**
-   * Corresponding name of the ranked cities
-   */
-  private List<Integer> citiesRankedByDistance;
+  private CandidateLists candidateLists;
   
   /**
    * Constructor.
@@ -78,7 +69,35 @@ public class City {
    * @return A distance.
    */
   public int proximity(City cother) {
-    return cityDistances != null && cityDistances.containsKey(cother.getName()) ? cityDistances.get(cother.getName()) : proximity(cother.getx(),cother.gety());
+    return distanceMatrix != null ? (int) distanceMatrix.getDistance(name, cother.getName()) : proximity(cother.getx(),cother.gety());
+  }
+
+  /**
+   * @return The distances between all cities of the map this city belongs to (null if not yet calculated)
+   */
+  public DistanceMatrix getDistanceMatrix() {
+    return distanceMatrix;
+  }
+
+  /**
+   * @param distanceMatrix The distances between all cities of the map this city belongs to
+   */
+  void setDistanceMatrix(DistanceMatrix distanceMatrix) {
+    this.distanceMatrix = distanceMatrix;
+  }
+
+  /**
+   * @return The closest cities of every city of the map this city belongs to (null if not yet calculated)
+   */
+  public CandidateLists getCandidateLists() {
+    return candidateLists;
+  }
+
+  /**
+   * @param candidateLists The closest cities of every city of the map this city belongs to
+   */
+  void setCandidateLists(CandidateLists candidateLists) {
+    this.candidateLists = candidateLists;
   }
 
   /**
@@ -97,54 +116,69 @@ public class City {
   }
   
   /**
-   * Iterates through each city, memorizing the distances for future reference
-   * @param otherCities: List of all cities. If current city included in input, it will be ignored
+   * Calculates the distances between all the given cities once, shares them between
+   * all cities and ranks the cities by distance from each city
+   * @param cities: List of all cities. The city names must be their index in the list
+   * @param layout: How the distances are stored
+   * @param candidateCount: The number of closest cities to rank upfront for each city
    */
-  public void calculateCityDistances(City[] otherCities)
+  public static void calculateCityDistances(City[] cities, DistanceMatrix.Layout layout, int candidateCount)
   {
-	  cityDistances = new HashMap<Integer,Integer>(otherCities.length-1);
-	  citiesRankedByName = new ArrayList<Integer>(otherCities.length - 1);
-	  citiesRankedByDistance = new ArrayList<Integer>(otherCities.length - 1);
-	  
-	  for(int cityIndex = 0; cityIndex < otherCities.length; ++cityIndex)
-	  {
-		  if(this != otherCities[cityIndex]) // Don't do for this city
-		  {
-			  int index = 0;
-			  int distance = proximity(otherCities[cityIndex]);
-			  while(index < citiesRankedByDistance.size() && citiesRankedByDistance.get(index) < distance)
-				  ++index;
-
-			  citiesRankedByName.add(index, cityIndex);
-			  citiesRankedByDistance.add(index, distance);  
-		  }
-	  }
-	  
-	  // Fill the map
-	  int i = 0;
-	  for(Integer cityName : citiesRankedByName)
+	  DistanceMatrix distanceMatrix = DistanceMatrix.build(cities, layout);
+	  share(cities, distanceMatrix, CandidateLists.build(cities, distanceMatrix, candidateCount));
+  }
+  
+  /**
+   * Calculates the distances between all the given cities once from an arbitrary metric (such as that of a
+   * {@link TsplibInstance}), shares them between all cities and ranks the cities by distance from each city
+   * @param cities: List of all cities. The city names must be their index in the list
+   * @param metric: The distance between two cities (by name)
+   * @param xs: The horizontal coordinates used to rank the cities, null if the rounded down euclidean distance of the coordinates may exceed the metric
+   * @param ys: The vertical coordinates used to rank the cities, or null
+   * @param layout: How the distances are stored
+   * @param candidateCount: The number of closest cities to rank upfront for each city
+   */
+  public static void calculateCityDistances(City[] cities, DistanceMatrix.Metric metric, double[] xs, double[] ys,
+		  DistanceMatrix.Layout layout, int candidateCount)
+  {
+	  DistanceMatrix distanceMatrix = DistanceMatrix.build(cities.length, metric, layout);
+	  if(distanceMatrix.getQuantizationStep() > 1d)
+		  xs = ys = null;
+	  share(cities, distanceMatrix, CandidateLists.build(distanceMatrix, xs, ys, candidateCount));
+  }
+  
+  /**
+   * Shares the distances and candidate lists between all cities
+   */
+  private static void share(City[] cities, DistanceMatrix distanceMatrix, CandidateLists candidateLists)
+  {
+	  for(City c : cities)
 	  {
-		  cityDistances.put(cityName, citiesRankedByDistance.get(i));
-		  ++i;
+		  c.setDistanceMatrix(distanceMatrix);
+		  c.setCandidateLists(candidateLists);
 	  }
   }
   
   /**
    * Returns the nth closest city to itself
    * @param n: the nth closest city (Range: [1,city count - 1]
-   * @param remainingCities: The current status of the cities in order (i.e [1,2,3]) - if null: visited. if 1: not-visited 
+   * @param visitedCities: One bit per city (by name), set if the city is visited
    * @return: The nth closest city, excluding those already visited
    */
-  public int getNthClosestCity(int n, Integer[] remainingCities)
+  public int getNthClosestCity(int n, long[] visitedCities)
   {
 	  int i = -1;
 	  int processedCities = 0;
 	  while(processedCities != n)
 	  {
-		  while(remainingCities[citiesRankedByName.get(++i)] == null);
+		  int city;
+		  do
+		  {
+			  city = candidateLists.getNeighbour(name, ++i);
+		  } while((visitedCities[city >>> 6] & (1L << city)) != 0);
 		  processedCities++;
 	  }
 	  
-	  return citiesRankedByName.get(i);
+	  return candidateLists.getNeighbour(name, i);
   }  
 }
@@ -8,11 +8,14 @@
  */
 public class ConfigurationManager {
 	
-	public static enum EvolutionaryAlgorithm { GENETIC_ALGORITHM, EVOLUTIONARY_PROGRAMMING };
+	public static enum EvolutionaryAlgorithm { GENETIC_ALGORITHM, EVOLUTIONARY_PROGRAMMING, LIN_KERNIGHAN };
+	
+	public static enum MutationMove { SWAP, INVERSION, INSERTION };
 
 	private static ConfigurationManager _instance;
 	
 	public static final String HELP = "-h";
+	public static final String DEBUG_MODE = "-debugMode";
 	public static final String K = "-K";
 	public static final String Q = "-Q";
 	public static final String POPULATION_SIZE = "-populationSize";
@@ -22,6 +25,35 @@ public class ConfigurationManager {
 	public static final String PROBABILITY_OF_MUTATION = "-probabilityOfMutation";
 	public static final String CITY_COUNT = "-cityCount";
 	public static final String ALGORITHM = "-algorithm";
+	public static final String DISTANCE_LAYOUT = "-distanceLayout";
+	public static final String CANDIDATE_LIST_SIZE = "-candidateListSize";
+	public static final String MUTATION_MOVE = "-mutationMove";
+	public static final String THREADS = "-threads";
+	public static final String ISLANDS = "-islands";
+	public static final String MIGRATION_TOPOLOGY = "-migrationTopology";
+	public static final String MIGRATION_INTERVAL = "-migrationInterval";
+	public static final String MIGRANTS = "-migrants";
+	public static final String STATE_TABLE_LAYOUT = "-stateTableLayout";
+	public static final String PARALLEL_SELECTION = "-parallelSelection";
+	public static final String ROULETTE_SAMPLING = "-rouletteSampling";
+	public static final String SEED = "-seed";
+	public static final String TSPLIB_FILE = "-tsplibFile";
+	public static final String OPTIMAL_TOUR_FILE = "-optimalTourFile";
+	public static final String LOCAL_SEARCH = "-localSearch";
+	public static final String LOCAL_SEARCH_INTERVAL = "-localSearchInterval";
+	public static final String LOCAL_SEARCH_ELITES = "-localSearchElites";
+	public static final String LK_TRIALS = "-lkTrials";
+	public static final String SEEDING_FRACTION = "-seedingFraction";
+	public static final String SEEDING_HEURISTIC = "-seedingHeuristic";
+	public static final String FITNESS_CACHE = "-fitnessCache";
+	public static final String FITNESS_CACHE_SIZE = "-fitnessCacheSize";
+	public static final String CHECKPOINT_FILE = "-checkpointFile";
+	public static final String CHECKPOINT_INTERVAL = "-checkpointInterval";
+	public static final String RESUME_FILE = "-resume";
+	public static final String STATISTICS_FILE = "-statisticsFile";
+	public static final String STATISTICS_FORMAT = "-statisticsFormat";
+	public static final String ALLOCATION_ACCOUNTING = "-allocationAccounting";
+	public static final String STATISTICS_OVERFLOW = "-statisticsOverflow";
 		
 	// Settings with default values
 	private int k = 10; // Number of genotypes to select for tournament selection of parents 
@@ -33,6 +65,36 @@ public class ConfigurationManager {
 	private double probabilityOfMutation = 0.01d;
 	private int cityCount = 25;
 	private EvolutionaryAlgorithm algorithm = EvolutionaryAlgorithm.GENETIC_ALGORITHM;
+	private DistanceMatrix.Layout distanceLayout = DistanceMatrix.Layout.INT;
+	private int candidateListSize = 16; // Number of closest cities ranked upfront for each city
+	private MutationMove mutationMove = MutationMove.SWAP; // How GA mutations move cities
+	private boolean debugMode = false; // Check incrementally updated costs against full calculations
+	private int threads = Runtime.getRuntime().availableProcessors(); // Number of threads mutating and evaluating chromosomes
+	private int islands = 1; // Number of populations evolving in parallel
+	private IslandEngine.Topology migrationTopology = IslandEngine.Topology.RING;
+	private int migrationInterval = 50; // Generations between migrations
+	private int migrants = 2; // Number of chromosomes sent by an island at each migration
+	private StateTable.Layout stateTableLayout = StateTable.Layout.CHAR; // How EP state tables are stored
+	private boolean parallelSelection = false; // Run parent tournaments in parallel partitions
+	private RouletteWheel.Sampling rouletteSampling = RouletteWheel.Sampling.WITHOUT_REPLACEMENT; // How GA parents are drawn from the roulette wheel
+	private long seed = Rng.randomSeed(); // Master seed of all random generators, to replay a run
+	private String tsplibFile = null; // TSPLIB instance to solve instead of random cities
+	private String optimalTourFile = null; // TSPLIB tour (.opt.tour) to compare the best tour found with
+	private LocalSearch.Budget localSearch = LocalSearch.Budget.OFF; // Which chromosomes are improved by 2-opt/Or-opt (memetic mode)
+	private int localSearchInterval = 1; // Generations between local searches
+	private int localSearchElites = 10; // Number of fittest chromosomes improved by the ELITES local search
+	private int lkTrials = 10; // Number of kicks tried by each chromosome at each generation (LK only)
+	private double seedingFraction = 0; // Fraction of the initial population built by constructive heuristics
+	private Seeding.Heuristic seedingHeuristic = Seeding.Heuristic.ALL; // Heuristic building the seeded chromosomes
+	private FitnessCache.Eviction fitnessCache = FitnessCache.Eviction.OFF; // Eviction policy of the fitness cache, OFF for no cache
+	private int fitnessCacheSize = 65536; // Number of tours in the fitness cache
+	private String checkpointFile = null; // File the population is checkpointed into, null for no checkpoints
+	private int checkpointInterval = 100; // Generations between checkpoints
+	private String resumeFile = null; // Checkpoint the run resumes from, null to start a new run
+	private String statisticsFile = null; // File the statistics of each generation are written to, null for none
+	private StatisticsPipeline.Format statisticsFormat = StatisticsPipeline.Format.CSV; // Format of the statistics file
+	private boolean allocationAccounting = false; // Account the bytes allocated and the GCs of each phase
+	private StatisticsPipeline.Overflow statisticsOverflow = StatisticsPipeline.Overflow.WAIT; // Whether the solver waits for the statistics file to keep up, or drops statistics
 	
 	/**
 	 * Get the singleton instance 
@@ -55,7 +117,7 @@ public class ConfigurationManager {
 	{
 		StringBuilder sb = new StringBuilder("*********************************************\n");
 		sb.append("Algorithm: " + (algorithm == EvolutionaryAlgorithm.EVOLUTIONARY_PROGRAMMING ? "Evolutionary Programming\n" : 
-			"Genetic Algorithm\n"));
+			algorithm == EvolutionaryAlgorithm.LIN_KERNIGHAN ? "Lin-Kernighan\n" : "Genetic Algorithm\n"));
 		sb.append("City count " + cityCount + "\n");
 		sb.append("Population size: " + populationSize + "\n");
 		sb.append("K: " + k + "\n");
@@ -64,6 +126,39 @@ public class ConfigurationManager {
 		sb.append("Probability of selecting fittest parent: " + probabilityOfSelectingFittestParent*100 + "%\n");
 		sb.append("Probability of crossover: " + probabilityOfCrossover*100 + "%\n");
 		sb.append("Probability of mutation: " + probabilityOfMutation*100 + "%\n");
+		sb.append("Distance layout: " + distanceLayout + "\n");
+		sb.append("Candidate list size: " + candidateListSize + "\n");
+		sb.append("Mutation move: " + mutationMove + "\n");
+		sb.append("Threads: " + threads + "\n");
+		sb.append("State table layout: " + stateTableLayout + "\n");
+		if(parallelSelection)
+			sb.append("Parallel selection: ON\n");
+		sb.append("Roulette sampling: " + rouletteSampling + "\n");
+		sb.append("Seed: " + seed + "\n");
+		if(tsplibFile != null)
+			sb.append("TSPLIB file: " + tsplibFile + "\n");
+		if(optimalTourFile != null)
+			sb.append("Optimal tour file: " + optimalTourFile + "\n");
+		if(localSearch != LocalSearch.Budget.OFF)
+			sb.append("Local search: " + localSearch + (localSearch == LocalSearch.Budget.ELITES ? " (" + localSearchElites + ")" : "") + " every " + localSearchInterval + " generation(s)\n");
+		if(algorithm == EvolutionaryAlgorithm.LIN_KERNIGHAN)
+			sb.append("LK trials: " + lkTrials + "\n");
+		if(seedingFraction > 0)
+			sb.append("Seeding: " + seedingFraction*100 + "% " + seedingHeuristic + "\n");
+		if(fitnessCache != FitnessCache.Eviction.OFF)
+			sb.append("Fitness cache: " + fitnessCache + " (" + fitnessCacheSize + " tours)\n");
+		if(checkpointFile != null)
+			sb.append("Checkpoint file: " + checkpointFile + " (every " + checkpointInterval + " generations)\n");
+		if(resumeFile != null)
+			sb.append("Resumed from: " + resumeFile + "\n");
+		if(statisticsFile != null)
+			sb.append("Statistics file: " + statisticsFile + " (" + statisticsFormat + ", " + statisticsOverflow + " on overflow)\n");
+		if(allocationAccounting)
+			sb.append("Allocation accounting: ON\n");
+		if(islands > 1)
+			sb.append("Islands: " + islands + " (" + migrationTopology + " migration of " + migrants + " chromosomes every " + migrationInterval + " generations)\n");
+		if(debugMode)
+			sb.append("Debug mode: ON\n");
 		sb.append("*********************************************\n");
 		
 		return sb.toString();
@@ -76,7 +171,7 @@ public class ConfigurationManager {
 	{
 		System.out.println("Possible Arguments: ");
 		System.out.println("-h : Print this help screen");
-		System.out.println("-debugMode: ON|OFF");
+		System.out.println("-debugMode: ON|OFF --> Checks every incrementally updated cost against a full calculation (slow)");
 		System.out.println("-K: Number of genotypes to select for tournament selection of parents");
 		System.out.println("-Q: Number of child genotypes to include with winning pair for survivor selection tournament");
 		System.out.println("-populationSize: The population size");
@@ -85,7 +180,37 @@ public class ConfigurationManager {
 		System.out.println("-probabilityOfCrossover: The probability of performing crossover (in %)");
 		System.out.println("-probabilityOfMutation: The probability of performing mutation (in %)");
 		System.out.println("-cityCount: The number of cities");
-		System.out.println("-algorithm: GA|EP --> The algorithm to use (Genetic Algorithm or Evolutionary Programming)");
+		System.out.println("-algorithm: GA|EP|LK --> The algorithm to use (Genetic Algorithm, Evolutionary Programming or Lin-Kernighan, which improves each chromosome on its own: use a small population)");
+		System.out.println("-distanceLayout: INT|FLOAT|QUANTIZED --> How the distances between cities are stored (QUANTIZED uses 16 bits per distance)");
+		System.out.println("-candidateListSize: The number of closest cities to rank upfront for each city");
+		System.out.println("-mutationMove: SWAP|INVERSION|INSERTION --> How GA mutations move cities");
+		System.out.println("-threads: The number of threads mutating and evaluating chromosomes (1 to run on the main thread only)");
+		System.out.println("-islands: The number of populations evolving in parallel, each on its own thread (the population size is split between them)");
+		System.out.println("-migrationTopology: RING|RANDOM|FULL --> Which islands receive the migrants of an island");
+		System.out.println("-migrationInterval: The number of generations between migrations");
+		System.out.println("-migrants: The number of chromosomes sent by an island at each migration");
+		System.out.println("-stateTableLayout: CHAR|PACKED --> How EP state tables are stored (PACKED uses ceil(log2(cityCount - i)) bits for input i)");
+		System.out.println("-parallelSelection: ON|OFF --> Runs the parent selection tournaments in parallel, each on a random partition of the population");
+		System.out.println("-rouletteSampling: WITHOUT_REPLACEMENT|SUS --> How GA parents are drawn from the roulette wheel (SUS: stochastic universal sampling, a parent may be drawn twice)");
+		System.out.println("-seed: The master seed of all random generators. A run is reproduced exactly by its seed and configuration (printed with the configuration)");
+		System.out.println("-tsplibFile: <path> --> Solves the given TSPLIB instance (EUC_2D, CEIL_2D, GEO, ATT or EXPLICIT) instead of random cities. Overrides -cityCount");
+		System.out.println("-optimalTourFile: <path> --> Reports the cost of the given TSPLIB tour (such as the .opt.tour of the instance) next to the best tour found");
+		System.out.println("-localSearch: OFF|CHILDREN|ELITES --> Memetic mode: improves every child, or the fittest chromosomes, with 2-opt and Or-opt moves");
+		System.out.println("-localSearchInterval: The number of generations between local searches");
+		System.out.println("-localSearchElites: The number of fittest chromosomes improved by the ELITES local search");
+		System.out.println("-lkTrials: The number of kicks tried by each chromosome at each generation (LK only)");
+		System.out.println("-seedingFraction: The fraction of the initial population built by constructive heuristics rather than at random (in %)");
+		System.out.println("-seedingHeuristic: NEAREST_NEIGHBOUR|GREEDY_EDGE|SPACE_FILLING_CURVE|RANDOM_INSERTION|ALL --> The constructive heuristic seeding the initial population (ALL uses each in turn)");
+		System.out.println("-fitnessCache: OFF|LRU|CLOCK --> Caches the costs of the tours evaluated, keyed by a hash of their edges, evicting the least recently used or by the CLOCK algorithm");
+		System.out.println("-fitnessCacheSize: The number of tours the fitness cache holds");
+		System.out.println("-checkpointFile: <path> --> Checkpoints the run into the given file, so it can be resumed (see -resume)");
+		System.out.println("-checkpointInterval: The number of generations between checkpoints");
+		System.out.println("-resume: <path> --> Resumes the run checkpointed into the given file, with its configuration (options given with it override those of the checkpoint which don't change the population, such as -threads)");
+		System.out.println("-statisticsFile: <path> --> Writes the statistics of each generation (min, mean, max and standard deviation of the costs, best tour, evaluations per second) to the given file");
+		System.out.println("-statisticsFormat: CSV|JSONL|BINARY --> The format of the statistics file");
+		System.out.println("-statisticsOverflow: WAIT|DROP --> When the statistics file can't keep up with the solver: WAIT to write every generation, DROP to never slow the solver down");
+		System.out.println("-allocationAccounting: ON|OFF --> Reports the bytes allocated and the garbage collections per generation, per phase and per evaluation, and the memory footprint of the solver");
+		System.out.println("The phases of each generation are timed, and readable through JMX as " + Instrumentation.NAME + ". The JVM option -Dtsp.instrumentation=false turns the timers off");
 	}
 	
 	/**
@@ -128,9 +253,101 @@ public class ConfigurationManager {
 			case ALGORITHM:
 				if(nextArg.equals("ga"))
 					setAlgorithm(EvolutionaryAlgorithm.GENETIC_ALGORITHM);
+				else if(nextArg.equals("lk"))
+					setAlgorithm(EvolutionaryAlgorithm.LIN_KERNIGHAN);
 				else
 					setAlgorithm(EvolutionaryAlgorithm.EVOLUTIONARY_PROGRAMMING);
 				break;
+			case DISTANCE_LAYOUT:
+				setDistanceLayout(DistanceMatrix.Layout.valueOf(nextArg.toUpperCase()));
+				break;
+			case CANDIDATE_LIST_SIZE:
+				setCandidateListSize(Integer.valueOf(nextArg));
+				break;
+			case MUTATION_MOVE:
+				setMutationMove(MutationMove.valueOf(nextArg.toUpperCase()));
+				break;
+			case THREADS:
+				setThreads(Integer.valueOf(nextArg));
+				break;
+			case ISLANDS:
+				setIslands(Integer.valueOf(nextArg));
+				break;
+			case MIGRATION_TOPOLOGY:
+				setMigrationTopology(IslandEngine.Topology.valueOf(nextArg.toUpperCase()));
+				break;
+			case MIGRATION_INTERVAL:
+				setMigrationInterval(Integer.valueOf(nextArg));
+				break;
+			case MIGRANTS:
+				setMigrants(Integer.valueOf(nextArg));
+				break;
+			case STATE_TABLE_LAYOUT:
+				setStateTableLayout(StateTable.Layout.valueOf(nextArg.toUpperCase()));
+				break;
+			case PARALLEL_SELECTION:
+				setParallelSelection(nextArg.equals("on"));
+				break;
+			case ROULETTE_SAMPLING:
+				setRouletteSampling(RouletteWheel.Sampling.valueOf(nextArg.toUpperCase()));
+				break;
+			case SEED:
+				setSeed(Long.valueOf(nextArg));
+				break;
+			case TSPLIB_FILE:
+				setTsplibFile(args[i+1].trim()); // Paths are case sensitive
+				break;
+			case OPTIMAL_TOUR_FILE:
+				setOptimalTourFile(args[i+1].trim()); // Paths are case sensitive
+				break;
+			case LOCAL_SEARCH:
+				setLocalSearch(LocalSearch.Budget.valueOf(nextArg.toUpperCase()));
+				break;
+			case LOCAL_SEARCH_INTERVAL:
+				setLocalSearchInterval(Integer.valueOf(nextArg));
+				break;
+			case LOCAL_SEARCH_ELITES:
+				setLocalSearchElites(Integer.valueOf(nextArg));
+				break;
+			case LK_TRIALS:
+				setLkTrials(Integer.valueOf(nextArg));
+				break;
+			case SEEDING_FRACTION:
+				setSeedingFraction(Double.valueOf(nextArg)/100d);
+				break;
+			case SEEDING_HEURISTIC:
+				setSeedingHeuristic(Seeding.Heuristic.valueOf(nextArg.toUpperCase()));
+				break;
+			case FITNESS_CACHE:
+				setFitnessCache(FitnessCache.Eviction.valueOf(nextArg.toUpperCase()));
+				break;
+			case FITNESS_CACHE_SIZE:
+				setFitnessCacheSize(Integer.valueOf(nextArg));
+				break;
+			case CHECKPOINT_FILE:
+				setCheckpointFile(args[i+1].trim()); // Paths are case sensitive
+				break;
+			case CHECKPOINT_INTERVAL:
+				setCheckpointInterval(Integer.valueOf(nextArg));
+				break;
+			case RESUME_FILE:
+				setResumeFile(args[i+1].trim()); // Paths are case sensitive
+				break;
+			case STATISTICS_FILE:
+				setStatisticsFile(args[i+1].trim()); // Paths are case sensitive
+				break;
+			case STATISTICS_FORMAT:
+				setStatisticsFormat(StatisticsPipeline.Format.valueOf(nextArg.toUpperCase()));
+				break;
+			case ALLOCATION_ACCOUNTING:
+				setAllocationAccounting(nextArg.equals("on"));
+				break;
+			case STATISTICS_OVERFLOW:
+				setStatisticsOverflow(StatisticsPipeline.Overflow.valueOf(nextArg.toUpperCase()));
+				break;
+			case DEBUG_MODE:
+				setDebugMode(nextArg.equals("on"));
+				break;
 			}
 		}
 		System.out.println(this);
@@ -210,4 +427,244 @@ public class ConfigurationManager {
 	public void setAlgorithm(EvolutionaryAlgorithm algorithm) {
 		this.algorithm = algorithm;
 	}
+
+	public DistanceMatrix.Layout getDistanceLayout() {
+		return distanceLayout;
+	}
+
+	public void setDistanceLayout(DistanceMatrix.Layout distanceLayout) {
+		this.distanceLayout = distanceLayout;
+	}
+
+	public int getCandidateListSize() {
+		return candidateListSize;
+	}
+
+	public void setCandidateListSize(int candidateListSize) {
+		this.candidateListSize = candidateListSize;
+	}
+
+	public MutationMove getMutationMove() {
+		return mutationMove;
+	}
+
+	public void setMutationMove(MutationMove mutationMove) {
+		this.mutationMove = mutationMove;
+	}
+
+	public boolean isDebugMode() {
+		return debugMode;
+	}
+
+	public void setDebugMode(boolean debugMode) {
+		this.debugMode = debugMode;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public int getIslands() {
+		return islands;
+	}
+
+	public void setIslands(int islands) {
+		this.islands = islands;
+	}
+
+	public IslandEngine.Topology getMigrationTopology() {
+		return migrationTopology;
+	}
+
+	public void setMigrationTopology(IslandEngine.Topology migrationTopology) {
+		this.migrationTopology = migrationTopology;
+	}
+
+	public int getMigrationInterval() {
+		return migrationInterval;
+	}
+
+	public void setMigrationInterval(int migrationInterval) {
+		this.migrationInterval = migrationInterval;
+	}
+
+	public int getMigrants() {
+		return migrants;
+	}
+
+	public void setMigrants(int migrants) {
+		this.migrants = migrants;
+	}
+
+	public StateTable.Layout getStateTableLayout() {
+		return stateTableLayout;
+	}
+
+	public void setStateTableLayout(StateTable.Layout stateTableLayout) {
+		this.stateTableLayout = stateTableLayout;
+	}
+
+	public boolean isParallelSelection() {
+		return parallelSelection;
+	}
+
+	public void setParallelSelection(boolean parallelSelection) {
+		this.parallelSelection = parallelSelection;
+	}
+
+	public RouletteWheel.Sampling getRouletteSampling() {
+		return rouletteSampling;
+	}
+
+	public void setRouletteSampling(RouletteWheel.Sampling rouletteSampling) {
+		this.rouletteSampling = rouletteSampling;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public String getTsplibFile() {
+		return tsplibFile;
+	}
+
+	public void setTsplibFile(String tsplibFile) {
+		this.tsplibFile = tsplibFile;
+	}
+
+	public String getOptimalTourFile() {
+		return optimalTourFile;
+	}
+
+	public void setOptimalTourFile(String optimalTourFile) {
+		this.optimalTourFile = optimalTourFile;
+	}
+
+	public LocalSearch.Budget getLocalSearch() {
+		return localSearch;
+	}
+
+	public void setLocalSearch(LocalSearch.Budget localSearch) {
+		this.localSearch = localSearch;
+	}
+
+	public int getLocalSearchInterval() {
+		return localSearchInterval;
+	}
+
+	public void setLocalSearchInterval(int localSearchInterval) {
+		this.localSearchInterval = localSearchInterval;
+	}
+
+	public int getLocalSearchElites() {
+		return localSearchElites;
+	}
+
+	public void setLocalSearchElites(int localSearchElites) {
+		this.localSearchElites = localSearchElites;
+	}
+
+	public int getLkTrials() {
+		return lkTrials;
+	}
+
+	public void setLkTrials(int lkTrials) {
+		this.lkTrials = lkTrials;
+	}
+
+	public double getSeedingFraction() {
+		return seedingFraction;
+	}
+
+	public void setSeedingFraction(double seedingFraction) {
+		this.seedingFraction = seedingFraction;
+	}
+
+	public Seeding.Heuristic getSeedingHeuristic() {
+		return seedingHeuristic;
+	}
+
+	public void setSeedingHeuristic(Seeding.Heuristic seedingHeuristic) {
+		this.seedingHeuristic = seedingHeuristic;
+	}
+
+	public FitnessCache.Eviction getFitnessCache() {
+		return fitnessCache;
+	}
+
+	public void setFitnessCache(FitnessCache.Eviction fitnessCache) {
+		this.fitnessCache = fitnessCache;
+	}
+
+	public int getFitnessCacheSize() {
+		return fitnessCacheSize;
+	}
+
+	public void setFitnessCacheSize(int fitnessCacheSize) {
+		this.fitnessCacheSize = fitnessCacheSize;
+	}
+
+	public String getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public void setCheckpointFile(String checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public String getResumeFile() {
+		return resumeFile;
+	}
+
+	public void setResumeFile(String resumeFile) {
+		this.resumeFile = resumeFile;
+	}
+
+	public String getStatisticsFile() {
+		return statisticsFile;
+	}
+
+	public void setStatisticsFile(String statisticsFile) {
+		this.statisticsFile = statisticsFile;
+	}
+
+	public StatisticsPipeline.Format getStatisticsFormat() {
+		return statisticsFormat;
+	}
+
+	public void setStatisticsFormat(StatisticsPipeline.Format statisticsFormat) {
+		this.statisticsFormat = statisticsFormat;
+	}
+
+	public boolean isAllocationAccounting() {
+		return allocationAccounting;
+	}
+
+	public void setAllocationAccounting(boolean allocationAccounting) {
+		this.allocationAccounting = allocationAccounting;
+	}
+
+	public StatisticsPipeline.Overflow getStatisticsOverflow() {
+		return statisticsOverflow;
+	}
+
+	public void setStatisticsOverflow(StatisticsPipeline.Overflow statisticsOverflow) {
+		this.statisticsOverflow = statisticsOverflow;
+	}
 }
@@ -0,0 +1,310 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shared, read-only matrix of the distances between every pair of cities.
+ *
+ * Distances are symmetric so only the upper triangle (excluding the diagonal) is stored,
+ * flattened row by row in a single primitive array. Looking up an edge is therefore a bit
+ * of arithmetic followed by a single array access, as opposed to the two hash lookups and
+ * the unboxing that the per-city maps used to cost.
+ *
+ * Three storage layouts are supported:
+ *   - INT: 4 bytes per pair, exact
+ *   - FLOAT: 4 bytes per pair, for metrics producing non-integer distances
+ *   - QUANTIZED: 2 bytes per pair. Exact as long as the longest edge fits in 16 bits,
+ *     otherwise distances are scaled down to 65535 steps
+ *
+ * @author Harry Long
+ *
+ */
+public class DistanceMatrix {
+
+	public static enum Layout { INT, FLOAT, QUANTIZED };
+
+	/**
+	 * Anything able to give the distance between two cities (by name)
+	 */
+	public static interface Metric {
+		double distance(int from, int to);
+	}
+
+	/**
+	 * The number of rows processed by a single task when building in parallel
+	 */
+	private static final int ROWS_PER_TASK = 64;
+
+	private final int cityCount;
+	private final Layout layout;
+
+	// Only one of these is allocated, depending on the layout
+	private int[] intDistances;
+	private float[] floatDistances;
+	private char[] quantizedDistances;
+
+	/**
+	 * Quantized layout only: value of a single quantization step
+	 */
+	private double quantizationStep = 1d;
+
+	private DistanceMatrix(int cityCount, Layout layout)
+	{
+		if(cityCount > 65535)
+		{
+			System.err.println("A distance matrix of " + cityCount + " cities would exceed the maximum array size. Exiting");
+			System.exit(1);
+		}
+		this.cityCount = cityCount;
+		this.layout = layout;
+
+		int size = (int) ((long) cityCount * (cityCount-1) / 2);
+		switch(layout){
+		case FLOAT:
+			floatDistances = new float[size];
+			break;
+		case QUANTIZED:
+			quantizedDistances = new char[size];
+			break;
+		case INT:
+		default:
+			intDistances = new int[size];
+			break;
+		}
+	}
+
+	/**
+	 * Builds the matrix of the (pythagorean) distances between the given cities.
+	 * The city names must be their index in the array.
+	 *
+	 * @param cities: The cities
+	 * @param layout: The storage layout to use
+	 * @return: The distance matrix
+	 */
+	public static DistanceMatrix build(final City[] cities, Layout layout)
+	{
+		return build(cities.length, new Metric() {
+			@Override
+			public double distance(int from, int to) {
+				return cities[from].proximity(cities[to].getx(), cities[to].gety());
+			}
+		}, layout);
+	}
+
+	/**
+	 * Builds the matrix of the distances given by an arbitrary metric.
+	 * Rows are computed in parallel.
+	 *
+	 * @param cityCount: The number of cities
+	 * @param metric: The distance between two cities
+	 * @param layout: The storage layout to use
+	 * @return: The distance matrix
+	 */
+	public static DistanceMatrix build(int cityCount, Metric metric, Layout layout)
+	{
+		DistanceMatrix matrix = new DistanceMatrix(cityCount, layout);
+
+		if(layout == Layout.QUANTIZED)
+		{
+			// Need the longest edge upfront to know the quantization step
+			float[] exact = new float[matrix.size()];
+			ForkJoinPool pool = new ForkJoinPool();
+			pool.invoke(new BuildTask(matrix, metric, exact, 0, cityCount));
+			pool.shutdown();
+
+			double max = 0;
+			for(float distance : exact)
+				max = Math.max(max, distance);
+			matrix.quantizationStep = max > Character.MAX_VALUE ? max / Character.MAX_VALUE : 1d;
+			for(int i = 0; i < exact.length; ++i)
+				matrix.quantizedDistances[i] = (char) Math.round(exact[i] / matrix.quantizationStep);
+		}
+		else
+		{
+			ForkJoinPool pool = new ForkJoinPool();
+			pool.invoke(new BuildTask(matrix, metric, null, 0, cityCount));
+			pool.shutdown();
+		}
+
+		return matrix;
+	}
+
+	/**
+	 * Index of the (from,to) pair in the flattened upper triangle
+	 */
+	private int index(int from, int to)
+	{
+		int lo, hi;
+		if(from < to)
+		{
+			lo = from;
+			hi = to;
+		}
+		else
+		{
+			lo = to;
+			hi = from;
+		}
+		// Rows before 'lo' hold (n-1) + (n-2) + ... + (n-lo) entries
+		return (int) (((long) lo * (2 * cityCount - lo - 1)) >>> 1) + (hi - lo - 1);
+	}
+
+	/**
+	 * Returns the distance between two cities
+	 *
+	 * @param from: The first city name
+	 * @param to: The second city name
+	 * @return: The distance (0 if both cities are the same)
+	 */
+	public double getDistance(int from, int to)
+	{
+		if(from == to)
+			return 0;
+
+		switch(layout){
+		case FLOAT:
+			return floatDistances[index(from, to)];
+		case QUANTIZED:
+			return quantizedDistances[index(from, to)] * quantizationStep;
+		case INT:
+		default:
+			return intDistances[index(from, to)];
+		}
+	}
+
+	/**
+	 * Calculate the cost of visiting the cities in the given order
+	 *
+	 * @param tour: The order in which the cities are visited
+	 * @return: The summed distance between consecutive cities of the tour
+	 */
+	public double getTourCost(int[] tour)
+	{
+		double cost = 0;
+		switch(layout){
+		case INT:
+			// Most common case, avoid the switch for every edge
+			for(int i = 0; i < tour.length-1; ++i)
+			{
+				if(tour[i] != tour[i+1])
+					cost += intDistances[index(tour[i], tour[i+1])];
+			}
+			break;
+		default:
+			for(int i = 0; i < tour.length-1; ++i)
+				cost += getDistance(tour[i], tour[i+1]);
+			break;
+		}
+		return cost;
+	}
+
+	public int getCityCount()
+	{
+		return cityCount;
+	}
+
+	public Layout getLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * @return: The value of a single step of the quantized layout (1 for other layouts)
+	 */
+	public double getQuantizationStep()
+	{
+		return quantizationStep;
+	}
+
+	/**
+	 * @return: The memory used by the distances, in bytes
+	 */
+	public long getFootprint()
+	{
+		switch(layout){
+		case FLOAT:
+			return 4L * floatDistances.length;
+		case QUANTIZED:
+			return 2L * quantizedDistances.length;
+		case INT:
+		default:
+			return 4L * intDistances.length;
+		}
+	}
+
+	/**
+	 * @return: The number of stored pairs
+	 */
+	public int size()
+	{
+		return (int) ((long) cityCount * (cityCount-1) / 2);
+	}
+
+	private void set(int from, int to, double distance, float[] exact)
+	{
+		int index = index(from, to);
+		if(exact != null)
+		{
+			exact[index] = (float) distance;
+			return;
+		}
+
+		switch(layout){
+		case FLOAT:
+			floatDistances[index] = (float) distance;
+			break;
+		case INT:
+		default:
+			intDistances[index] = (int) distance;
+			break;
+		}
+	}
+
+	/**
+	 * Fills a range of rows of the matrix, splitting the work until small enough
+	 */
+	private static class BuildTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -2453390946412722186L;
+
+		private final DistanceMatrix matrix;
+		private final Metric metric;
+		private final float[] exact;
+		private final int fromRow, toRow;
+
+		BuildTask(DistanceMatrix matrix, Metric metric, float[] exact, int fromRow, int toRow)
+		{
+			this.matrix = matrix;
+			this.metric = metric;
+			this.exact = exact;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			if(toRow - fromRow <= ROWS_PER_TASK)
+			{
+				for(int from = fromRow; from < toRow; ++from)
+				{
+					for(int to = from+1; to < matrix.cityCount; ++to)
+						matrix.set(from, to, metric.distance(from, to), exact);
+				}
+			}
+			else
+			{
+				// Rows get shorter as we go down the triangle, so splitting at the middle row would
+				// give the first half about three times the work. Split on the number of pairs instead.
+				long pairs = 0, half = 0;
+				for(int row = fromRow; row < toRow; ++row)
+					half += matrix.cityCount - row - 1;
+				half /= 2;
+				int split = fromRow;
+				while(split < toRow - 1 && pairs < half)
+					pairs += matrix.cityCount - (split++) - 1;
+				split = Math.max(split, fromRow + 1);
+				invokeAll(new BuildTask(matrix, metric, exact, fromRow, split),
+						new BuildTask(matrix, metric, exact, split, toRow));
+			}
+		}
+	}
+}
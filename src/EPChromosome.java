@@ -1,4 +1,4 @@
-
+import java.nio.ByteBuffer;
 
 /**
  * Class that implements Genotype logic for Evolutionary Programming
@@ -12,18 +12,35 @@ public class EPChromosome extends Chromosome{
 	private StateTable stateTable;
 	private double probabilityOfMutation;
 	
+	/**
+	 * The position of each city in the city list
+	 */
+	private int[] positions;
+	
+	/**
+	 * The first decoding step which may read a changed cell of the state table (the city list length if none).
+	 * Decoding step i reads the cell of the city visited at step i-1, for input i: changed cells which the
+	 * tour doesn't read leave it unchanged. The cities before this step, and the cost of the whole city list
+	 * (the one decoded before the changes), are reused by {@link #evaluate()}.
+	 */
+	private int decodeFrom;
+	
 	public EPChromosome(City[] cities) {
 		super(cities);
+		positions = new int[cities.length];
 		probabilityOfMutation = ConfigurationManager.instance().getProbabilityOfMutation();
 		
 		// Initialize the state table with random values
-		stateTable = new StateTable(cities.length, cities.length);
-		stateTable.setStartState((short) Utils.random(0, cities.length-1));
+		stateTable = new StateTable(cities.length, cities.length, ConfigurationManager.instance().getStateTableLayout());
+		stateTable.setStartState(Utils.random(0, cities.length-1));
+		Rng random = Utils.getThreadRandom();
+		double[] draws = new double[cities.length]; // Drawn a row at a time
 		for(int cityIndex = 0; cityIndex < cities.length; cityIndex++)
 		{
+			random.nextDoubles(draws, 1, cities.length);
 			for(int visitedCities = 1; visitedCities < cities.length; ++visitedCities) // 0 visited cities is not possible as wouldn't be on the ST
 			{
-				stateTable.setOutput(cityIndex,visitedCities,(short) Utils.random(1,cities.length-visitedCities));
+				stateTable.setOutput(cityIndex,visitedCities,1 + (int) (draws[visitedCities] * (cities.length-visitedCities)));
 			}
 		}
 		// Generate city list + calculates the cost
@@ -38,40 +55,46 @@ public class EPChromosome extends Chromosome{
 	{
 		super(other);
 		stateTable = new StateTable(((EPChromosome)other).getStateTable());
+		positions = ((EPChromosome)other).positions.clone();
+		decodeFrom = ((EPChromosome)other).decodeFrom;
 		probabilityOfMutation = ConfigurationManager.instance().getProbabilityOfMutation();	
 	}
 	
+	/**
+	 * Creates a chromosome of the given state table, with its city list still to be decoded (see {@link Checkpoint})
+	 * @param cities: The cities
+	 * @param stateTable: The state table, owned by the chromosome
+	 */
+	EPChromosome(City[] cities, StateTable stateTable)
+	{
+		super(cities);
+		this.stateTable = stateTable;
+		positions = new int[cities.length];
+		probabilityOfMutation = ConfigurationManager.instance().getProbabilityOfMutation();
+	}
+	
 	/**
 	 * Using the state table, generates the order in which the cities should be visited
-	 * 
-	 * It would be more readable to use a list of visited cities and pass that to the
-	 * City class when getting the Nth city. This is a big performance bottleneck however
-	 * as removing elements from a list is of O(n^2). In stead this "hack" is used where 
-	 * a new array represents the cities in the range [0,n), where the cities index
-	 * is nullified in this array upon visiting it. 
 	 */
 	protected void generateCityList()
 	{
-		int currentCity = stateTable.getStartState();
-		cityList[0] = currentCity;
-		Integer remainingCityTracker[] = new Integer[cities.length];
-		for(int i = 0; i < cityList.length; ++i)
-		{
-			if(i != currentCity) // Current city must not be appended
-				remainingCityTracker[i] = 1;
-		}
-		
-		for(int i = 1; i < cities.length; ++i)
-		{
-			short nThClosestCity = stateTable.getOutput(currentCity, i); 
-			// We move to the new city here:
-			currentCity = cities[currentCity].getNthClosestCity(nThClosestCity, remainingCityTracker);
-			
-			// We update the cityList
-			cityList[i] = currentCity;
-			
-			remainingCityTracker[currentCity] = null; // nullify it
-		}
+		long start = Instrumentation.start(), allocated = AllocationAccounting.threadAllocated();
+		EPDecoder.get(cities[0].getCandidateLists()).decode(stateTable, cityList);
+		updatePositions(0);
+		Instrumentation.stop(Instrumentation.Phase.DECODE, start, allocated);
+	}
+	
+	private void updatePositions(int from)
+	{
+		for(int i = from; i < cityList.length; ++i)
+			positions[cityList[i]] = i;
+		decodeFrom = cityList.length;
+	}
+	
+	@Override
+	public Chromosome copy()
+	{
+		return new EPChromosome(this);
 	}
 	
 	public StateTable getStateTable()
@@ -79,23 +102,118 @@ public class EPChromosome extends Chromosome{
 		return stateTable;
 	}
 	
+	/**
+	 * @return: The memory used by the city list and the positions, in bytes. The state table is apart (see {@link StateTable#getFootprint()})
+	 */
+	@Override
+	public long getFootprint()
+	{
+		return super.getFootprint() + 4L * positions.length;
+	}
+	
 	/**
 	 * Overrided cost calculation method which forces the re-generation of the city list before calculating the cost
 	 */
 	@Override 
 	public void calculateCost() {
 		generateCityList();
+		hashUpToDate = false;
 		super.calculateCost();
 	}
+	
+	/**
+	 * Decodes only from the first step reading a changed cell: the cost of the previous tour is updated
+	 * with the edges of the suffix decoded again.
+	 */
+	@Override
+	public void evaluate()
+	{
+		if(costUpToDate)
+			return;
+		if(decodeFrom == 0 || distances == null)
+		{
+			calculateCost();
+			return;
+		}
+		double suffixCost = 0;
+		for(int i = decodeFrom; i < cityList.length; ++i)
+			suffixCost += distances.getDistance(cityList[i-1], cityList[i]);
+		long start = Instrumentation.start(), allocated = AllocationAccounting.threadAllocated();
+		EPDecoder.get(cities[0].getCandidateLists()).decode(stateTable, cityList, decodeFrom);
+		Instrumentation.stop(Instrumentation.Phase.DECODE, start, allocated);
+		for(int i = decodeFrom; i < cityList.length; ++i)
+			suffixCost -= distances.getDistance(cityList[i-1], cityList[i]);
+		updatePositions(decodeFrom);
+		cost -= suffixCost;
+		costUpToDate = true;
+		hashUpToDate = false;
+		checkDelta("incremental decoding");
+	}
 
 	/**
-	 * Given another genotype, creates 2 new genotypes through crossover
+	 * Writes the city list back into the state table, so that improvements of the tour by local search are inherited (Lamarckian learning)
 	 */
 	@Override
-	public Chromosome[] mate(Chromosome wife) 
+	protected void encodeCityList()
+	{
+		EPDecoder.get(cities[0].getCandidateLists()).encode(cityList, stateTable);
+		updatePositions(0);
+	}
+
+	@Override
+	long checkpointSize()
 	{
-		return mate(wife, Utils.random(1, stateTable.getNumberOfInputs()));
+		return super.checkpointSize() + 4 + stateTable.checkpointSize();
+	}
+
+	@Override
+	void writeCheckpoint(ByteBuffer out)
+	{
+		super.writeCheckpoint(out);
+		out.putInt(decodeFrom);
+		stateTable.writeCheckpoint(out);
+	}
+
+	@Override
+	void readCheckpoint(ByteBuffer in)
+	{
+		super.readCheckpoint(in);
+		decodeFrom = in.getInt();
+		stateTable.readCheckpoint(in);
+		for(int i = 0; i < cityList.length; ++i)
+			positions[cityList[i]] = i;
+	}
+
+	@Override
+	void setCities(int[] list)
+	{
+		super.setCities(list);
+		decodeFrom = 0;
+	}
+
+	@Override
+	void setCity(int index, int value)
+	{
+		super.setCity(index, value);
+		decodeFrom = 0;
+	}
 
+	@Override
+	void copyFrom(Chromosome other)
+	{
+		super.copyFrom(other);
+		stateTable.copyFrom(((EPChromosome)other).getStateTable());
+		System.arraycopy(((EPChromosome)other).positions, 0, positions, 0, positions.length);
+		decodeFrom = ((EPChromosome)other).decodeFrom;
+	}
+
+	/**
+	 * Given another genotype, overwrites 2 existing genotypes with the result of a crossover
+	 */
+	@Override
+	public void mateInto(Chromosome wife, Chromosome firstChild, Chromosome secondChild) 
+	{
+		mateInto(wife, Utils.random(1, stateTable.getNumberOfInputs()), (EPChromosome) firstChild, (EPChromosome) secondChild);
 	}
 	
 	/**
@@ -108,45 +226,94 @@ public class EPChromosome extends Chromosome{
 		EPChromosome[] children = new EPChromosome[2];
 		children[0] = new EPChromosome(this); // Dad 
 		children[1] = new EPChromosome(wife);
-		StateTable child1ST = children[0].getStateTable();
-		StateTable child2ST = children[1].getStateTable();
+		mateInto(wife, seperationIndex, children[0], children[1]);
+		return children;
+	}
+	
+	private void mateInto(Chromosome wife, int seperationIndex, EPChromosome firstChild, EPChromosome secondChild) 
+	{
+		firstChild.copyFrom(this); // Dad
+		secondChild.copyFrom(wife);
+		StateTable child1ST = firstChild.getStateTable();
+		StateTable child2ST = secondChild.getStateTable();
 		
 		if(seperationIndex > 1)
 		{
-			short tmp = child2ST.getStartState();
+			// Children decode as their parents up to the first swapped cell read by their tour
+			int firstStep = 0, secondStep = 0;
+			if(child1ST.getStartState() == child2ST.getStartState())
+			{
+				firstStep = firstChild.firstSwappedStep(child2ST, seperationIndex);
+				secondStep = secondChild.firstSwappedStep(child1ST, seperationIndex);
+			}
+			int tmp = child2ST.getStartState();
 			child2ST.setStartState(child1ST.getStartState());
 			child1ST.setStartState(tmp);
+			child1ST.swapOutputs(child2ST, 1, seperationIndex);
 			
-			for(int state = 0; state < stateTable.getNumbeOfStates(); ++state)
-			{
-				for(int input = 1; input < seperationIndex; ++input)
-				{
-					tmp = child2ST.getOutput(state, input);
-					child2ST.setOutput(state, input, child1ST.getOutput(state,input));
-					child1ST.setOutput(state, input, tmp);
-				}
-			}
+			// Children identical to their parents keep their cost (and their tour, decoded from the same genes)
+			firstChild.genesChanged(firstStep);
+			secondChild.genesChanged(secondStep);
 		}
-		return children;
 	}
 	
 	/**
-	 * This will mutate each cell of the state table with a probability P specified in the configuration
+	 * @param other: The state table whose inputs [1, seperationIndex) are swapped into this one
+	 * @return: The first decoding step reading a cell changed by the swap, the city list length if none
+	 */
+	private int firstSwappedStep(StateTable other, int seperationIndex)
+	{
+		int end = Math.min(seperationIndex, decodeFrom);
+		for(int step = 1; step < end; ++step)
+		{
+			if(stateTable.getOutput(cityList[step-1], step) != other.getOutput(cityList[step-1], step))
+				return step;
+		}
+		return end < seperationIndex ? decodeFrom : cityList.length;
+	}
+	
+	/**
+	 * Marks the tour, its cost and its hash as out of date with the state table from a decoding step
+	 * @param step: The first decoding step which reads a changed cell (the city list length if none)
+	 */
+	private void genesChanged(int step)
+	{
+		if(step >= cityList.length)
+			return;
+		// A cost out of date with the city list can't be updated by decoding a suffix only
+		decodeFrom = costUpToDate || decodeFrom < cityList.length ? Math.min(decodeFrom, step) : 0;
+		costUpToDate = false;
+		hashUpToDate = false;
+	}
+	
+	/**
+	 * This will mutate each cell of the state table with a probability P specified in the configuration.
+	 * Cells may be drawn with the output they had, or not be read by the tour: the cost stays up to date if none
+	 * of the cells read changed.
 	 */
 	@Override
 	public void mutate()
 	{
+		int firstStep = decodeFrom;
 		int numberOfCellsToMutate = 
 				(int) (probabilityOfMutation * stateTable.getNumbeOfStates()*stateTable.getNumberOfInputs());
 		if(Utils.getTrueWithProbability(probabilityOfMutation))// Possible mutation of start state
 		{
-			stateTable.setStartState((short) Utils.random(0, stateTable.getNumbeOfStates()-1)); 
+			int startState = Utils.random(0, stateTable.getNumbeOfStates()-1);
+			if(startState != stateTable.getStartState())
+				firstStep = 0;
+			stateTable.setStartState(startState); 
 		}
 		for(int i = 0 ; i < numberOfCellsToMutate; ++i)
 		{
 			int randomState = Utils.random(0,cities.length-1);
 			int randomInput = Utils.random(1,cities.length-2);
-			stateTable.setOutput(randomState, randomInput, (short) Utils.random(1,cities.length-randomInput));
+			int output = Utils.random(1,cities.length-randomInput);
+			// Positions before the first changed step are those of the tour decoded from the new genes
+			if(randomInput < firstStep && positions[randomState] == randomInput - 1 && output != stateTable.getOutput(randomState, randomInput))
+				firstStep = randomInput;
+			stateTable.setOutput(randomState, randomInput, output);
 		}
+		genesChanged(firstStep);
 	}
 }
\ No newline at end of file
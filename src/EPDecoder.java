@@ -0,0 +1,283 @@
+import java.util.Arrays;
+
+/**
+ * Decodes the state table of an {@link EPChromosome} into the order in which the cities are visited.
+ *
+ * At each step the decoder needs the n-th closest city which hasn't been visited yet. Rather
+ * than scanning the ranking of the current city and skipping visited cities, the unvisited
+ * candidates of every city are kept as a 64 bit mask: visiting a city clears its bit in the mask
+ * of each city which has it as candidate (see {@link CandidateLists#getReverseCandidates()}).
+ * Finding the n-th closest unvisited city is then a population count followed by a select within
+ * a single word.
+ *
+ * When fewer than n candidates remain unvisited, the city is selected along the complete ranking of the current
+ * city (see {@link CandidateLists#getNeighbour(int, int)}), 64 ranks at a time: the visited bits of their cities
+ * are gathered into a word, whose population count skips the whole block, or whose n-th set bit is the city.
+ * The ranking is read from its closer end: from the farthest city when n is past the middle of the unvisited cities.
+ * Ranks being drawn uniformly (see {@link EPChromosome}), a step reads a quarter of the ranking on average.
+ *
+ * Decoders hold scratch memory reused between decodes, so each thread uses its own (see {@link #get(CandidateLists)}).
+ *
+ * @author Harry Long
+ *
+ */
+public class EPDecoder {
+
+	private static final ThreadLocal<EPDecoder> decoders = new ThreadLocal<EPDecoder>();
+
+	private final CandidateLists candidateLists;
+
+	/**
+	 * One bit per city, set once visited
+	 */
+	private final long[] visited;
+
+	/**
+	 * For each city, one bit per candidate, set as long as the candidate isn't visited
+	 */
+	private final long[] unvisitedCandidates;
+
+	/**
+	 * Mask of the candidates of a city when none are visited
+	 */
+	private final long allCandidates;
+
+	/**
+	 * The number of cities not visited yet
+	 */
+	private int unvisitedCount;
+
+	private EPDecoder(CandidateLists candidateLists)
+	{
+		this.candidateLists = candidateLists;
+		visited = new long[(candidateLists.getCityCount() + 63) >>> 6];
+		unvisitedCandidates = new long[candidateLists.getCityCount()];
+		int maskedCount = candidateLists.getMaskedCandidateCount();
+		allCandidates = maskedCount == 64 ? -1L : (1L << maskedCount) - 1;
+	}
+
+	/**
+	 * Get the decoder of the calling thread
+	 * @param candidateLists: The ranking of the cities to decode with
+	 * @return: The decoder of this thread
+	 */
+	public static EPDecoder get(CandidateLists candidateLists)
+	{
+		EPDecoder decoder = decoders.get();
+		if(decoder == null || decoder.candidateLists != candidateLists)
+		{
+			decoder = new EPDecoder(candidateLists);
+			decoders.set(decoder);
+		}
+		return decoder;
+	}
+
+	/**
+	 * Generates the order in which the cities should be visited from the given state table
+	 * @param stateTable: The state table to decode
+	 * @param cityList: Filled with the cities, in the order they are visited
+	 */
+	public void decode(StateTable stateTable, int[] cityList)
+	{
+		decode(stateTable, cityList, 0);
+	}
+
+	/**
+	 * Decodes the state table from a given step, the cities visited before it being unchanged.
+	 * The visited cities of the prefix are replayed, without reading the state table nor selecting any city.
+	 * @param stateTable: The state table to decode
+	 * @param cityList: Its cities before the step are kept, the others are overwritten with the cities decoded
+	 * @param fromStep: The first step to decode (0 decodes the start state)
+	 */
+	public void decode(StateTable stateTable, int[] cityList, int fromStep)
+	{
+		reset();
+		if(fromStep == 0)
+		{
+			cityList[0] = stateTable.getStartState();
+			fromStep = 1;
+		}
+		for(int i = 0; i < fromStep; ++i)
+			visit(cityList[i]);
+
+		int currentCity = cityList[fromStep-1];
+		for(int i = fromStep; i < cityList.length; ++i)
+		{
+			currentCity = getNthClosestUnvisitedCity(currentCity, stateTable.getOutput(currentCity, i));
+			cityList[i] = currentCity;
+			visit(currentCity);
+		}
+	}
+
+	/**
+	 * The reverse of decoding: writes into a state table the outputs which decode into the given order.
+	 * Decoding reads a single cell per state (the state being the current city, the input the step), so
+	 * any order of the cities can be encoded exactly.
+	 * @param cityList: The cities, in the order they are visited
+	 * @param stateTable: Its start state and the cells read by the decoding are overwritten
+	 */
+	public void encode(int[] cityList, StateTable stateTable)
+	{
+		reset();
+		stateTable.setStartState(cityList[0]);
+		visit(cityList[0]);
+
+		for(int i = 1; i < cityList.length; ++i)
+		{
+			stateTable.setOutput(cityList[i-1], i, getUnvisitedRank(cityList[i-1], cityList[i]));
+			visit(cityList[i]);
+		}
+	}
+
+	/**
+	 * Marks all cities as unvisited
+	 */
+	void reset()
+	{
+		Arrays.fill(visited, 0L);
+		Arrays.fill(unvisitedCandidates, allCandidates);
+		unvisitedCount = candidateLists.getCityCount();
+	}
+
+	/**
+	 * Marks a city as visited
+	 * @param city: The city name
+	 */
+	void visit(int city)
+	{
+		visited[city >>> 6] |= 1L << city;
+		--unvisitedCount;
+
+		int[] reverseCandidates = candidateLists.getReverseCandidates();
+		int end = candidateLists.getReverseCandidatesEnd(city);
+		for(int i = candidateLists.getReverseCandidatesStart(city); i < end; ++i)
+		{
+			int entry = reverseCandidates[i];
+			unvisitedCandidates[entry >>> 6] &= ~(1L << entry); // Shift only uses the lowest 6 bits: the rank
+		}
+	}
+
+	boolean isVisited(int city)
+	{
+		return (visited[city >>> 6] & (1L << city)) != 0;
+	}
+
+	/**
+	 * The reverse of {@link #getNthClosestUnvisitedCity(int, int)}
+	 * @param city: The city name
+	 * @param target: An unvisited city
+	 * @return: n such that the target is the nth closest unvisited city to the city
+	 */
+	int getUnvisitedRank(int city, int target)
+	{
+		long mask = unvisitedCandidates[city];
+		int maskedCount = candidateLists.getMaskedCandidateCount();
+		for(int rank = 0; rank < maskedCount; ++rank)
+		{
+			if(candidateLists.getNeighbour(city, rank) == target)
+				return Long.bitCount(mask & ((1L << rank) - 1)) + 1;
+		}
+
+		// Beyond the candidates, count the unvisited cities along the complete ranking
+		int n = Long.bitCount(mask) + 1;
+		int rank = maskedCount;
+		if(candidateLists.isCompact())
+		{
+			char[] ranking = candidateLists.getCompactRanking(city);
+			for(; ranking[rank] != target; ++rank)
+			{
+				if(!isVisited(ranking[rank]))
+					++n;
+			}
+			return n;
+		}
+		int[] ranking = candidateLists.getRanking(city);
+		for(; ranking[rank] != target; ++rank)
+		{
+			if(!isVisited(ranking[rank]))
+				++n;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the nth closest city to a city, excluding those already visited
+	 * @param city: The city name
+	 * @param n: the nth closest city (Range: [1,number of unvisited cities])
+	 * @return: The nth closest unvisited city
+	 */
+	int getNthClosestUnvisitedCity(int city, int n)
+	{
+		long mask = unvisitedCandidates[city];
+		int unvisited = Long.bitCount(mask);
+		if(n <= unvisited)
+			return candidateLists.getNeighbour(city, select(mask, n));
+
+		// Not enough unvisited candidates, carry on along the complete ranking, from its closer end
+		int from = candidateLists.getMaskedCandidateCount(), end = candidateLists.getCityCount() - 1;
+		n -= unvisited;
+		int beyond = unvisitedCount - unvisited;
+		if(n <= beyond - n + 1)
+		{
+			for(int first = from; ; first += 64)
+			{
+				long block = getUnvisitedBlock(city, first, Math.min(first + 64, end));
+				int count = Long.bitCount(block);
+				if(n <= count)
+					return candidateLists.getNeighbour(city, first + select(block, n));
+				n -= count;
+			}
+		}
+		n = beyond - n + 1; // The nth unvisited city from the farthest
+		for(int last = end; ; last -= 64)
+		{
+			int first = Math.max(from, last - 64);
+			long block = getUnvisitedBlock(city, first, last);
+			int count = Long.bitCount(block);
+			if(n <= count)
+				return candidateLists.getNeighbour(city, first + select(block, count - n + 1));
+			n -= count;
+		}
+	}
+
+	/**
+	 * Gathers which cities of a block of (at most 64) ranks of a ranking are unvisited
+	 * @param city: The city name
+	 * @param first: The first rank of the block
+	 * @param last: The rank after the block
+	 * @return: Bit i set if the city at rank first + i isn't visited
+	 */
+	private long getUnvisitedBlock(int city, int first, int last)
+	{
+		long block = 0;
+		if(candidateLists.isCompact())
+		{
+			char[] ranking = candidateLists.getCompactRanking(city);
+			for(int rank = first; rank < last; ++rank)
+			{
+				int other = ranking[rank];
+				block |= (~visited[other >>> 6] >>> other & 1L) << (rank - first); // Shift only uses the lowest 6 bits
+			}
+			return block;
+		}
+		int[] ranking = candidateLists.getRanking(city);
+		for(int rank = first; rank < last; ++rank)
+		{
+			int other = ranking[rank];
+			block |= (~visited[other >>> 6] >>> other & 1L) << (rank - first);
+		}
+		return block;
+	}
+
+	/**
+	 * @param word: A word with at least n bits set
+	 * @param n: The set bit wanted (Range: [1, 64])
+	 * @return: The index of the nth lowest set bit
+	 */
+	private static int select(long word, int n)
+	{
+		for(int i = 1; i < n; ++i)
+			word &= word - 1;
+		return Long.numberOfTrailingZeros(word);
+	}
+}
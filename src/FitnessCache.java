@@ -0,0 +1,292 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of tour costs, so tours seen before (children identical to a parent or to each other, mostly)
+ * aren't evaluated again.
+ *
+ * Tours are keyed by a Zobrist-style hash: the XOR of a 64 bit key per (undirected) edge. A tour and its
+ * reverse have the same edges, so the same hash, and the same cost. Tours being open paths, rotating one
+ * changes its edges (and its cost), and its hash. Moves changing a few edges update the hash by XORing the keys of
+ * these edges only (see {@link Chromosome#getTourHash()}).
+ *
+ * The cache is a set-associative table: a hash can only be stored in the {@link #WAYS} slots of its set, one of
+ * which is evicted when the set is full:
+ *   - LRU: the slot least recently read or written
+ *   - CLOCK: a hand sweeps the set, clearing the reference bit of recently used slots, and evicts the first slot
+ *     without one (an approximation of LRU which only sets a bit at each use, rather than ordering the uses)
+ * Sets are guarded by striped locks, so threads evaluating chromosomes rarely wait for each other.
+ *
+ * A cache serves a single map (see {@link #get(DistanceMatrix)}).
+ *
+ * @author Harry Long
+ *
+ */
+public class FitnessCache {
+
+	public static enum Eviction { OFF, LRU, CLOCK };
+
+	/**
+	 * Number of slots of each set
+	 */
+	private static final int WAYS = 8;
+
+	/**
+	 * Number of locks guarding the sets
+	 */
+	private static final int STRIPES = 64;
+
+	/**
+	 * Stands for an empty slot (hashes equal to it are stored as {@link #EMPTY_SUBSTITUTE})
+	 */
+	private static final long EMPTY = 0;
+	private static final long EMPTY_SUBSTITUTE = 1;
+
+	/**
+	 * The cache of the map being solved
+	 */
+	private static volatile FitnessCache current;
+
+	private final DistanceMatrix distances;
+	private final Eviction eviction;
+	private final int setCount;
+
+	/**
+	 * For each slot: the tour hash, the cost, and the last use (LRU) or the reference bit (CLOCK)
+	 */
+	private final long[] hashes;
+	private final double[] costs;
+	private final long[] uses;
+
+	/**
+	 * CLOCK only: the position of the hand in each set
+	 */
+	private final byte[] hands;
+
+	private final Object[] locks = new Object[STRIPES];
+
+	/**
+	 * LRU only: counts the uses of all slots, the last use of a slot being the count at the time
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param distances: The distances of the map whose tours are cached
+	 * @param eviction: How a slot is chosen when a set is full (not OFF)
+	 * @param capacity: The number of tours cached (rounded up to a power of 2 of at least {@link #WAYS})
+	 */
+	FitnessCache(DistanceMatrix distances, Eviction eviction, int capacity)
+	{
+		this.distances = distances;
+		this.eviction = eviction;
+		int sets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+		setCount = Integer.highestOneBit(sets) < sets ? Integer.highestOneBit(sets) << 1 : sets;
+		hashes = new long[setCount * WAYS];
+		costs = new double[setCount * WAYS];
+		uses = new long[setCount * WAYS];
+		hands = new byte[setCount];
+		for(int i = 0; i < STRIPES; ++i)
+			locks[i] = new Object();
+	}
+
+	/**
+	 * Get the cache of a map, as configured (see {@link ConfigurationManager#getFitnessCache()})
+	 * @param distances: The distances of the map
+	 * @return: The cache of the map, null if disabled
+	 */
+	public static FitnessCache get(DistanceMatrix distances)
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		if(config.getFitnessCache() == Eviction.OFF || distances == null)
+			return null;
+		FitnessCache cache = current;
+		if(cache == null || cache.distances != distances || cache.eviction != config.getFitnessCache()
+				|| cache.getCapacity() < config.getFitnessCacheSize())
+		{
+			synchronized(FitnessCache.class)
+			{
+				cache = current;
+				if(cache == null || cache.distances != distances || cache.eviction != config.getFitnessCache()
+						|| cache.getCapacity() < config.getFitnessCacheSize())
+				{
+					cache = new FitnessCache(distances, config.getFitnessCache(), config.getFitnessCacheSize());
+					current = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * @return: The cache of the map being solved, null if disabled or not created yet
+	 */
+	public static FitnessCache getCurrent()
+	{
+		return ConfigurationManager.instance().getFitnessCache() == Eviction.OFF ? null : current;
+	}
+
+	/**
+	 * @return: The key of the undirected edge between two cities
+	 */
+	public static long edgeKey(int a, int b)
+	{
+		long key = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+		// SplitMix64 finalizer, so keys of close edges share no bit pattern
+		key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+		key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+		return key ^ (key >>> 31);
+	}
+
+	/**
+	 * @param tour: The cities in the order they are visited
+	 * @return: The hash of the tour
+	 */
+	public static long hash(int[] tour)
+	{
+		long hash = 0;
+		for(int i = 0; i < tour.length - 1; ++i)
+			hash ^= edgeKey(tour[i], tour[i+1]);
+		return hash;
+	}
+
+	/**
+	 * Looks a tour up
+	 * @param hash: The hash of the tour
+	 * @return: The cost of the tour, NaN if not cached
+	 */
+	public double lookup(long hash)
+	{
+		hash = hash == EMPTY ? EMPTY_SUBSTITUTE : hash;
+		int set = set(hash);
+		lookups.incrementAndGet();
+		synchronized(locks[set & (STRIPES - 1)])
+		{
+			for(int slot = set * WAYS; slot < (set + 1) * WAYS; ++slot)
+			{
+				if(hashes[slot] == hash)
+				{
+					uses[slot] = eviction == Eviction.LRU ? clock.incrementAndGet() : 1;
+					hits.incrementAndGet();
+					return costs[slot];
+				}
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Caches the cost of a tour
+	 * @param hash: The hash of the tour
+	 * @param cost: The cost of the tour
+	 */
+	public void store(long hash, double cost)
+	{
+		hash = hash == EMPTY ? EMPTY_SUBSTITUTE : hash;
+		int set = set(hash);
+		synchronized(locks[set & (STRIPES - 1)])
+		{
+			int first = set * WAYS, victim = -1;
+			for(int slot = first; slot < first + WAYS; ++slot)
+			{
+				if(hashes[slot] == hash || hashes[slot] == EMPTY)
+				{
+					victim = slot;
+					break;
+				}
+			}
+			if(victim < 0)
+			{
+				evictions.incrementAndGet();
+				victim = eviction == Eviction.LRU ? leastRecentlyUsed(first) : sweep(set);
+			}
+			hashes[victim] = hash;
+			costs[victim] = cost;
+			uses[victim] = eviction == Eviction.LRU ? clock.incrementAndGet() : 1;
+		}
+	}
+
+	private int leastRecentlyUsed(int first)
+	{
+		int victim = first;
+		for(int slot = first + 1; slot < first + WAYS; ++slot)
+		{
+			if(uses[slot] < uses[victim])
+				victim = slot;
+		}
+		return victim;
+	}
+
+	/**
+	 * Moves the hand of a set to the first slot without reference bit, clearing the bits it passes
+	 */
+	private int sweep(int set)
+	{
+		int first = set * WAYS;
+		while(true)
+		{
+			int slot = first + hands[set];
+			hands[set] = (byte) ((hands[set] + 1) % WAYS);
+			if(uses[slot] == 0)
+				return slot;
+			uses[slot] = 0;
+		}
+	}
+
+	/**
+	 * The set of a hash. Sets sharing their lowest bits share a lock
+	 */
+	private int set(long hash)
+	{
+		return (int) ((hash >>> 32) ^ hash) & (setCount - 1);
+	}
+
+	/**
+	 * @return: The number of tours which can be cached
+	 */
+	public int getCapacity()
+	{
+		return setCount * WAYS;
+	}
+
+	/**
+	 * @return: The memory used by the cached tours, in bytes
+	 */
+	public long getFootprint()
+	{
+		return 8L * (hashes.length + costs.length + uses.length) + hands.length;
+	}
+
+	public long getLookups()
+	{
+		return lookups.get();
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * @return: The fraction of lookups which found the tour cached
+	 */
+	public double getHitRate()
+	{
+		long lookups = getLookups();
+		return lookups == 0 ? 0 : getHits() / (double) lookups;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Fitness cache (" + eviction + ", " + getCapacity() + " tours): " + String.format("%.2f", getHitRate() * 100) + "% hits ("
+				+ getHits() + "/" + getLookups() + "), " + getEvictions() + " evictions";
+	}
+}
@@ -0,0 +1,128 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts recorded values (durations in nanoseconds) into log-linear buckets, as HDR histograms do: each power of 2
+ * is split into 16 buckets of equal width, so the percentiles are read with a relative error of at most 1/16
+ * (6.25%) from 1 to Long.MAX_VALUE, in a fixed 976 counters. Values below 16 each have their own bucket.
+ *
+ * Recording is a few atomic updates, without lock nor allocation, and may happen from any thread.
+ * Reading while values are being recorded gives a slightly inconsistent snapshot (count, sum and buckets aren't
+ * updated together), which is fine for monitoring.
+ *
+ * @author Harry Long
+ *
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value: The value to count, negative values count as 0
+	 */
+	public void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long previous = max.get();
+		while(value > previous && !max.compareAndSet(previous, value))
+			previous = max.get();
+	}
+
+	/**
+	 * @return: The bucket of a positive value
+	 */
+	static int bucket(long value)
+	{
+		if(value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return: The lowest value counted in a bucket
+	 */
+	static long lowestValue(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * @return: The highest value counted in a bucket
+	 */
+	static long highestValue(int bucket)
+	{
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValue(bucket + 1) - 1;
+	}
+
+	/**
+	 * @param percentile: The percentile wanted, from 0 to 100
+	 * @return: The highest value of the bucket holding the percentile, capped by the highest value recorded, 0 if empty
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long total = count.get();
+		if(total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100d * total));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; ++i)
+		{
+			seen += counts.get(i);
+			if(seen >= rank)
+				return Math.min(highestValue(i), getMax());
+		}
+		return getMax();
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * @return: The sum of the values recorded
+	 */
+	public long getTotal()
+	{
+		return sum.get();
+	}
+
+	public double getMean()
+	{
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Forgets the values recorded
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; ++i)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
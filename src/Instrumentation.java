@@ -0,0 +1,313 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Times the phases of each generation (selection, mating, mutation, decoding, evaluation, local search and survivor
+ * selection) into a histogram per phase (see {@link Histogram}), readable live through JMX under {@link #NAME}
+ * (with jconsole or VisualVM, for instance).
+ *
+ * A phase is timed by:
+ *   long start = Instrumentation.start(), allocated = AllocationAccounting.threadAllocated();
+ *   ...
+ *   Instrumentation.stop(Phase.MATING, start, allocated);
+ *
+ * The phases of the islands are also flight recorder events (see {@link #begin(Phase)}).
+ *
+ * The timers are on by default, and turned off by the JVM option -Dtsp.instrumentation=false. {@link #ENABLED}
+ * is then a constant false: the JIT compiler removes the calls entirely, so they cost nothing.
+ *
+ * Phases may nest: EVALUATION includes the DECODE of EP chromosomes, CHILDREN (the parallel pass over the children)
+ * includes their MUTATION, EVALUATION and LOCAL_SEARCH, and GENERATION includes all the others.
+ * MUTATION, DECODE, EVALUATION and LOCAL_SEARCH are timed per chromosome, on the worker threads; the others per
+ * generation of an island.
+ *
+ * @author Harry Long
+ *
+ */
+public class Instrumentation implements InstrumentationMBean {
+
+	public static enum Phase { GENERATION, SELECTION, MATING, CHILDREN, MUTATION, DECODE, EVALUATION, LOCAL_SEARCH, SURVIVOR_SELECTION };
+
+	/**
+	 * Whether the phases are timed, read once from the system property tsp.instrumentation
+	 */
+	public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("tsp.instrumentation"));
+
+	/**
+	 * The name of the MBean
+	 */
+	public static final String NAME = "TravellingSalesman:type=Instrumentation";
+
+	private static final Instrumentation instance = new Instrumentation();
+
+	/**
+	 * The phases begun by each thread (see {@link #begin(Phase)}): per phase, its start time, the bytes allocated by
+	 * the thread and the collections by then, and its event if recorded
+	 */
+	private static final ThreadLocal<PhaseStarts> phaseStarts = new ThreadLocal<PhaseStarts>() {
+		@Override
+		protected PhaseStarts initialValue() {
+			return new PhaseStarts();
+		}
+	};
+
+	private static class PhaseStarts {
+		final long[] starts = new long[3 * Phase.values().length];
+		final SolverEvents.Phase[] events = new SolverEvents.Phase[Phase.values().length];
+	}
+	private static boolean registered;
+
+	private final Histogram[] histograms;
+
+	// The previous read of the evaluations per second
+	private long lastEvaluations;
+	private long lastTime = System.nanoTime();
+
+	private Instrumentation()
+	{
+		histograms = new Histogram[Phase.values().length];
+		for(int i = 0; i < histograms.length; ++i)
+			histograms[i] = new Histogram();
+	}
+
+	public static Instrumentation instance()
+	{
+		return instance;
+	}
+
+	/**
+	 * @return: The start time of a phase, 0 if disabled
+	 */
+	public static long start()
+	{
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the duration of a phase, and its allocations when accounted (see {@link AllocationAccounting})
+	 * @param phase: The phase
+	 * @param start: Its start time (see {@link #start()})
+	 * @param allocated: The bytes allocated by the thread when it started (see {@link AllocationAccounting#threadAllocated()})
+	 */
+	public static void stop(Phase phase, long start, long allocated)
+	{
+		if(ENABLED)
+		{
+			instance.histograms[phase.ordinal()].record(System.nanoTime() - start);
+			if(AllocationAccounting.isEnabled())
+				AllocationAccounting.record(phase, allocated);
+		}
+	}
+
+	/**
+	 * Starts a phase of a generation of an island, timed both by the histograms and as a flight recorder event
+	 * (see {@link SolverEvents.Phase}), created only while a recording enables it. Phases timed per chromosome use
+	 * {@link #start()} instead: an event each would flood the recordings.
+	 * Each thread runs one phase of a kind at a time: phases of different kinds may nest
+	 * @param phase: The phase
+	 */
+	public static void begin(Phase phase)
+	{
+		if(!ENABLED)
+			return;
+		PhaseStarts starts = phaseStarts.get();
+		int index = 3 * phase.ordinal();
+		starts.starts[index] = start();
+		starts.starts[index + 1] = AllocationAccounting.threadAllocated();
+		starts.starts[index + 2] = AllocationAccounting.collections();
+		if(SolverEvents.PHASE.isEnabled())
+		{
+			SolverEvents.Phase event = new SolverEvents.Phase();
+			event.begin();
+			starts.events[phase.ordinal()] = event;
+		}
+	}
+
+	/**
+	 * Ends a phase started by {@link #begin(Phase)}, on the same thread
+	 * @param phase: The phase
+	 * @param generation: The generation of the island
+	 * @param populationSize: The population size of the island
+	 */
+	public static void end(Phase phase, int generation, int populationSize)
+	{
+		if(!ENABLED)
+			return;
+		PhaseStarts starts = phaseStarts.get();
+		int index = 3 * phase.ordinal();
+		stop(phase, starts.starts[index], starts.starts[index + 1]);
+		if(AllocationAccounting.isEnabled())
+			AllocationAccounting.recordCollections(phase, starts.starts[index + 2]);
+		SolverEvents.Phase event = starts.events[phase.ordinal()];
+		if(event == null)
+			return;
+		starts.events[phase.ordinal()] = null;
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.phase = phase.name();
+			event.generation = generation;
+			event.populationSize = populationSize;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server, once. Does nothing if disabled
+	 */
+	public static synchronized void register()
+	{
+		if(!ENABLED || registered)
+			return;
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(NAME);
+			if(!server.isRegistered(name))
+				server.registerMBean(instance, name);
+			registered = true;
+		}
+		catch(JMException e)
+		{
+			System.err.println("Unable to register the instrumentation MBean: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @param phase: The phase
+	 * @return: The histogram of its durations, in nanoseconds
+	 */
+	public Histogram getHistogram(Phase phase)
+	{
+		return histograms[phase.ordinal()];
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	@Override
+	public String[] getPhases()
+	{
+		Phase[] phases = Phase.values();
+		String[] names = new String[phases.length];
+		for(int i = 0; i < phases.length; ++i)
+			names[i] = phases[i].name();
+		return names;
+	}
+
+	@Override
+	public long[] getCounts()
+	{
+		long[] counts = new long[histograms.length];
+		for(int i = 0; i < histograms.length; ++i)
+			counts[i] = histograms[i].getCount();
+		return counts;
+	}
+
+	@Override
+	public double[] getTotalSeconds()
+	{
+		double[] totals = new double[histograms.length];
+		for(int i = 0; i < histograms.length; ++i)
+			totals[i] = histograms[i].getTotal() / 1e9;
+		return totals;
+	}
+
+	@Override
+	public double[] getMeanMicros()
+	{
+		double[] means = new double[histograms.length];
+		for(int i = 0; i < histograms.length; ++i)
+			means[i] = histograms[i].getMean() / 1e3;
+		return means;
+	}
+
+	@Override
+	public double[] getMedianMicros()
+	{
+		return getPercentileMicros(50);
+	}
+
+	@Override
+	public double[] get99thPercentileMicros()
+	{
+		return getPercentileMicros(99);
+	}
+
+	@Override
+	public double[] getMaxMicros()
+	{
+		double[] maxs = new double[histograms.length];
+		for(int i = 0; i < histograms.length; ++i)
+			maxs[i] = histograms[i].getMax() / 1e3;
+		return maxs;
+	}
+
+	private double[] getPercentileMicros(double percentile)
+	{
+		double[] values = new double[histograms.length];
+		for(int i = 0; i < histograms.length; ++i)
+			values[i] = histograms[i].getValueAtPercentile(percentile) / 1e3;
+		return values;
+	}
+
+	@Override
+	public long[] getAllocatedBytes()
+	{
+		return AllocationAccounting.getPhaseBytes();
+	}
+
+	@Override
+	public long getEvaluations()
+	{
+		return getHistogram(Phase.EVALUATION).getCount();
+	}
+
+	@Override
+	public synchronized double getEvaluationsPerSecond()
+	{
+		long evaluations = getEvaluations(), time = System.nanoTime();
+		double perSecond = time == lastTime ? 0 : (evaluations - lastEvaluations) * 1e9 / (time - lastTime);
+		lastEvaluations = evaluations;
+		lastTime = time;
+		return perSecond;
+	}
+
+	@Override
+	public double getFitnessCacheHitRate()
+	{
+		FitnessCache cache = FitnessCache.getCurrent();
+		return cache == null ? 0 : cache.getHitRate();
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		for(Histogram histogram : histograms)
+			histogram.reset();
+		lastEvaluations = 0;
+		lastTime = System.nanoTime();
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder("Phases (count, mean / median / 99th percentile / max in microseconds, total in seconds):");
+		for(Phase phase : Phase.values())
+		{
+			Histogram histogram = getHistogram(phase);
+			if(histogram.getCount() == 0)
+				continue;
+			builder.append(String.format("%n  %-18s %10d %12.1f %12.1f %12.1f %12.1f %10.3f", phase, histogram.getCount(),
+					histogram.getMean() / 1e3, histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+					histogram.getMax() / 1e3, histogram.getTotal() / 1e9));
+		}
+		return builder.toString();
+	}
+}
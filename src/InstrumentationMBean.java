@@ -0,0 +1,62 @@
+/**
+ * The phase timers of the solver, as read through JMX (see {@link Instrumentation}).
+ * The arrays hold a value per phase, in the order of {@link #getPhases()}
+ *
+ * @author Harry Long
+ *
+ */
+public interface InstrumentationMBean {
+
+	/**
+	 * @return: Whether the phases are timed (see {@link Instrumentation#ENABLED})
+	 */
+	boolean isEnabled();
+
+	/**
+	 * @return: The names of the phases
+	 */
+	String[] getPhases();
+
+	/**
+	 * @return: The number of times each phase ran
+	 */
+	long[] getCounts();
+
+	/**
+	 * @return: The total time spent in each phase, in seconds
+	 */
+	double[] getTotalSeconds();
+
+	double[] getMeanMicros();
+
+	double[] getMedianMicros();
+
+	double[] get99thPercentileMicros();
+
+	double[] getMaxMicros();
+
+	/**
+	 * @return: The bytes allocated during each phase, 0 unless accounted (see {@link AllocationAccounting})
+	 */
+	long[] getAllocatedBytes();
+
+	/**
+	 * @return: The number of chromosomes evaluated
+	 */
+	long getEvaluations();
+
+	/**
+	 * @return: The chromosomes evaluated per second since the previous read of this attribute
+	 */
+	double getEvaluationsPerSecond();
+
+	/**
+	 * @return: The hit rate of the fitness cache (see {@link FitnessCache#getHitRate()}), 0 if disabled
+	 */
+	double getFitnessCacheHitRate();
+
+	/**
+	 * Forgets the times recorded so far
+	 */
+	void reset();
+}
@@ -0,0 +1,511 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A population of chromosomes evolving on its own.
+ *
+ * A run evolves a single island, unless configured to evolve several in parallel (see {@link IslandEngine}).
+ * Each island draws from its own random generator.
+ *
+ * @author Harry Long
+ *
+ */
+public class Island {
+
+	/**
+	 * The list of chromosomes.
+	 */
+	private Chromosome[] chromosomes;
+
+	/**
+	 * Owns the chromosomes, recycling those which don't survive as children of the next generations
+	 */
+	private final PopulationArena arena;
+
+	/**
+	 * Number of chromosomes kept at each generation
+	 */
+	private final int populationSize;
+
+	/**
+	 * Number of children generated at each generation (EP only)
+	 */
+	private final int childrenPerGeneration;
+
+	/**
+	 * The configuration for this run
+	 */
+	private final ConfigurationManager config = ConfigurationManager.instance();
+
+	/**
+	 * Mutates and evaluates the children
+	 */
+	private final ParallelEvaluator evaluator;
+
+	/**
+	 * The random generator of this island
+	 */
+	private final Rng random;
+
+	/**
+	 * Selects the parents (EP only)
+	 */
+	private final TournamentSelector parentSelector;
+
+	/**
+	 * Selects the parents, and holds their weights, indices and chromosomes (GA only)
+	 */
+	private final RouletteWheel rouletteWheel = new RouletteWheel();
+	private double[] rouletteWeights = new double[0];
+	private int[] parentIndices = new int[0];
+	private Chromosome[] parentArray = new Chromosome[0];
+
+	/**
+	 * Selects the survivors among parents and children (EP only)
+	 */
+	private final SurvivorSelector survivorSelector = new SurvivorSelector();
+
+	/**
+	 * Number of generations evolved so far
+	 */
+	private int generation;
+
+	/**
+	 * Whether the children of the current generation are improved by local search
+	 */
+	private boolean improveChildren;
+
+	/**
+	 * The selected parents, and the chromosomes not selected (EP only)
+	 */
+	private final Chromosome[] parents;
+	private final Chromosome[] unusedPopulation;
+
+	/**
+	 * Creates an island with a random population, part of it seeded by constructive heuristics (see {@link Seeding})
+	 *
+	 * @param cities: The cities
+	 * @param populationSize: Number of chromosomes kept at each generation
+	 * @param childrenPerGeneration: Number of children generated at each generation (EP only)
+	 * @param evaluator: Mutates and evaluates the children
+	 * @param random: The random generator of this island
+	 */
+	public Island(City[] cities, int populationSize, int childrenPerGeneration, ParallelEvaluator evaluator, Rng random)
+	{
+		this(createPopulation(cities, populationSize, random), populationSize, childrenPerGeneration, evaluator, random);
+	}
+
+	/**
+	 * Creates an island resuming from a checkpoint (see {@link #writeCheckpoint(ByteBuffer)})
+	 *
+	 * @param cities: The cities
+	 * @param in: The checkpoint, at the population of this island
+	 * @param populationSize: Number of chromosomes kept at each generation
+	 * @param childrenPerGeneration: Number of children generated at each generation (EP only)
+	 * @param evaluator: Mutates and evaluates the children
+	 * @param random: The random generator of this island, restored to its state at the time of the checkpoint
+	 */
+	Island(City[] cities, ByteBuffer in, int populationSize, int childrenPerGeneration, ParallelEvaluator evaluator, Rng random)
+	{
+		this(readPopulation(cities, in, random), populationSize, childrenPerGeneration, evaluator, random);
+		generation = in.getInt();
+	}
+
+	private Island(Chromosome[] chromosomes, int populationSize, int childrenPerGeneration, ParallelEvaluator evaluator, Rng random)
+	{
+		this.chromosomes = chromosomes;
+		this.populationSize = populationSize;
+		this.childrenPerGeneration = childrenPerGeneration;
+		this.evaluator = evaluator;
+		this.random = random;
+		this.parentSelector = new TournamentSelector(config.getK(), config.getProbabilityOfSelectingFittestParent(),
+				config.isParallelSelection() ? evaluator : null);
+		this.parents = new Chromosome[childrenPerGeneration];
+		this.unusedPopulation = new Chromosome[populationSize];
+		arena = new PopulationArena(chromosomes);
+	}
+
+	private static Chromosome[] createPopulation(City[] cities, int populationSize, Rng random)
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		Chromosome[] chromosomes;
+		Rng previous = Utils.setThreadRandom(random);
+		try
+		{
+			switch(config.getAlgorithm()){
+			case EVOLUTIONARY_PROGRAMMING:
+				chromosomes = new EPChromosome[populationSize];
+				for(int i = 0 ; i < chromosomes.length ; ++i)
+					chromosomes[i] = new EPChromosome(cities);
+				break;
+			case LIN_KERNIGHAN:
+				chromosomes = new LKChromosome[populationSize];
+				for(int i = 0 ; i < chromosomes.length ; ++i)
+					chromosomes[i] = new LKChromosome(cities);
+				break;
+			case GENETIC_ALGORITHM:
+			default:
+				chromosomes = new GAChromosome[populationSize];
+				for(int i = 0 ; i < chromosomes.length ; ++i)
+					chromosomes[i] = new GAChromosome(cities);
+				break;
+			}
+
+			// Part of the population starts from constructive heuristics
+			int seeded = Math.min(chromosomes.length, (int) Math.round(populationSize * config.getSeedingFraction()));
+			for(int i = 0; i < seeded; ++i)
+				Seeding.seed(chromosomes[i], config.getSeedingHeuristic(), i);
+		}
+		finally
+		{
+			Utils.setThreadRandom(previous);
+		}
+		return chromosomes;
+	}
+
+	/**
+	 * Reads the random generator and the chromosomes written by {@link #writeCheckpoint(ByteBuffer)}.
+	 * Chromosomes are created empty rather than at random, then overwritten
+	 */
+	private static Chromosome[] readPopulation(City[] cities, ByteBuffer in, Rng random)
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		random.readCheckpoint(in);
+		Chromosome[] chromosomes;
+		switch(config.getAlgorithm()){
+		case EVOLUTIONARY_PROGRAMMING:
+			chromosomes = new EPChromosome[in.getInt()];
+			break;
+		case LIN_KERNIGHAN:
+			chromosomes = new LKChromosome[in.getInt()];
+			break;
+		case GENETIC_ALGORITHM:
+		default:
+			chromosomes = new GAChromosome[in.getInt()];
+			break;
+		}
+		for(int i = 0 ; i < chromosomes.length ; ++i)
+		{
+			chromosomes[i] = createEmptyChromosome(cities);
+			chromosomes[i].readCheckpoint(in);
+		}
+		return chromosomes;
+	}
+
+	/**
+	 * Creates a chromosome of the configured algorithm, to be overwritten (its genes aren't drawn at random)
+	 * @param cities: The cities
+	 * @return: The chromosome
+	 */
+	static Chromosome createEmptyChromosome(City[] cities)
+	{
+		switch(ConfigurationManager.instance().getAlgorithm()){
+		case EVOLUTIONARY_PROGRAMMING:
+			return new EPChromosome(cities, new StateTable(cities.length, cities.length, ConfigurationManager.instance().getStateTableLayout()));
+		case LIN_KERNIGHAN:
+			return new LKChromosome(cities);
+		case GENETIC_ALGORITHM:
+		default:
+			return new GAChromosome(cities);
+		}
+	}
+
+	/**
+	 * @return: The number of bytes written by {@link #writeCheckpoint(ByteBuffer)}
+	 */
+	long checkpointSize()
+	{
+		long size = 32 + 4 + 4;
+		for(Chromosome chromosome : chromosomes)
+			size += chromosome.checkpointSize();
+		return size;
+	}
+
+	/**
+	 * Writes the random generator, the population and the generation of this island into a checkpoint (see {@link Checkpoint}).
+	 * Only the population is written: the other chromosomes of the arena are overwritten before being read again
+	 * @param out: The buffer written
+	 */
+	void writeCheckpoint(ByteBuffer out)
+	{
+		random.writeCheckpoint(out);
+		out.putInt(chromosomes.length);
+		for(Chromosome chromosome : chromosomes)
+			chromosome.writeCheckpoint(out);
+		out.putInt(generation);
+	}
+
+	/**
+	 * Evolves the population by a single generation
+	 */
+	public void evolve()
+	{
+		Rng previous = Utils.setThreadRandom(random);
+		Instrumentation.begin(Instrumentation.Phase.GENERATION);
+		try
+		{
+			// Memetic step, every <local search interval> generations
+			boolean localSearch = generation++ % Math.max(1, config.getLocalSearchInterval()) == 0;
+			improveChildren = localSearch && config.getLocalSearch() == LocalSearch.Budget.CHILDREN;
+			if(localSearch && config.getLocalSearch() == LocalSearch.Budget.ELITES)
+				improveElites(Math.min(config.getLocalSearchElites(), chromosomes.length));
+
+			switch(config.getAlgorithm()){
+			case EVOLUTIONARY_PROGRAMMING:
+				evolveThroughEP();
+				break;
+			case GENETIC_ALGORITHM:
+				evolveThroughGA();
+				break;
+			case LIN_KERNIGHAN:
+				evolveThroughLK();
+				break;
+			default:
+				System.err.println("Invalid Algorithm Chosen!"); // This will never happen
+				break;
+			}
+		}
+		finally
+		{
+			Utils.setThreadRandom(previous);
+			Instrumentation.end(Instrumentation.Phase.GENERATION, generation - 1, chromosomes.length);
+		}
+	}
+
+	/**
+	 * Improves the fittest chromosomes by local search
+	 * @param n: The number of chromosomes to improve
+	 */
+	private void improveElites(int n)
+	{
+		evaluator.evaluate(chromosomes);
+		Ranking.selectBest(chromosomes, n);
+		evaluator.improve(chromosomes, n);
+	}
+
+	/**
+	 * Get copies of the fittest chromosomes
+	 * @param n: The number of chromosomes wanted
+	 * @return: Copies of the n fittest chromosomes
+	 */
+	public Chromosome[] getElites(int n)
+	{
+		n = Math.min(n, chromosomes.length);
+		Ranking.selectBest(chromosomes, n);
+		Chromosome[] elites = new Chromosome[n];
+		for(int i = 0; i < n; ++i)
+			elites[i] = chromosomes[i].copy();
+		return elites;
+	}
+
+	/**
+	 * Replaces the least fit chromosomes by copies of the given migrants
+	 * @param migrants: The chromosomes coming from other islands
+	 */
+	public void immigrate(Chromosome[] migrants)
+	{
+		int n = Math.min(migrants.length, chromosomes.length);
+		if(n == 0)
+			return;
+		Ranking.selectBest(chromosomes, chromosomes.length - n); // The least fit end up at the back
+		for(int i = 0; i < n; ++i)
+			chromosomes[chromosomes.length - n + i].copyFrom(migrants[i]); // The arena keeps owning its chromosomes
+	}
+
+	/**
+	 * @return: The number of chromosomes allocated for this island so far
+	 */
+	public int getAllocatedChromosomes()
+	{
+		return arena.getSlotCount();
+	}
+
+	/**
+	 * @return: The memory used by the genes of the chromosomes allocated for this island, in bytes (see {@link Chromosome#getFootprint()})
+	 */
+	public long getFootprint()
+	{
+		long footprint = 0;
+		for(int i = 0; i < arena.getSlotCount(); ++i)
+			footprint += arena.getSlot(i).getFootprint();
+		return footprint;
+	}
+
+	/**
+	 * @return: The memory used by the state tables of the chromosomes allocated for this island (EP only), in bytes
+	 */
+	public long getStateTableFootprint()
+	{
+		long footprint = 0;
+		for(int i = 0; i < arena.getSlotCount(); ++i)
+		{
+			if(arena.getSlot(i) instanceof EPChromosome)
+				footprint += ((EPChromosome) arena.getSlot(i)).getStateTable().getFootprint();
+		}
+		return footprint;
+	}
+
+	public Chromosome[] getChromosomes()
+	{
+		return chromosomes;
+	}
+
+	public int getPopulationSize()
+	{
+		return populationSize;
+	}
+
+	public int getChildrenPerGeneration()
+	{
+		return childrenPerGeneration;
+	}
+
+	/**
+	 * Evolves the genotypes by a single generation using Evolutionary Programming
+	 */
+	private void evolveThroughEP()
+	{
+	  int nParents = childrenPerGeneration; // 2-2 Relationship
+	  
+	  Chromosome[] nextGenPopulation = arena.getNextPopulation();
+	  int nextGenSize = 0;
+	  
+	  //*** PARENT SELECTION ***//
+	  Instrumentation.begin(Instrumentation.Phase.SELECTION);
+	  Chromosome[] parentPopulation;
+	  int unusedCount; // Population not used for mating, at the front of unusedPopulation
+	  if(nParents == chromosomes.length) // No need performing tournament selection if # parents to select == # children
+	  {
+		  parentPopulation = chromosomes;
+		  unusedCount = 0;
+	  }
+	  else
+	  {
+		  parentPopulation = parents;
+		  parentSelector.select(chromosomes, chromosomes.length, nParents, parentPopulation, unusedPopulation);
+		  unusedCount = chromosomes.length - nParents;
+	  }
+	  Instrumentation.end(Instrumentation.Phase.SELECTION, generation - 1, chromosomes.length);
+	  
+
+	  //*** Mating ***//
+	  Instrumentation.begin(Instrumentation.Phase.MATING);
+	  Chromosome[] childPopulation = arena.getChildren(nParents);
+	  for(int index = 0; index < nParents-1; index +=2)
+		  parentPopulation[index].mateInto(parentPopulation[index+1], childPopulation[index], childPopulation[index+1]); // Non-mutated
+	  Instrumentation.end(Instrumentation.Phase.MATING, generation - 1, chromosomes.length);
+	  
+	  //*** MUTATION ***//
+	  Instrumentation.begin(Instrumentation.Phase.CHILDREN);
+	  evaluator.mutateAndEvaluate(childPopulation, improveChildren);
+	  Instrumentation.end(Instrumentation.Phase.CHILDREN, generation - 1, chromosomes.length);
+
+	  //*** SURVIVOR SELECTION ***//
+	  /*
+	   *  1 - Pair parents and children by fitness
+	   *  2 - Randomly select a pair and select the fitest of the parent/child. Call it F
+	   *  3 - Randomly select Q other children
+	   *  4 - Select the fittest of Q U F 
+	   *  5 - Repeat <population_size> times
+	   */
+	  Instrumentation.begin(Instrumentation.Phase.SURVIVOR_SELECTION);
+	  Chromosome.sortChromosomes(parentPopulation);
+	  Chromosome.sortChromosomes(childPopulation);
+	  nextGenSize = survivorSelector.select(parentPopulation, childPopulation, config.getQ(), nextGenPopulation, populationSize);
+	  
+	  int i = 0;
+	  while(nextGenSize < populationSize && i < unusedCount)
+		  nextGenPopulation[nextGenSize++] = unusedPopulation[i++];
+	  	  
+	  arena.commit(nextGenSize);
+	  chromosomes = arena.getPopulation();
+	  Instrumentation.end(Instrumentation.Phase.SURVIVOR_SELECTION, generation - 1, chromosomes.length);
+	}
+	
+	/**
+	 * Evolves the genotypes by a single generation using Genetic Algorithms
+	 */
+	private void evolveThroughGA()
+	{
+	  int nParents = Math.max(2, populationSize / 10); // A tenth of the population mates (100 of the 1000 by default)
+	  nParents -= nParents % 2;
+	  
+	  // Parent Selection
+	  /**
+	   * Uses ranked based roulette wheel selection
+	   * The fitter individuals are assigned a probability slightly higher than unfit ones
+	   */
+	  double totalCost = 0;
+	  evaluator.evaluate(chromosomes);
+	  Instrumentation.begin(Instrumentation.Phase.SELECTION);
+	  for (int i=0; i< chromosomes.length; i++)
+	  {
+		  totalCost += chromosomes[i].getCost(); //Calculating summed cost of generation
+	  }
+	  Chromosome.sortChromosomes(chromosomes, populationSize);
+
+	  if (rouletteWeights.length < chromosomes.length)
+		  rouletteWeights = new double[chromosomes.length];
+	  for (int i= 0; i<chromosomes.length; i++)
+	  {
+		  rouletteWeights[i] = totalCost - chromosomes[i].getCost()/totalCost; // Total cost minus the relative cost of each chromosome
+	  }
+	  rouletteWheel.reset(rouletteWeights, chromosomes.length);
+
+	  if (parentArray.length != nParents)
+	  {
+		  parentArray = new Chromosome[nParents];
+		  parentIndices = new int[nParents];
+	  }
+	  switch(config.getRouletteSampling()){
+	  case SUS:
+		  // The parents come out sorted by fitness, shuffle them so pairs are random
+		  rouletteWheel.spinUniversal(nParents, parentIndices);
+		  for (int i = nParents-1; i > 0; i--)
+		  {
+			  int j = Utils.random(0, i);
+			  int tmp = parentIndices[i];
+			  parentIndices[i] = parentIndices[j];
+			  parentIndices[j] = tmp;
+		  }
+		  break;
+	  case WITHOUT_REPLACEMENT:
+	  default:
+		  for (int i =0; i< nParents; i++)
+			  parentIndices[i] = rouletteWheel.spinWithoutReplacement();
+		  break;
+	  }
+	  for (int i =0; i< nParents; i++)
+		  parentArray[i] = chromosomes[parentIndices[i]];
+	  Instrumentation.end(Instrumentation.Phase.SELECTION, generation - 1, chromosomes.length);
+
+	  // Mating of chosen parents. Each pair of parents produce a pair of children
+	  Instrumentation.begin(Instrumentation.Phase.MATING);
+	  Chromosome[] childPopulation = arena.getChildren(nParents);
+	  for (int i=0; i<nParents-1; i += 2)
+		  parentArray[i].mateInto(parentArray[i+1], childPopulation[i], childPopulation[i+1]);
+	  Instrumentation.end(Instrumentation.Phase.MATING, generation - 1, chromosomes.length);
+	  Instrumentation.begin(Instrumentation.Phase.CHILDREN);
+	  evaluator.mutateAndEvaluate(childPopulation, improveChildren);
+	  Instrumentation.end(Instrumentation.Phase.CHILDREN, generation - 1, chromosomes.length);
+	 
+	  // Recombination: the population is already sorted, only the children need sorting before merging both
+	  Instrumentation.begin(Instrumentation.Phase.SURVIVOR_SELECTION);
+	  Chromosome.sortChromosomes(childPopulation);
+	  Chromosome[] nextGenPopulation = arena.getNextPopulation();
+	  Ranking.merge(chromosomes, childPopulation, nextGenPopulation); // Take best solutions to use in next generation
+	  arena.commit(nextGenPopulation.length);
+	  chromosomes = arena.getPopulation();
+	  Instrumentation.end(Instrumentation.Phase.SURVIVOR_SELECTION, generation - 1, chromosomes.length);
+
+	}
+
+	/**
+	 * Evolves the genotypes by a single generation using Lin-Kernighan: each chromosome is improved on its own (see {@link LKChromosome})
+	 */
+	private void evolveThroughLK()
+	{
+	  Instrumentation.begin(Instrumentation.Phase.CHILDREN);
+	  evaluator.mutateAndEvaluate(chromosomes);
+	  Instrumentation.end(Instrumentation.Phase.CHILDREN, generation - 1, chromosomes.length);
+	}
+}
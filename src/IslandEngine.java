@@ -0,0 +1,373 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Evolves several islands (independent populations) in parallel, each on its own thread.
+ * All islands share the same, read-only, cities and distances.
+ *
+ * Every <migration interval> generations each island sends copies of its fittest chromosomes
+ * to other islands, where they replace the least fit chromosomes. Destinations depend on the topology:
+ *   - RING: the next island
+ *   - RANDOM: the island at a random offset, the same offset for all islands (so each island receives from exactly one other)
+ *   - FULL: every other island
+ *
+ * Migrants go through one exchange slot per (source, destination) pair. A slot is only written by its
+ * source and emptied by its destination, so no locking is needed. Migrants sent during a generation
+ * are received at the start of the next one, which keeps runs independent of thread scheduling. Slots
+ * come in two banks, alternating between generations, so an island starting late can't receive
+ * migrants sent during the same generation.
+ *
+ * @author Harry Long
+ *
+ */
+public class IslandEngine {
+
+	public static enum Topology { RING, RANDOM, FULL };
+
+	private final Island[] islands;
+
+	/**
+	 * Runs the islands, null if there is only one (it then evolves on the calling thread)
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Migrants in transit from island i to island j are in slot (i * island count + j) of the bank of the generation they were sent
+	 */
+	private final AtomicReferenceArray<Chromosome[]> exchange;
+
+	private final Topology topology;
+	private final int migrationInterval;
+	private final int migrantCount;
+
+	/**
+	 * Draws the offsets of the random topology
+	 */
+	private final Rng topologyRandom;
+
+	/**
+	 * Evaluators of the islands
+	 */
+	private final List<ParallelEvaluator> evaluators = new ArrayList<ParallelEvaluator>();
+
+	private int generation;
+
+	/**
+	 * The chromosomes of all islands, reused between generations
+	 */
+	private Chromosome[] allChromosomes = new Chromosome[0];
+
+	/**
+	 * Creates the islands, as configured, with random populations
+	 * @param cities: The cities
+	 */
+	public IslandEngine(City[] cities)
+	{
+		this(cities, null);
+	}
+
+	/**
+	 * Creates the islands, as configured, resuming from a checkpoint (see {@link #writeCheckpoint(ByteBuffer)})
+	 * @param cities: The cities
+	 * @param checkpoint: The checkpoint, at the state of the islands. Null for random populations
+	 */
+	IslandEngine(City[] cities, ByteBuffer checkpoint)
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		int islandCount = Math.max(1, Math.min(config.getIslands(), config.getPopulationSize() / 2));
+		topology = config.getMigrationTopology();
+		migrationInterval = config.getMigrationInterval();
+		migrantCount = config.getMigrants();
+		topologyRandom = Rng.stream(config.getSeed(), Rng.TOPOLOGY_STREAM);
+		exchange = new AtomicReferenceArray<Chromosome[]>(2 * islandCount * islandCount);
+		if(checkpoint != null)
+		{
+			generation = checkpoint.getInt();
+			topologyRandom.readCheckpoint(checkpoint);
+			if(checkpoint.getInt() != islandCount)
+			{
+				System.err.println("The checkpoint has a different number of islands than configured. Exiting");
+				System.exit(1);
+			}
+		}
+
+		islands = new Island[islandCount];
+		for(int i = 0; i < islandCount; ++i)
+		{
+			// Split the population (and children) as evenly as possible
+			int populationSize = config.getPopulationSize() / islandCount + (i < config.getPopulationSize() % islandCount ? 1 : 0);
+			int childrenPerGeneration = (int) ((long) config.getChildrenPerGeneration() * populationSize / config.getPopulationSize());
+			childrenPerGeneration = Math.max(2, childrenPerGeneration - childrenPerGeneration % 2);
+			childrenPerGeneration = Math.min(childrenPerGeneration, populationSize - populationSize % 2);
+
+			// A single island has all the threads to itself, otherwise the islands are the unit of parallelism
+			ParallelEvaluator evaluator = new ParallelEvaluator(islandCount == 1 ? config.getThreads() : 1);
+			evaluators.add(evaluator);
+			Rng random = Rng.stream(config.getSeed(), Rng.FIRST_ISLAND_STREAM + i);
+			if(checkpoint == null)
+				islands[i] = new Island(cities, populationSize, childrenPerGeneration, evaluator, random);
+			else if(checkpoint.getInt() != populationSize || checkpoint.getInt() != childrenPerGeneration)
+			{
+				System.err.println("The population of island " + i + " of the checkpoint differs from the configuration. Exiting");
+				System.exit(1);
+			}
+			else
+				islands[i] = new Island(cities, checkpoint, populationSize, childrenPerGeneration, evaluator, random);
+		}
+		if(checkpoint != null)
+			readExchange(cities, checkpoint);
+
+		executor = islandCount > 1 ? Executors.newFixedThreadPool(islandCount) : null;
+	}
+
+	/**
+	 * Evolves all islands by a single generation, and migrates the fittest chromosomes if it is time to
+	 */
+	public void evolve()
+	{
+		final int islandCount = islands.length;
+		final boolean migrate = islandCount > 1 && migrationInterval > 0 && migrantCount > 0 && (generation + 1) % migrationInterval == 0;
+		final int offset = migrate && topology == Topology.RANDOM ? 1 + topologyRandom.nextInt(islandCount - 1) : 1;
+
+		if(executor == null)
+		{
+			islands[0].evolve();
+		}
+		else
+		{
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(islandCount);
+			for(int i = 0; i < islandCount; ++i)
+			{
+				final int index = i;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						Island island = islands[index];
+						receive(index);
+						island.evolve();
+						if(migrate)
+							send(index, offset);
+						return null;
+					}
+				});
+			}
+
+			try
+			{
+				for(Future<Void> result : executor.invokeAll(tasks))
+					result.get();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch(ExecutionException e)
+			{
+				System.err.println("Island failed to evolve. Exiting");
+				e.getCause().printStackTrace();
+				System.exit(1);
+			}
+		}
+		generation++;
+	}
+
+	/**
+	 * Sends copies of the fittest chromosomes of an island to its destination(s)
+	 */
+	private void send(int from, int offset)
+	{
+		int islandCount = islands.length;
+		int bank = (generation % 2) * islandCount * islandCount;
+		switch(topology){
+		case FULL:
+			for(int to = 0; to < islandCount; ++to)
+			{
+				if(to != from)
+					exchange.set(bank + from * islandCount + to, islands[from].getElites(migrantCount));
+			}
+			break;
+		case RANDOM:
+		case RING:
+		default:
+			exchange.set(bank + from * islandCount + (from + offset) % islandCount, islands[from].getElites(migrantCount));
+			break;
+		}
+	}
+
+	/**
+	 * Lets in the migrants waiting for an island
+	 */
+	private void receive(int to)
+	{
+		int islandCount = islands.length;
+		int bank = ((generation + 1) % 2) * islandCount * islandCount; // Sent during the previous generation
+		for(int from = 0; from < islandCount; ++from)
+		{
+			Chromosome[] migrants = exchange.getAndSet(bank + from * islandCount + to, null);
+			if(migrants != null)
+				islands[to].immigrate(migrants);
+		}
+	}
+
+	/**
+	 * @return: The number of bytes written by {@link #writeCheckpoint(ByteBuffer)}
+	 */
+	long checkpointSize()
+	{
+		long size = 4 + 32 + 4;
+		for(Island island : islands)
+			size += 8 + island.checkpointSize();
+		for(int slot = 0; slot < exchange.length(); ++slot)
+		{
+			size += 4;
+			Chromosome[] migrants = exchange.get(slot);
+			if(migrants != null)
+			{
+				for(Chromosome migrant : migrants)
+					size += migrant.checkpointSize();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the state of the islands into a checkpoint (see {@link Checkpoint}), between two generations: the
+	 * islands, then every exchange slot (its number of migrants, -1 if empty, and the migrants), so migrants sent
+	 * during the last generation are received by the resumed run
+	 * @param out: The buffer written
+	 */
+	void writeCheckpoint(ByteBuffer out)
+	{
+		out.putInt(generation);
+		topologyRandom.writeCheckpoint(out);
+		out.putInt(islands.length);
+		for(Island island : islands)
+		{
+			out.putInt(island.getPopulationSize());
+			out.putInt(island.getChildrenPerGeneration());
+			island.writeCheckpoint(out);
+		}
+		for(int slot = 0; slot < exchange.length(); ++slot)
+		{
+			Chromosome[] migrants = exchange.get(slot);
+			out.putInt(migrants != null ? migrants.length : -1);
+			if(migrants != null)
+			{
+				for(Chromosome migrant : migrants)
+					migrant.writeCheckpoint(out);
+			}
+		}
+	}
+
+	/**
+	 * Reads the exchange slots written by {@link #writeCheckpoint(ByteBuffer)}
+	 */
+	private void readExchange(City[] cities, ByteBuffer in)
+	{
+		for(int slot = 0; slot < exchange.length(); ++slot)
+		{
+			int count = in.getInt();
+			if(count < 0)
+				continue;
+			Chromosome[] migrants = new Chromosome[count];
+			for(int i = 0; i < count; ++i)
+			{
+				migrants[i] = Island.createEmptyChromosome(cities);
+				migrants[i].readCheckpoint(in);
+			}
+			exchange.set(slot, migrants);
+		}
+	}
+
+	/**
+	 * Get the chromosomes of all islands. The array is reused by the next calls
+	 * @return: The chromosomes of all islands
+	 */
+	public Chromosome[] getChromosomes()
+	{
+		if(islands.length == 1)
+			return islands[0].getChromosomes();
+
+		int count = 0;
+		for(Island island : islands)
+			count += island.getChromosomes().length;
+		if(allChromosomes.length != count)
+			allChromosomes = new Chromosome[count];
+		Chromosome[] chromosomes = allChromosomes;
+		int next = 0;
+		for(Island island : islands)
+		{
+			Chromosome[] islandChromosomes = island.getChromosomes();
+			System.arraycopy(islandChromosomes, 0, chromosomes, next, islandChromosomes.length);
+			next += islandChromosomes.length;
+		}
+		return chromosomes;
+	}
+
+	/**
+	 * @return: The number of chromosomes evaluated by all islands so far (see {@link ParallelEvaluator#getEvaluations()})
+	 */
+	public long getEvaluations()
+	{
+		long evaluations = 0;
+		for(ParallelEvaluator evaluator : evaluators)
+			evaluations += evaluator.getEvaluations();
+		return evaluations;
+	}
+
+	/**
+	 * @return: The memory used by the genes of the chromosomes of all islands, in bytes (see {@link Island#getFootprint()})
+	 */
+	public long getFootprint()
+	{
+		long footprint = 0;
+		for(Island island : islands)
+			footprint += island.getFootprint();
+		return footprint;
+	}
+
+	/**
+	 * @return: The memory used by the state tables of all islands, in bytes (see {@link Island#getStateTableFootprint()})
+	 */
+	public long getStateTableFootprint()
+	{
+		long footprint = 0;
+		for(Island island : islands)
+			footprint += island.getStateTableFootprint();
+		return footprint;
+	}
+
+	/**
+	 * @return: The number of chromosomes allocated by all islands (see {@link Island#getAllocatedChromosomes()})
+	 */
+	public int getAllocatedChromosomes()
+	{
+		int allocated = 0;
+		for(Island island : islands)
+			allocated += island.getAllocatedChromosomes();
+		return allocated;
+	}
+
+	public int getIslandCount()
+	{
+		return islands.length;
+	}
+
+	/**
+	 * Stops all threads
+	 */
+	public void shutdown()
+	{
+		if(executor != null)
+			executor.shutdown();
+		for(ParallelEvaluator evaluator : evaluators)
+			evaluator.shutdown();
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * Static 2-dimensional k-d tree over the city coordinates, used to find the nearest
+ * neighbours of a city without looking at every other city.
+ *
+ * The tree is implicit: the cities are permuted such that, for every range [lo,hi) of the
+ * permutation, the city in the middle splits the range along the stored axis.
+ *
+ * @author Harry Long
+ *
+ */
+public class KdTree {
+
+	private final double[] xs;
+	private final double[] ys;
+
+	/**
+	 * City names, ordered as the tree
+	 */
+	private final int[] tree;
+
+	/**
+	 * Split axis of the node at every position of the tree (0: x, 1: y)
+	 */
+	private final byte[] axis;
+
+	/**
+	 * @param xs: The horizontal position of each city
+	 * @param ys: The vertical position of each city
+	 */
+	public KdTree(double[] xs, double[] ys)
+	{
+		this.xs = xs;
+		this.ys = ys;
+		tree = new int[xs.length];
+		axis = new byte[xs.length];
+		for(int i = 0; i < tree.length; ++i)
+			tree[i] = i;
+		build(0, tree.length);
+	}
+
+	private double coordinate(int city, int dimension)
+	{
+		return dimension == 0 ? xs[city] : ys[city];
+	}
+
+	private void build(int lo, int hi)
+	{
+		if(hi - lo < 2)
+			return;
+
+		// Split along the widest dimension of the range
+		double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for(int i = lo; i < hi; ++i)
+		{
+			minX = Math.min(minX, xs[tree[i]]);
+			maxX = Math.max(maxX, xs[tree[i]]);
+			minY = Math.min(minY, ys[tree[i]]);
+			maxY = Math.max(maxY, ys[tree[i]]);
+		}
+		int dimension = maxX - minX >= maxY - minY ? 0 : 1;
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi-1, mid, dimension);
+		axis[mid] = (byte) dimension;
+
+		build(lo, mid);
+		build(mid+1, hi);
+	}
+
+	/**
+	 * Quickselect: partially orders tree[lo..hi] such that position k holds the median along the given dimension
+	 */
+	private void select(int lo, int hi, int k, int dimension)
+	{
+		while(hi > lo)
+		{
+			double pivot = coordinate(tree[(lo + hi) >>> 1], dimension);
+			int i = lo, j = hi;
+			while(i <= j)
+			{
+				while(coordinate(tree[i], dimension) < pivot)
+					++i;
+				while(coordinate(tree[j], dimension) > pivot)
+					--j;
+				if(i <= j)
+				{
+					int tmp = tree[i];
+					tree[i++] = tree[j];
+					tree[j--] = tmp;
+				}
+			}
+			if(k <= j)
+				hi = j;
+			else if(k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Finds the k closest cities to the given city (excluding itself), closest first.
+	 * Cities are ordered by the distance given by the distance matrix, ties broken by name.
+	 * The matrix distance must never be smaller than the rounded down euclidean distance
+	 * of the coordinates, otherwise closer cities may be missed.
+	 *
+	 * @param city: The city name
+	 * @param distances: The distances used to rank the cities
+	 * @param neighbours: Filled with the neighbour names, closest first. Its length is k.
+	 */
+	public void nearest(int city, DistanceMatrix distances, int[] neighbours)
+	{
+		Heap heap = new Heap(neighbours.length);
+		nearest(city, distances, heap, 0, tree.length);
+		heap.drain(neighbours);
+	}
+
+	private void nearest(int city, DistanceMatrix distances, Heap heap, int lo, int hi)
+	{
+		if(lo >= hi)
+			return;
+
+		int mid = (lo + hi) >>> 1;
+		int node = tree[mid];
+		if(node != city)
+			heap.offer(node, distances.getDistance(city, node));
+
+		if(hi - lo == 1)
+			return;
+
+		double delta = coordinate(city, axis[mid]) - coordinate(node, axis[mid]);
+		if(delta < 0)
+		{
+			nearest(city, distances, heap, lo, mid);
+			if(!heap.isFull() || Math.floor(-delta) <= heap.worstDistance())
+				nearest(city, distances, heap, mid+1, hi);
+		}
+		else
+		{
+			nearest(city, distances, heap, mid+1, hi);
+			if(!heap.isFull() || Math.floor(delta) <= heap.worstDistance())
+				nearest(city, distances, heap, lo, mid);
+		}
+	}
+
+	/**
+	 * Bounded max-heap of (distance, city) keeping the closest cities seen so far
+	 */
+	static class Heap {
+
+		private final double[] keys;
+		private final int[] cities;
+		private int size;
+
+		Heap(int capacity)
+		{
+			keys = new double[capacity];
+			cities = new int[capacity];
+		}
+
+		boolean isFull()
+		{
+			return size == keys.length;
+		}
+
+		double worstDistance()
+		{
+			return keys[0];
+		}
+
+		/**
+		 * Is (ka, ca) further than (kb, cb)
+		 */
+		private static boolean further(double ka, int ca, double kb, int cb)
+		{
+			return ka > kb || (ka == kb && ca > cb);
+		}
+
+		void offer(int city, double distance)
+		{
+			if(keys.length == 0)
+				return;
+			if(size < keys.length)
+			{
+				// Sift up
+				int i = size++;
+				while(i > 0)
+				{
+					int parent = (i-1) >>> 1;
+					if(!further(distance, city, keys[parent], cities[parent]))
+						break;
+					keys[i] = keys[parent];
+					cities[i] = cities[parent];
+					i = parent;
+				}
+				keys[i] = distance;
+				cities[i] = city;
+			}
+			else if(further(keys[0], cities[0], distance, city))
+			{
+				siftDown(distance, city);
+			}
+		}
+
+		/**
+		 * Replaces the root with the given entry
+		 */
+		private void siftDown(double distance, int city)
+		{
+			int i = 0;
+			while(true)
+			{
+				int child = 2*i + 1;
+				if(child >= size)
+					break;
+				if(child + 1 < size && further(keys[child+1], cities[child+1], keys[child], cities[child]))
+					++child;
+				if(!further(keys[child], cities[child], distance, city))
+					break;
+				keys[i] = keys[child];
+				cities[i] = cities[child];
+				i = child;
+			}
+			keys[i] = distance;
+			cities[i] = city;
+		}
+
+		/**
+		 * Empties the heap into the given array, closest first
+		 */
+		void drain(int[] out)
+		{
+			while(size > 0)
+			{
+				out[--size] = cities[0];
+				if(size > 0)
+					siftDown(keys[size], cities[size]);
+			}
+		}
+	}
+}
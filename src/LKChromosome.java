@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Chromosome of the Lin-Kernighan algorithm: a tour improved on its own by Lin-Kernighan moves and kicks.
+ *
+ * Chromosomes don't mate, each one is an independent restart of the search. At each generation, a mutation
+ * improves the tour until no move improves it (once only, unless the tour is changed otherwise), then tries a
+ * number of kicks (see {@link LinKernighan}).
+ *
+ * @author Harry Long
+ *
+ */
+public class LKChromosome extends GAChromosome {
+
+	/**
+	 * Whether no Lin-Kernighan move improves the tour, so the next mutation only tries kicks
+	 */
+	private boolean localOptimum;
+
+	public LKChromosome(City[] cities) {
+		super(cities);
+	}
+
+	/**
+	 * Copy constructor
+	 * @param other: Template chromosome for the copy
+	 */
+	public LKChromosome(Chromosome other) {
+		super(other);
+		localOptimum = ((LKChromosome) other).localOptimum;
+	}
+
+	@Override
+	public Chromosome copy() {
+		return new LKChromosome(this);
+	}
+
+	@Override
+	void copyFrom(Chromosome other) {
+		super.copyFrom(other);
+		localOptimum = ((LKChromosome) other).localOptimum;
+	}
+
+	@Override
+	long checkpointSize() {
+		return super.checkpointSize() + 1;
+	}
+
+	@Override
+	void writeCheckpoint(ByteBuffer out) {
+		super.writeCheckpoint(out);
+		out.put((byte) (localOptimum ? 1 : 0));
+	}
+
+	@Override
+	void readCheckpoint(ByteBuffer in) {
+		super.readCheckpoint(in);
+		localOptimum = in.get() != 0;
+	}
+
+	@Override
+	void setCities(int[] list) {
+		super.setCities(list);
+		localOptimum = false;
+	}
+
+	@Override
+	void setCity(int index, int value) {
+		super.setCity(index, value);
+		localOptimum = false;
+	}
+
+	@Override
+	boolean improve() {
+		boolean improved = super.improve();
+		localOptimum &= !improved;
+		return improved;
+	}
+
+	/**
+	 * Improves the tour with Lin-Kernighan moves if needed, then tries <LK trials> kicks (see {@link ConfigurationManager#getLkTrials()})
+	 */
+	@Override
+	public void mutate() {
+		if(distances == null)
+			return;
+		evaluate();
+		double gain = LinKernighan.get(distances, cities[0].getCandidateLists()).optimize(cityList, ConfigurationManager.instance().getLkTrials(), localOptimum);
+		cost -= gain;
+		hashUpToDate &= gain == 0; // Unless improved, the tour is the same (possibly reversed)
+		localOptimum = true;
+		checkDelta("Lin-Kernighan");
+	}
+}
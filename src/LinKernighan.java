@@ -0,0 +1,500 @@
+/**
+ * Lin-Kernighan style local search with kicks, the engine of the Lin-Kernighan algorithm (see {@link LKChromosome}).
+ *
+ * A move is built one step at a time, as a sequence of flips: with t2 the successor of t1, the edge (t1,t2) is
+ * removed, a new edge (t2,t3) is added, and the edge (t4,t3) removed so that reversing the path t2..t4 gives a
+ * tour again. The next step starts from t4, which is now the successor of t1, so after i steps the move is a
+ * sequential (i+1)-opt move. A step is only taken while the sum of the removed edges minus the added ones is
+ * positive (the gain criterion), and the best tour seen along the sequence is kept. The first two steps try
+ * several candidates (5 then 3), so every sequential 3-opt move of the candidates is tried, the following ones
+ * take the most promising candidate only, up to {@link #MAX_DEPTH} steps.
+ *
+ * The candidates of a city are its closest cities by alpha-nearness (see {@link AlphaNearness}). The work is
+ * driven by don't-look bits, as in {@link LocalSearch}.
+ *
+ * Tours are open paths: a dummy city at distance 0 from every other city closes them, so the cities next to
+ * it are the ends of the path. It is a candidate of every city, which lets moves change the ends.
+ *
+ * Once no move improves the tour, each trial kicks it with a double bridge (two adjacent segments of up to
+ * {@link #KICK_SEGMENT} cities swapped, a move no sequence of flips undoes easily) and improves it again.
+ * The tour of the trial is kept if it is shorter, the previous one is restored otherwise.
+ *
+ * Each thread uses its own engine (see {@link #get(DistanceMatrix, CandidateLists)}).
+ *
+ * @author Harry Long
+ *
+ */
+public class LinKernighan {
+
+	/**
+	 * Number of alpha-nearness candidates of each city
+	 */
+	private static final int CANDIDATES = 5;
+
+	/**
+	 * Number of candidates tried at each of the first steps of a move, a single one afterwards
+	 */
+	private static final int[] BREADTH = {5, 3};
+
+	/**
+	 * Maximum number of steps of a move
+	 */
+	private static final int MAX_DEPTH = 10;
+
+	/**
+	 * Longest segment swapped by a kick
+	 */
+	private static final int KICK_SEGMENT = 50;
+
+	/**
+	 * Number of candidates of the dummy city
+	 */
+	private static final int DUMMY_CANDIDATES = 10;
+
+	/**
+	 * Minimum gain of a move, so rounding errors can't make moves cycle
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private static final ThreadLocal<LinKernighan> engines = new ThreadLocal<LinKernighan>();
+
+	private final DistanceMatrix distances;
+	private final CandidateLists candidateLists;
+	private final AlphaNearness alphaNearness;
+
+	/**
+	 * The dummy city, and the number of cities in the closed tour (including the dummy city)
+	 */
+	private final int dummy;
+	private final int size;
+
+	/**
+	 * The candidates of the dummy city: the most isolated cities, which make the best ends
+	 */
+	private final int[] dummyCandidates;
+
+	/**
+	 * The closed tour, the position of each city in it, and whether it is followed backwards
+	 * (flipping the larger side of a tour and reversing the direction gives the same tour)
+	 */
+	private final int[] tour;
+	private final int[] positions;
+	private boolean reversed;
+
+	/**
+	 * The tour before a kick, restored if the trial fails
+	 */
+	private final int[] savedTour;
+	private final int[] savedPositions;
+	private boolean savedReversed;
+
+	/**
+	 * Cities waiting to be looked at (a circular queue), and whether each city is in it (its don't-look bit is off)
+	 */
+	private final int[] queue;
+	private final boolean[] queued;
+	private int queueHead, queueSize;
+
+	/**
+	 * The flips of the move being built: the positions reversed, whether the direction was reversed too,
+	 * and the cities t1..t4 of each step (their don't-look bits are cleared if the move is kept)
+	 */
+	private final int[] flipStarts = new int[MAX_DEPTH];
+	private final int[] flipLengths = new int[MAX_DEPTH];
+	private final boolean[] flipDirections = new boolean[MAX_DEPTH];
+	private final int[] flipCities = new int[4 * MAX_DEPTH];
+	private int flipCount;
+
+	/**
+	 * The edges added by the move being built, which it may not remove again
+	 */
+	private final int[] addedFrom = new int[MAX_DEPTH];
+	private final int[] addedTo = new int[MAX_DEPTH];
+
+	/**
+	 * The best gain of the move being built, and the number of flips giving it
+	 */
+	private double bestGain;
+	private int bestFlipCount;
+
+	/**
+	 * The candidates considered at each step, best first, and their scores
+	 */
+	private final int width;
+	private final int[] choices;
+	private final double[] scores;
+
+	private LinKernighan(DistanceMatrix distances, CandidateLists candidateLists)
+	{
+		this.distances = distances;
+		this.candidateLists = candidateLists;
+		this.alphaNearness = candidateLists.getAlphaNearness(CANDIDATES);
+		int cityCount = candidateLists.getCityCount();
+		dummy = cityCount;
+		size = cityCount + 1;
+		tour = new int[size];
+		positions = new int[size];
+		savedTour = new int[size];
+		savedPositions = new int[size];
+		queue = new int[size];
+		queued = new boolean[size];
+
+		// The cities furthest from their closest city
+		dummyCandidates = new int[Math.min(DUMMY_CANDIDATES, cityCount)];
+		double[] isolation = new double[dummyCandidates.length];
+		int found = 0;
+		for(int city = 0; city < cityCount && candidateLists.getCandidateCount() > 0; ++city)
+		{
+			double distance = distances.getDistance(city, candidateLists.getNeighbour(city, 0));
+			int i = found < dummyCandidates.length ? found++ : found;
+			while(i > 0 && isolation[i-1] < distance)
+			{
+				if(i < dummyCandidates.length)
+				{
+					isolation[i] = isolation[i-1];
+					dummyCandidates[i] = dummyCandidates[i-1];
+				}
+				--i;
+			}
+			if(i < dummyCandidates.length)
+			{
+				isolation[i] = distance;
+				dummyCandidates[i] = city;
+			}
+		}
+
+		width = Math.max(alphaNearness.getCandidateCount() + 1, dummyCandidates.length);
+		choices = new int[MAX_DEPTH * width];
+		scores = new double[MAX_DEPTH * width];
+	}
+
+	/**
+	 * Get the engine of the calling thread
+	 * @param distances: The distances between the cities
+	 * @param candidateLists: The closest cities of every city
+	 * @return: The engine of this thread
+	 */
+	public static LinKernighan get(DistanceMatrix distances, CandidateLists candidateLists)
+	{
+		LinKernighan engine = engines.get();
+		if(engine == null || engine.distances != distances || engine.candidateLists != candidateLists)
+		{
+			engine = new LinKernighan(distances, candidateLists);
+			engines.set(engine);
+		}
+		return engine;
+	}
+
+	/**
+	 * Improves a tour until no move improves it, then tries kicks. Kicks draw from the random generator of the thread
+	 * @param path: The cities in the order they are visited. Modified in place
+	 * @param trials: The number of kicks tried
+	 * @param localOptimum: Whether no move improves the tour already (as returned by this method), so only kicks are tried
+	 * @return: How much shorter the tour is
+	 */
+	public double optimize(int[] path, int trials, boolean localOptimum)
+	{
+		int n = path.length;
+		if(n < 5)
+			return 0;
+		for(int i = 0; i < n; ++i)
+			tour[i] = path[i];
+		tour[n] = dummy;
+		for(int i = 0; i < size; ++i)
+		{
+			positions[tour[i]] = i;
+			queue[i] = tour[i];
+			queued[tour[i]] = !localOptimum;
+		}
+		reversed = false;
+		queueHead = 0;
+		queueSize = localOptimum ? 0 : size;
+
+		double gain = improve();
+		for(int trial = 0; trial < trials && size >= 8; ++trial)
+		{
+			System.arraycopy(tour, 0, savedTour, 0, size);
+			System.arraycopy(positions, 0, savedPositions, 0, size);
+			savedReversed = reversed;
+
+			double trialGain = -kick();
+			trialGain += improve();
+			if(trialGain > EPSILON)
+			{
+				gain += trialGain;
+			}
+			else
+			{
+				System.arraycopy(savedTour, 0, tour, 0, size);
+				System.arraycopy(savedPositions, 0, positions, 0, size);
+				reversed = savedReversed;
+			}
+		}
+
+		// The path starts after the dummy city
+		int city = successor(dummy);
+		for(int i = 0; i < n; ++i)
+		{
+			path[i] = city;
+			city = successor(city);
+		}
+		return gain;
+	}
+
+	/**
+	 * Applies improving moves until the queue is empty
+	 * @return: The total gain of the moves
+	 */
+	private double improve()
+	{
+		double gain = 0;
+		while(queueSize > 0)
+		{
+			int city = queue[queueHead];
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+			queued[city] = false;
+
+			double moveGain = improveCity(city);
+			if(moveGain > 0)
+			{
+				gain += moveGain;
+				push(city);
+			}
+		}
+		return gain;
+	}
+
+	/**
+	 * Looks for an improving move removing an edge of the given city, and applies the best one found
+	 * @return: The gain of the move applied, 0 if none improves the tour
+	 */
+	private double improveCity(int t1)
+	{
+		for(int side = 0; side < 2; ++side)
+		{
+			int t2 = successor(t1);
+			bestGain = 0;
+			bestFlipCount = 0;
+			flipCount = 0;
+			step(0, t1, t2, distance(t1, t2));
+			if(bestGain > EPSILON)
+			{
+				while(flipCount > bestFlipCount)
+					undoFlip();
+				for(int i = 0; i < 4 * flipCount; ++i)
+					push(flipCities[i]);
+				return bestGain;
+			}
+			reversed = !reversed; // The edge to the predecessor
+		}
+		return 0;
+	}
+
+	/**
+	 * Takes a step of the move: adds an edge from t2, removes one and flips
+	 * @param level: The number of steps taken so far
+	 * @param t1: The city the move started from
+	 * @param t2: The successor of t1, the end of the last edge removed
+	 * @param gain: The length of the removed edges minus the length of the added ones
+	 */
+	private void step(int level, int t1, int t2, double gain)
+	{
+		// Rank the candidates on the length of the edge removed minus the length of the edge added
+		int breadth = level < BREADTH.length ? BREADTH[level] : 1;
+		int base = level * width, count = 0;
+		int candidateCount = t2 == dummy ? dummyCandidates.length : alphaNearness.getCandidateCount() + 1;
+		for(int rank = 0; rank < candidateCount; ++rank)
+		{
+			int t3 = t2 == dummy ? dummyCandidates[rank] : rank < alphaNearness.getCandidateCount() ? alphaNearness.getCandidate(t2, rank) : dummy;
+			if(t3 == t1 || t3 == successor(t2))
+				continue;
+			double partialGain = gain - distance(t2, t3);
+			if(partialGain <= EPSILON)
+				continue;
+			int t4 = predecessor(t3);
+			if(isAdded(t3, t4, level))
+				continue;
+			double score = distance(t3, t4) - distance(t2, t3);
+			int i = Math.min(count, breadth);
+			while(i > 0 && scores[base + i - 1] < score)
+			{
+				if(i < breadth)
+				{
+					scores[base + i] = scores[base + i - 1];
+					choices[base + i] = choices[base + i - 1];
+				}
+				--i;
+			}
+			if(i < breadth)
+			{
+				scores[base + i] = score;
+				choices[base + i] = t3;
+				count = Math.min(count + 1, breadth);
+			}
+		}
+
+		for(int i = 0; i < count; ++i)
+		{
+			int t3 = choices[base + i];
+			int t4 = predecessor(t3);
+			double nextGain = gain - distance(t2, t3) + distance(t3, t4);
+			flip(t1, t2, t3, t4);
+			addedFrom[level] = t2;
+			addedTo[level] = t3;
+
+			// Closing the tour: t4 is the successor of t1 now
+			double closedGain = nextGain - distance(t4, t1);
+			if(closedGain > bestGain + EPSILON)
+			{
+				bestGain = closedGain;
+				bestFlipCount = flipCount;
+			}
+			if(level + 1 < MAX_DEPTH)
+				step(level + 1, t1, t4, nextGain);
+			if(bestGain > EPSILON)
+				return; // Kept, the flips past the best are undone by the caller
+			undoFlip();
+		}
+	}
+
+	/**
+	 * @return: Whether the edge (a,b) was added by one of the first steps of the move
+	 */
+	private boolean isAdded(int a, int b, int steps)
+	{
+		for(int i = 0; i < steps; ++i)
+		{
+			if((addedFrom[i] == a && addedTo[i] == b) || (addedFrom[i] == b && addedTo[i] == a))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reverses the path t2..t4, replacing the edges (t1,t2) and (t4,t3) by (t1,t4) and (t2,t3).
+	 * The shorter side of the tour is reversed: reversing the other side gives the same tour, followed backwards
+	 */
+	private void flip(int t1, int t2, int t3, int t4)
+	{
+		int from = positions[reversed ? t4 : t2], to = positions[reversed ? t2 : t4];
+		int length = (to - from + size) % size + 1;
+		boolean direction = 2 * length > size;
+		if(direction)
+		{
+			from = (to + 1) % size;
+			length = size - length;
+			reversed = !reversed;
+		}
+		reverse(from, length);
+		flipStarts[flipCount] = from;
+		flipLengths[flipCount] = length;
+		flipDirections[flipCount] = direction;
+		flipCities[4 * flipCount] = t1;
+		flipCities[4 * flipCount + 1] = t2;
+		flipCities[4 * flipCount + 2] = t3;
+		flipCities[4 * flipCount + 3] = t4;
+		flipCount++;
+	}
+
+	/**
+	 * Undoes the last flip
+	 */
+	private void undoFlip()
+	{
+		flipCount--;
+		reverse(flipStarts[flipCount], flipLengths[flipCount]);
+		if(flipDirections[flipCount])
+			reversed = !reversed;
+	}
+
+	/**
+	 * Reverses the cities at the given positions (wrapping around the end of the array)
+	 */
+	private void reverse(int from, int length)
+	{
+		for(int i = 0, j = length - 1; i < j; ++i, --j)
+		{
+			int a = (from + i) % size, b = (from + j) % size;
+			int tmp = tour[a];
+			tour[a] = tour[b];
+			tour[b] = tmp;
+			positions[tour[a]] = a;
+			positions[tour[b]] = b;
+		}
+	}
+
+	/**
+	 * Double bridge kick: swaps two adjacent segments, a b..b' c..c' d becoming a c..c' b..b' d
+	 * @return: How much longer the tour is
+	 */
+	private double kick()
+	{
+		int longest = Math.min(KICK_SEGMENT, (size - 2) / 2);
+		int first = Utils.random(1, longest), second = Utils.random(1, longest);
+		int start = Utils.random(0, size - 1);
+		int a = tour[start];
+		int b = tour[(start + 1) % size], bEnd = tour[(start + first) % size];
+		int c = tour[(start + first + 1) % size], cEnd = tour[(start + first + second) % size];
+		int d = tour[(start + first + second + 1) % size];
+		double delta = distance(a, c) + distance(cEnd, b) + distance(bEnd, d)
+				- distance(a, b) - distance(bEnd, c) - distance(cEnd, d);
+
+		// The segments are read from the saved tour, which is identical at this point
+		for(int i = 0; i < second; ++i)
+		{
+			int position = (start + 1 + i) % size;
+			tour[position] = savedTour[(start + first + 1 + i) % size];
+			positions[tour[position]] = position;
+		}
+		for(int i = 0; i < first; ++i)
+		{
+			int position = (start + 1 + second + i) % size;
+			tour[position] = savedTour[(start + 1 + i) % size];
+			positions[tour[position]] = position;
+		}
+		push(a);
+		push(b);
+		push(bEnd);
+		push(c);
+		push(cEnd);
+		push(d);
+		return delta;
+	}
+
+	private int successor(int city)
+	{
+		int position = positions[city];
+		if(reversed)
+			return tour[position == 0 ? size - 1 : position - 1];
+		return tour[position == size - 1 ? 0 : position + 1];
+	}
+
+	private int predecessor(int city)
+	{
+		int position = positions[city];
+		if(reversed)
+			return tour[position == size - 1 ? 0 : position + 1];
+		return tour[position == 0 ? size - 1 : position - 1];
+	}
+
+	/**
+	 * The distance between two cities, 0 from the dummy city
+	 */
+	private double distance(int from, int to)
+	{
+		return from == dummy || to == dummy ? 0 : distances.getDistance(from, to);
+	}
+
+	/**
+	 * Clears the don't-look bit of a city
+	 */
+	private void push(int city)
+	{
+		if(queued[city])
+			return;
+		queued[city] = true;
+		queue[(queueHead + queueSize) % queue.length] = city;
+		queueSize++;
+	}
+}
@@ -0,0 +1,320 @@
+/**
+ * Local search of the memetic mode: improves a tour with 2-opt and Or-opt moves until none improves it.
+ *
+ * Moves are restricted to the {@link #NEIGHBOURS} closest cities of each city (see {@link CandidateLists}), and
+ * only considered while the new edge is shorter than the one it replaces (the gain criterion), so a pass over a
+ * city costs O(neighbours) rather than O(n). The work is driven by don't-look bits: only the cities waiting in a
+ * queue are looked at, a city leaves it when no move improves around it, and the ends of every changed edge
+ * join it again. The first improving move found is applied.
+ *
+ *   - 2-opt: replaces two edges by reversing the cities between them
+ *   - Or-opt: moves a segment of up to 3 cities (possibly reversed) between two other adjacent cities
+ *
+ * Tours are open paths: the cities at both ends have a single edge, and moves may leave a different city at the ends.
+ *
+ * Local searches hold scratch memory reused between tours, so each thread uses its own (see {@link #get(DistanceMatrix, CandidateLists)}).
+ *
+ * @author Harry Long
+ *
+ */
+public class LocalSearch {
+
+	/**
+	 * How much of the tours is improved, and when (see {@link ConfigurationManager#getLocalSearchInterval()})
+	 *   - OFF: no local search
+	 *   - CHILDREN: every child, once mutated
+	 *   - ELITES: the fittest chromosomes of the population (see {@link ConfigurationManager#getLocalSearchElites()})
+	 */
+	public static enum Budget { OFF, CHILDREN, ELITES };
+
+	/**
+	 * Number of closest cities considered for the new edges of a city
+	 */
+	private static final int NEIGHBOURS = 10;
+
+	/**
+	 * Longest segment moved by Or-opt
+	 */
+	private static final int MAX_SEGMENT = 3;
+
+	/**
+	 * Minimum gain of a move, so rounding errors can't make moves cycle
+	 */
+	private static final double EPSILON = 1e-9;
+
+	/**
+	 * Stands for the missing neighbour of the cities at the ends of the tour
+	 */
+	private static final int NONE = -1;
+
+	private static final ThreadLocal<LocalSearch> searches = new ThreadLocal<LocalSearch>();
+
+	private final DistanceMatrix distances;
+	private final CandidateLists candidateLists;
+	private final int neighbours;
+
+	/**
+	 * The tour being improved, and the position of each city in it
+	 */
+	private int[] tour;
+	private final int[] positions;
+
+	/**
+	 * Cities waiting to be looked at (a circular queue), and whether each city is in it (its don't-look bit is off)
+	 */
+	private final int[] queue;
+	private final boolean[] queued;
+	private int queueHead, queueSize;
+
+	/**
+	 * Or-opt only: the segment being moved
+	 */
+	private final int[] segment = new int[MAX_SEGMENT];
+
+	private LocalSearch(DistanceMatrix distances, CandidateLists candidateLists)
+	{
+		this.distances = distances;
+		this.candidateLists = candidateLists;
+		this.neighbours = Math.min(NEIGHBOURS, candidateLists.getCandidateCount());
+		int cityCount = candidateLists.getCityCount();
+		positions = new int[cityCount];
+		queue = new int[cityCount];
+		queued = new boolean[cityCount];
+	}
+
+	/**
+	 * Get the local search of the calling thread
+	 * @param distances: The distances between the cities
+	 * @param candidateLists: The closest cities of every city
+	 * @return: The local search of this thread
+	 */
+	public static LocalSearch get(DistanceMatrix distances, CandidateLists candidateLists)
+	{
+		LocalSearch search = searches.get();
+		if(search == null || search.distances != distances || search.candidateLists != candidateLists)
+		{
+			search = new LocalSearch(distances, candidateLists);
+			searches.set(search);
+		}
+		return search;
+	}
+
+	/**
+	 * Improves a tour until no 2-opt or Or-opt move improves it
+	 * @param tour: The cities in the order they are visited. Modified in place
+	 * @return: How much shorter the tour is
+	 */
+	public double optimize(int[] tour)
+	{
+		this.tour = tour;
+		int n = tour.length;
+		if(n < 4)
+			return 0;
+		for(int i = 0; i < n; ++i)
+		{
+			positions[tour[i]] = i;
+			queue[i] = tour[i];
+			queued[tour[i]] = true;
+		}
+		queueHead = 0;
+		queueSize = n;
+
+		double gain = 0;
+		while(queueSize > 0)
+		{
+			int city = queue[queueHead];
+			queueHead = (queueHead + 1) % queue.length;
+			queueSize--;
+			queued[city] = false;
+
+			double moveGain = twoOpt(city);
+			if(moveGain == 0)
+				moveGain = orOpt(city);
+			if(moveGain > 0)
+			{
+				gain += moveGain;
+				push(city);
+			}
+		}
+		this.tour = null;
+		return gain;
+	}
+
+	/**
+	 * Tries the 2-opt moves removing an edge of the given city
+	 * @return: The gain of the move applied, 0 if none improves the tour
+	 */
+	private double twoOpt(int a)
+	{
+		for(int direction = 1; direction >= -1; direction -= 2)
+		{
+			int i = positions[a];
+			int b = neighbour(i, direction);
+			if(b == NONE)
+				continue; // Moves making an end city an inner city are found from the other side
+			double removed = distances.getDistance(a, b);
+			for(int rank = 0; rank < neighbours; ++rank)
+			{
+				int c = candidateLists.getNeighbour(a, rank);
+				double partialGain = removed - distances.getDistance(a, c);
+				if(partialGain <= EPSILON)
+					break; // Candidates are sorted, none further can do better
+				int j = positions[c];
+				int d = neighbour(j, direction);
+				double gain = partialGain + distance(c, d) - distance(b, d);
+				if(gain > EPSILON)
+				{
+					// Successor direction: a b ... c d becomes a c ... b d. Predecessor direction: d c ... b a becomes d b ... c a
+					if(direction == 1)
+						reverse(Math.min(i, j) + 1, Math.max(i, j));
+					else if(i < j)
+						reverse(i, j - 1);
+					else
+						reverse(j, i - 1);
+					push(a);
+					push(b);
+					push(c);
+					push(d);
+					return gain;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Tries the Or-opt moves of the segments starting at the given city
+	 * @return: The gain of the move applied, 0 if none improves the tour
+	 */
+	private double orOpt(int first)
+	{
+		int n = tour.length;
+		int start = positions[first];
+		for(int length = 1; length <= MAX_SEGMENT && start + length <= n && length < n - 1; ++length)
+		{
+			int end = start + length - 1;
+			int last = tour[end];
+			int before = neighbour(start, -1), after = neighbour(end, 1);
+			double removalGain = distance(before, first) + distance(last, after) - distance(before, after);
+			if(removalGain <= EPSILON)
+				continue;
+
+			// The segment is inserted next to a close city of one of its ends
+			for(int side = 0; side < 2; ++side)
+			{
+				int x = side == 0 ? first : last, y = side == 0 ? last : first;
+				for(int rank = 0; rank < neighbours; ++rank)
+				{
+					int c = candidateLists.getNeighbour(x, rank);
+					double added = distances.getDistance(x, c);
+					if(added >= removalGain - EPSILON)
+						break;
+					int k = positions[c];
+					if(k >= start && k <= end)
+						continue;
+					for(int direction = 1; direction >= -1; direction -= 2)
+					{
+						int e = neighbour(k, direction);
+						if(e != NONE && positions[e] >= start && positions[e] <= end)
+							continue; // c is next to the segment already
+						double gain = removalGain - (added + distance(y, e) - distance(c, e));
+						if(gain > EPSILON)
+						{
+							moveSegment(start, length, c, e, x);
+							push(before);
+							push(after);
+							push(first);
+							push(last);
+							push(c);
+							push(e);
+							return gain;
+						}
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves the segment tour[start, start+length) between the adjacent cities c and e, x (an end of the segment) next to c
+	 */
+	private void moveSegment(int start, int length, int c, int e, int x)
+	{
+		// Insert after u, the first of c and e in the tour (before everything if u is NONE)
+		int u = e == NONE || positions[c] < positions[e] ? c : e;
+		if(e == NONE && positions[c] == 0)
+			u = NONE; // c is the first city, the segment goes before it
+		boolean xFirst = u == c;
+		boolean reversed = xFirst != (tour[start] == x);
+		for(int i = 0; i < length; ++i)
+			segment[i] = tour[reversed ? start + length - 1 - i : start + i];
+
+		int insertAfter = u == NONE ? -1 : positions[u];
+		int from, to;
+		if(insertAfter < start)
+		{
+			// Shift the cities in between towards the end
+			System.arraycopy(tour, insertAfter + 1, tour, insertAfter + 1 + length, start - insertAfter - 1);
+			System.arraycopy(segment, 0, tour, insertAfter + 1, length);
+			from = insertAfter + 1;
+			to = start + length;
+		}
+		else
+		{
+			// Shift the cities in between towards the start
+			System.arraycopy(tour, start + length, tour, start, insertAfter - start - length + 1);
+			System.arraycopy(segment, 0, tour, insertAfter - length + 1, length);
+			from = start;
+			to = insertAfter + 1;
+		}
+		for(int i = from; i < to; ++i)
+			positions[tour[i]] = i;
+	}
+
+	/**
+	 * Reverses the cities of tour[i, j]
+	 */
+	private void reverse(int i, int j)
+	{
+		for(; i < j; ++i, --j)
+		{
+			int tmp = tour[i];
+			tour[i] = tour[j];
+			tour[j] = tmp;
+			positions[tour[i]] = i;
+			positions[tour[j]] = j;
+		}
+		if(i == j)
+			positions[tour[i]] = i;
+	}
+
+	/**
+	 * @return: The city after (direction 1) or before (direction -1) the given position, NONE past the ends
+	 */
+	private int neighbour(int position, int direction)
+	{
+		position += direction;
+		return position >= 0 && position < tour.length ? tour[position] : NONE;
+	}
+
+	/**
+	 * The distance between two cities, 0 if either is missing (past the ends of the tour)
+	 */
+	private double distance(int from, int to)
+	{
+		return from == NONE || to == NONE ? 0 : distances.getDistance(from, to);
+	}
+
+	/**
+	 * Clears the don't-look bit of a city
+	 */
+	private void push(int city)
+	{
+		if(city == NONE || queued[city])
+			return;
+		queued[city] = true;
+		queue[(queueHead + queueSize) % queue.length] = city;
+		queueSize++;
+	}
+}
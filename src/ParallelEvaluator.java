@@ -0,0 +1,195 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mutates and evaluates chromosomes in parallel on a pool of worker threads.
+ *
+ * Every chromosome is given its own random stream, seeded from the calling thread before the work
+ * is split. Results therefore don't depend on which worker processes which chromosome, nor on the
+ * number of workers: a single worker gives exactly the same results as many.
+ *
+ * State reused between chromosomes (such as the {@link EPDecoder}) is kept per worker thread.
+ *
+ * @author Harry Long
+ *
+ */
+public class ParallelEvaluator {
+
+	/**
+	 * The pool of workers, null when running on the calling thread only
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Roughly how many tasks each worker gets, for balancing
+	 */
+	private static final int TASKS_PER_WORKER = 4;
+
+	/**
+	 * The seeds of the chromosomes being mutated, reused between calls
+	 */
+	private long[] seeds = new long[0];
+
+	/**
+	 * Number of chromosomes mutated and evaluated, or evaluated while their cost was out of date
+	 */
+	private final AtomicLong evaluations = new AtomicLong();
+
+	/**
+	 * @param threads: The number of worker threads. 1 to run on the calling thread
+	 */
+	public ParallelEvaluator(int threads)
+	{
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * Mutates then evaluates each of the given chromosomes
+	 * @param chromosomes: The chromosomes to mutate
+	 */
+	public void mutateAndEvaluate(Chromosome[] chromosomes)
+	{
+		mutateAndEvaluate(chromosomes, false);
+	}
+
+	/**
+	 * Mutates then evaluates each of the given chromosomes, and optionally improves them by local search in the same pass
+	 * @param chromosomes: The chromosomes to mutate
+	 * @param improve: Whether to improve them once evaluated (see {@link Chromosome#improve()})
+	 */
+	public void mutateAndEvaluate(Chromosome[] chromosomes, boolean improve)
+	{
+		if(seeds.length < chromosomes.length)
+			seeds = new long[chromosomes.length];
+		for(int i = 0; i < chromosomes.length; ++i)
+			seeds[i] = Utils.randomSeed();
+		run(new Task(chromosomes, seeds, improve, 0, chromosomes.length, getThreshold(chromosomes.length), evaluations));
+	}
+
+	/**
+	 * Evaluates each of the given chromosomes
+	 * @param chromosomes: The chromosomes to evaluate
+	 */
+	public void evaluate(Chromosome[] chromosomes)
+	{
+		run(new Task(chromosomes, null, false, 0, chromosomes.length, getThreshold(chromosomes.length), evaluations));
+	}
+
+	/**
+	 * Improves the first chromosomes by local search (see {@link Chromosome#improve()})
+	 * @param chromosomes: The chromosomes
+	 * @param count: The number of chromosomes to improve, from the first
+	 */
+	public void improve(Chromosome[] chromosomes, int count)
+	{
+		run(new Task(chromosomes, null, true, 0, count, getThreshold(count), evaluations));
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown()
+	{
+		if(pool != null)
+			pool.shutdown();
+	}
+
+	/**
+	 * Runs a task on the workers, or on the calling thread if there are none
+	 * @param task: The task to run
+	 */
+	void run(RecursiveAction task)
+	{
+		if(pool == null)
+			task.invoke();
+		else
+			pool.invoke(task);
+	}
+
+	/**
+	 * @return: The number of chromosomes evaluated so far (mutated and evaluated, or evaluated while out of date)
+	 */
+	public long getEvaluations()
+	{
+		return evaluations.get();
+	}
+
+	private int getThreshold(int chromosomeCount)
+	{
+		int workers = pool == null ? 1 : pool.getParallelism();
+		return Math.max(1, chromosomeCount / (workers * TASKS_PER_WORKER));
+	}
+
+	/**
+	 * Processes a range of chromosomes, splitting the work until small enough
+	 */
+	private static class Task extends RecursiveAction {
+
+		private static final long serialVersionUID = -6311527409383626384L;
+
+		private final Chromosome[] chromosomes;
+		private final long[] seeds; // null: evaluation only
+		private final int from, to, threshold;
+		private final boolean improve; // Local search once evaluated
+		private final AtomicLong evaluations; // Counted once per range, not per chromosome
+
+		Task(Chromosome[] chromosomes, long[] seeds, boolean improve, int from, int to, int threshold, AtomicLong evaluations)
+		{
+			this.evaluations = evaluations;
+			this.chromosomes = chromosomes;
+			this.seeds = seeds;
+			this.improve = improve;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= threshold)
+			{
+				Rng random = seeds != null ? new Rng(0) : null;
+				int evaluated = 0;
+				for(int i = from; i < to; ++i)
+				{
+					if(seeds != null)
+					{
+						random.setSeed(seeds[i]);
+						Rng previous = Utils.setThreadRandom(random);
+						long start = Instrumentation.start(), allocated = AllocationAccounting.threadAllocated();
+						try
+						{
+							chromosomes[i].mutate();
+						}
+						finally
+						{
+							Utils.setThreadRandom(previous); // The calling thread may be running tasks
+						}
+						Instrumentation.stop(Instrumentation.Phase.MUTATION, start, allocated);
+					}
+					if(seeds != null || !chromosomes[i].isCostUpToDate())
+					{
+						++evaluated;
+						long start = Instrumentation.start(), allocated = AllocationAccounting.threadAllocated();
+						chromosomes[i].evaluate();
+						Instrumentation.stop(Instrumentation.Phase.EVALUATION, start, allocated);
+					}
+					if(improve)
+					{
+						long start = Instrumentation.start(), allocated = AllocationAccounting.threadAllocated();
+						chromosomes[i].improve();
+						Instrumentation.stop(Instrumentation.Phase.LOCAL_SEARCH, start, allocated);
+					}
+				}
+				evaluations.addAndGet(evaluated);
+			}
+			else
+			{
+				int split = (from + to) >>> 1;
+				invokeAll(new Task(chromosomes, seeds, improve, from, split, threshold, evaluations),
+						new Task(chromosomes, seeds, improve, split, to, threshold, evaluations));
+			}
+		}
+	}
+}
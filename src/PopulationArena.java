@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * Owns the chromosomes of an island and recycles them between generations.
+ *
+ * Every chromosome ever created for the island is a slot of the arena. Children are not new
+ * chromosomes: they are mated into slots freed by the chromosomes which didn't survive the previous
+ * generation. The next generation is written into a second array, swapped with the current one
+ * once complete (double buffering).
+ *
+ * Once the first generation has created the slots it needs (population size + children per generation),
+ * a generation allocates no chromosome, city list or state table.
+ *
+ * Typical generation:
+ *   children = arena.getChildren(n);                  // Recycled slots, to mate into
+ *   next = arena.getNextPopulation();                 // Fill with the survivors (parents or children)
+ *   arena.commit(count);                              // Swaps the populations, frees the slots which didn't survive
+ *
+ * @author Harry Long
+ *
+ */
+public class PopulationArena {
+
+	/**
+	 * All chromosomes owned by the arena, a chromosome's slot being its index
+	 */
+	private Chromosome[] slots;
+	private int slotCount;
+
+	/**
+	 * The generation at which the chromosome of each slot last survived
+	 */
+	private int[] survivedGeneration;
+
+	/**
+	 * Slots which can be reused, as a stack
+	 */
+	private Chromosome[] free;
+	private int freeCount;
+
+	private Chromosome[] population;
+	private Chromosome[] nextPopulation;
+	private Chromosome[] children = new Chromosome[0];
+
+	private int generation;
+
+	/**
+	 * @param population: The initial population, whose chromosomes become slots of the arena
+	 */
+	public PopulationArena(Chromosome[] population)
+	{
+		int capacity = Math.max(1, population.length * 2);
+		slots = new Chromosome[capacity];
+		survivedGeneration = new int[capacity];
+		free = new Chromosome[capacity];
+		for(Chromosome c : population)
+			add(c);
+		this.population = population;
+		this.nextPopulation = population.clone();
+	}
+
+	/**
+	 * @return: The current population
+	 */
+	public Chromosome[] getPopulation()
+	{
+		return population;
+	}
+
+	/**
+	 * Get chromosomes to mate into. Their content is to be overwritten.
+	 * The array is reused by the next calls.
+	 *
+	 * @param n: The number of children wanted
+	 * @return: n chromosomes which aren't part of the current population
+	 */
+	public Chromosome[] getChildren(int n)
+	{
+		if(children.length != n)
+			children = new Chromosome[n];
+		for(int i = 0; i < n; ++i)
+		{
+			if(freeCount == 0) // Only until enough slots exist
+				children[i] = add(population[0].copy());
+			else
+				children[i] = free[--freeCount];
+		}
+		return children;
+	}
+
+	/**
+	 * @return: The array to write the next population into, as long as the current one
+	 */
+	public Chromosome[] getNextPopulation()
+	{
+		return nextPopulation;
+	}
+
+	/**
+	 * Makes the next population the current one. Chromosomes of the arena which aren't part of it are freed
+	 *
+	 * @param count: The number of chromosomes written in the next population
+	 */
+	public void commit(int count)
+	{
+		generation++;
+		Chromosome[] previous = population;
+		population = nextPopulation;
+		if(count != population.length) // Not in steady state
+			population = Arrays.copyOf(population, count);
+		nextPopulation = previous.length == count ? previous : new Chromosome[count];
+
+		for(int i = 0; i < count; ++i)
+			survivedGeneration[population[i].arenaSlot] = generation;
+		freeCount = 0;
+		for(int slot = 0; slot < slotCount; ++slot)
+		{
+			if(survivedGeneration[slot] != generation)
+				free[freeCount++] = slots[slot];
+		}
+	}
+
+	/**
+	 * @return: The number of chromosomes owned by the arena
+	 */
+	public int getSlotCount()
+	{
+		return slotCount;
+	}
+
+	/**
+	 * @param slot: The slot (Range: [0, slot count - 1])
+	 * @return: The chromosome of the slot
+	 */
+	public Chromosome getSlot(int slot)
+	{
+		return slots[slot];
+	}
+
+	private Chromosome add(Chromosome chromosome)
+	{
+		if(slotCount == slots.length)
+		{
+			slots = Arrays.copyOf(slots, slotCount * 2);
+			survivedGeneration = Arrays.copyOf(survivedGeneration, slotCount * 2);
+			free = Arrays.copyOf(free, slotCount * 2);
+		}
+		chromosome.arenaSlot = slotCount;
+		survivedGeneration[slotCount] = generation;
+		slots[slotCount++] = chromosome;
+		return chromosome;
+	}
+}
@@ -0,0 +1,246 @@
+import java.util.Arrays;
+
+/**
+ * Ranks chromosomes by cost.
+ *
+ * Costs are copied into a primitive array once and sorting is done on a permutation of
+ * indices, so comparisons never go through the chromosomes themselves. Chromosomes with the
+ * same cost keep their relative order.
+ *
+ * The primitive arrays are scratch memory kept per thread, so ranking allocates nothing once warmed up.
+ *
+ * @author Harry Long
+ *
+ */
+public class Ranking {
+
+	/**
+	 * Below this size runs are sorted by insertion
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>();
+
+	/**
+	 * Sort the first chromosomes by their cost.
+	 *
+	 * @param chromosomes: An array of chromosomes to sort.
+	 * @param num: How much of the chromosome list to sort.
+	 */
+	public static void sort(Chromosome[] chromosomes, int num)
+	{
+		Scratch scratch = Scratch.get(num);
+		double[] costs = getCosts(chromosomes, num, scratch);
+		int[] order = scratch.order;
+		for(int i = 0; i < num; ++i)
+			order[i] = i;
+		sort(costs, order, scratch.buffer, 0, num);
+		permute(chromosomes, order, num, scratch);
+	}
+
+	/**
+	 * Moves the k fittest chromosomes to the front, sorted by cost.
+	 * The other chromosomes follow, in their original order.
+	 *
+	 * Costs O(P + k log k) rather than O(P log P) for a full sort.
+	 *
+	 * @param chromosomes: The chromosomes
+	 * @param k: The number of fittest chromosomes wanted
+	 */
+	public static void selectBest(Chromosome[] chromosomes, int k)
+	{
+		int num = chromosomes.length;
+		k = Math.min(k, num);
+		if(k <= 0)
+			return;
+
+		Scratch scratch = Scratch.get(num);
+		double[] costs = getCosts(chromosomes, num, scratch);
+		int[] order = scratch.order;
+		for(int i = 0; i < num; ++i)
+			order[i] = i;
+
+		if(k == 1)
+		{
+			// Plain minimum
+			int best = 0;
+			for(int i = 1; i < num; ++i)
+			{
+				if(costs[i] < costs[best])
+					best = i;
+			}
+			System.arraycopy(order, 0, order, 1, best);
+			order[0] = best;
+		}
+		else
+		{
+			select(costs, order, num, k);
+			sort(costs, order, scratch.buffer, 0, k);
+
+			// Everything else in the original order
+			boolean[] selected = scratch.selected;
+			for(int i = 0; i < k; ++i)
+				selected[order[i]] = true;
+			int next = k;
+			for(int i = 0; i < num; ++i)
+			{
+				if(!selected[i])
+					order[next++] = i;
+				selected[i] = false;
+			}
+		}
+		permute(chromosomes, order, num, scratch);
+	}
+
+	/**
+	 * Merges two runs of chromosomes already sorted by cost, keeping only the fittest.
+	 * On equal costs, chromosomes of the first run come first.
+	 *
+	 * @param first: The first sorted run
+	 * @param second: The second sorted run
+	 * @param merged: Filled with the fittest of both runs, sorted. Its length is the number of chromosomes kept.
+	 */
+	public static void merge(Chromosome[] first, Chromosome[] second, Chromosome[] merged)
+	{
+		int i = 0, j = 0;
+		for(int out = 0; out < merged.length; ++out)
+		{
+			if(j >= second.length || (i < first.length && first[i].getCost() <= second[j].getCost()))
+				merged[out] = first[i++];
+			else
+				merged[out] = second[j++];
+		}
+	}
+
+	private static double[] getCosts(Chromosome[] chromosomes, int num, Scratch scratch)
+	{
+		double[] costs = scratch.costs;
+		for(int i = 0; i < num; ++i)
+			costs[i] = chromosomes[i].getCost();
+		return costs;
+	}
+
+	/**
+	 * Reorders the chromosomes such that position i holds the chromosome previously at order[i]
+	 */
+	private static void permute(Chromosome[] chromosomes, int[] order, int num, Scratch scratch)
+	{
+		Chromosome[] original = scratch.chromosomes;
+		System.arraycopy(chromosomes, 0, original, 0, num);
+		for(int i = 0; i < num; ++i)
+			chromosomes[i] = original[order[i]];
+		Arrays.fill(original, 0, num, null); // Don't keep chromosomes alive
+	}
+
+	/**
+	 * Is the chromosome at index a ranked before the one at index b
+	 */
+	private static boolean before(double[] costs, int a, int b)
+	{
+		return costs[a] < costs[b] || (costs[a] == costs[b] && a < b);
+	}
+
+	/**
+	 * Stable merge sort of order[from, to) by cost
+	 */
+	private static void sort(double[] costs, int[] order, int[] buffer, int from, int to)
+	{
+		mergeSort(costs, order, buffer, from, to);
+	}
+
+	private static void mergeSort(double[] costs, int[] order, int[] buffer, int from, int to)
+	{
+		if(to - from <= INSERTION_SORT_THRESHOLD)
+		{
+			for(int i = from + 1; i < to; ++i)
+			{
+				int index = order[i];
+				int j = i - 1;
+				while(j >= from && before(costs, index, order[j]))
+				{
+					order[j+1] = order[j];
+					--j;
+				}
+				order[j+1] = index;
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(costs, order, buffer, from, mid);
+		mergeSort(costs, order, buffer, mid, to);
+		if(!before(costs, order[mid], order[mid-1])) // Already in order
+			return;
+
+		System.arraycopy(order, from, buffer, 0, mid - from);
+		int i = 0, j = mid, out = from;
+		int iEnd = mid - from;
+		while(i < iEnd && j < to)
+			order[out++] = before(costs, order[j], buffer[i]) ? order[j++] : buffer[i++];
+		while(i < iEnd)
+			order[out++] = buffer[i++];
+	}
+
+	/**
+	 * Quickselect: partially orders the indices such that the first k are the fittest (in no particular order)
+	 */
+	private static void select(double[] costs, int[] order, int num, int k)
+	{
+		int lo = 0, hi = num - 1;
+		while(hi > lo)
+		{
+			int pivot = order[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while(i <= j)
+			{
+				while(before(costs, order[i], pivot))
+					++i;
+				while(before(costs, pivot, order[j]))
+					--j;
+				if(i <= j)
+				{
+					int tmp = order[i];
+					order[i++] = order[j];
+					order[j--] = tmp;
+				}
+			}
+			if(k - 1 <= j)
+				hi = j;
+			else if(k - 1 >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Scratch memory of a thread, grown as needed
+	 */
+	private static class Scratch {
+
+		double[] costs = new double[0];
+		int[] order = new int[0];
+		int[] buffer = new int[0];
+		boolean[] selected = new boolean[0];
+		Chromosome[] chromosomes = new Chromosome[0];
+
+		static Scratch get(int num)
+		{
+			Scratch scratch = scratches.get();
+			if(scratch == null)
+			{
+				scratch = new Scratch();
+				scratches.set(scratch);
+			}
+			if(scratch.costs.length < num)
+			{
+				scratch.costs = new double[num];
+				scratch.order = new int[num];
+				scratch.buffer = new int[num];
+				scratch.selected = new boolean[num];
+				scratch.chromosomes = new Chromosome[num];
+			}
+			return scratch;
+		}
+	}
+}
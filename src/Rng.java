@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Seedable pseudo random generator (xoshiro256**), not thread safe: each thread or task uses its own.
+ *
+ * All generators of a run derive from a single master seed (see {@link ConfigurationManager#getSeed()}):
+ * stream i of a master seed is seeded by the i-th output of a SplitMix64 sequence started at the master seed.
+ * Streams are assigned deterministically (the main thread, the migration topology, each island, then each
+ * chromosome from its island), so a run is reproduced bit for bit by its seed and configuration, whatever
+ * the number of threads.
+ *
+ * @author Harry Long
+ *
+ */
+public final class Rng {
+
+	/**
+	 * Streams of a run
+	 */
+	public static final long MAIN_STREAM = 0;
+	public static final long TOPOLOGY_STREAM = 1;
+	public static final long FIRST_ISLAND_STREAM = 2;
+
+	/**
+	 * Increment of the SplitMix64 sequence (the golden ratio)
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long s0, s1, s2, s3;
+
+	/**
+	 * @param seed: The seed. Any value, including 0, gives a well mixed state
+	 */
+	public Rng(long seed)
+	{
+		setSeed(seed);
+	}
+
+	/**
+	 * @param masterSeed: The master seed of the run
+	 * @param stream: The stream wanted
+	 * @return: The generator of the given stream of a master seed
+	 */
+	public static Rng stream(long masterSeed, long stream)
+	{
+		return new Rng(mix(masterSeed + (stream + 1) * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * @return: A seed which differs between calls, for runs not given one
+	 */
+	public static long randomSeed()
+	{
+		return mix(System.nanoTime() ^ mix(System.currentTimeMillis()));
+	}
+
+	/**
+	 * Reseeds the generator, as if newly created with this seed. Allocates nothing
+	 * @param seed: The seed
+	 */
+	public void setSeed(long seed)
+	{
+		s0 = mix(seed += GOLDEN_GAMMA);
+		s1 = mix(seed += GOLDEN_GAMMA);
+		s2 = mix(seed += GOLDEN_GAMMA);
+		s3 = mix(seed + GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Writes the state of the generator into a checkpoint (see {@link Checkpoint})
+	 * @param out: The buffer written, 32 bytes
+	 */
+	void writeCheckpoint(ByteBuffer out)
+	{
+		out.putLong(s0).putLong(s1).putLong(s2).putLong(s3);
+	}
+
+	/**
+	 * Restores the state written by {@link #writeCheckpoint(ByteBuffer)}: the generator carries on with the same draws
+	 * @param in: The buffer read
+	 */
+	void readCheckpoint(ByteBuffer in)
+	{
+		s0 = in.getLong();
+		s1 = in.getLong();
+		s2 = in.getLong();
+		s3 = in.getLong();
+	}
+
+	/**
+	 * @return: 64 random bits
+	 */
+	public long nextLong()
+	{
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	/**
+	 * @param bound: The upper bound (exclusive). Must be positive
+	 * @return: A random value in [0, bound)
+	 */
+	public int nextInt(int bound)
+	{
+		// Multiply-shift of 32 random bits: no division, and a negligible bias for bounds far below 2^32
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * @return: A random value in [0, 1)
+	 */
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Fills a range of an array with random values in [0, bound)
+	 * @param values: The array to fill
+	 * @param from: The first index filled
+	 * @param to: The index after the last one filled
+	 * @param bound: The upper bound (exclusive) of the values. Must be positive
+	 */
+	public void nextInts(int[] values, int from, int to, int bound)
+	{
+		for(int i = from; i < to; ++i)
+			values[i] = (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * Fills a range of an array with random values in [0, 1)
+	 * @param values: The array to fill
+	 * @param from: The first index filled
+	 * @param to: The index after the last one filled
+	 */
+	public void nextDoubles(double[] values, int from, int to)
+	{
+		for(int i = from; i < to; ++i)
+			values[i] = (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * SplitMix64 finalizer: scrambles the bits of a value
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
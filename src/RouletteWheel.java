@@ -0,0 +1,119 @@
+/**
+ * Roulette wheel selection: picks indices with a probability proportional to their weight.
+ *
+ * Weights are kept in a Fenwick tree (binary indexed tree), so that:
+ *   - a spin is a descent of the tree, O(log P)
+ *   - removing a selected index (selection without replacement) is an update of the tree, O(log P)
+ *
+ * Stochastic universal sampling selects n indices at once with n equally spaced pointers and a
+ * single random draw, in O(P + n). It may select the same index several times if its weight
+ * is larger than 1/n of the total.
+ *
+ * @author Harry Long
+ *
+ */
+public class RouletteWheel {
+
+	public static enum Sampling { WITHOUT_REPLACEMENT, SUS };
+
+	private double[] weights = new double[0];
+
+	/**
+	 * 1-based Fenwick tree: tree[i] holds the sum of the weights of (i - lowest bit of i, i]
+	 */
+	private double[] tree = new double[1];
+
+	private int count;
+	private double totalWeight;
+
+	/**
+	 * Puts new weights on the wheel, in O(P)
+	 * @param weights: The weight of each index. Must be positive
+	 * @param count: The number of weights used
+	 */
+	public void reset(double[] weights, int count)
+	{
+		if(this.weights.length < count)
+		{
+			this.weights = new double[count];
+			this.tree = new double[count+1];
+		}
+		this.count = count;
+		totalWeight = 0;
+		System.arraycopy(weights, 0, this.weights, 0, count);
+		tree[0] = 0;
+		for(int i = 1; i <= count; ++i)
+			tree[i] = weights[i-1];
+		for(int i = 1; i <= count; ++i)
+		{
+			totalWeight += weights[i-1];
+			int parent = i + (i & -i);
+			if(parent <= count)
+				tree[parent] += tree[i];
+		}
+	}
+
+	/**
+	 * @return: A random index, with a probability proportional to its weight
+	 */
+	public int spin()
+	{
+		return find(Utils.randomDouble() * totalWeight);
+	}
+
+	/**
+	 * @return: A random index, with a probability proportional to its weight. The index can't be selected again until the next reset
+	 */
+	public int spinWithoutReplacement()
+	{
+		int index = spin();
+		double weight = weights[index];
+		weights[index] = 0;
+		totalWeight -= weight;
+		for(int i = index + 1; i <= count; i += i & -i)
+			tree[i] -= weight;
+		return index;
+	}
+
+	/**
+	 * Stochastic universal sampling
+	 * @param n: The number of indices to select
+	 * @param selected: Filled with the selected indices, in increasing order
+	 */
+	public void spinUniversal(int n, int[] selected)
+	{
+		double step = totalWeight / n;
+		double pointer = Utils.randomDouble() * step;
+		double cumulativeWeight = 0;
+		int index = -1;
+		for(int i = 0; i < n; ++i, pointer += step)
+		{
+			while(cumulativeWeight <= pointer && index < count - 1)
+				cumulativeWeight += weights[++index];
+			selected[i] = index;
+		}
+	}
+
+	/**
+	 * Finds the index whose weight covers the given point of the wheel
+	 */
+	private int find(double point)
+	{
+		int position = 0;
+		for(int step = Integer.highestOneBit(Math.max(1, count)); step > 0; step >>= 1)
+		{
+			if(position + step <= count && tree[position + step] <= point)
+			{
+				point -= tree[position + step];
+				position += step;
+			}
+		}
+		// Rounding errors may point past the last weight
+		while(position >= count || weights[position] == 0)
+		{
+			if(--position < 0)
+				return 0;
+		}
+		return position;
+	}
+}
@@ -0,0 +1,400 @@
+import java.util.Arrays;
+
+/**
+ * Constructive heuristics seeding part of the initial population (see {@link ConfigurationManager#getSeedingFraction()}),
+ * so runs start near good tours rather than from random ones.
+ *
+ *   - NEAREST_NEIGHBOUR: from a random city, always goes to the closest unvisited city
+ *   - GREEDY_EDGE: adds the shortest edges first (lengths randomly stretched by up to {@link #GREEDY_NOISE}, so seeds
+ *     differ), skipping those giving a city a third edge or closing a cycle, then chains the fragments nearest first
+ *   - SPACE_FILLING_CURVE: visits the cities in the order of a Hilbert curve over the map, from a random point of it
+ *   - RANDOM_INSERTION: inserts the cities in a random order, each next to one of its closest cities where it lengthens
+ *     the tour the least (cities none of whose closest cities is in the tour yet wait for a later pass)
+ *   - ALL: the heuristics above in turn
+ *
+ * Only the closest k cities of each city are looked at (see {@link CandidateLists}), but for:
+ *   - NEAREST_NEIGHBOUR: when all the candidates of the current city are visited, it scans the unvisited cities.
+ *     O(n k) while candidates remain, up to O(n^2) as such dead ends get common towards the end of the tour
+ *   - GREEDY_EDGE: sorting the candidate edges takes O(n k log(n k)), but chaining the fragments scans the free ends
+ *     at each fragment: O(F^2) for F fragments, a fraction of n
+ *   - SPACE_FILLING_CURVE: O(n log n), the sort of the cities along the curve
+ *   - RANDOM_INSERTION: O(n k) per pass over the cities left, few passes unless the map is clustered
+ * All draw from the random generator of the thread.
+ *
+ * @author Harry Long
+ *
+ */
+public class Seeding {
+
+	public static enum Heuristic { NEAREST_NEIGHBOUR, GREEDY_EDGE, SPACE_FILLING_CURVE, RANDOM_INSERTION, ALL };
+
+	/**
+	 * The heuristics used in turn by ALL
+	 */
+	private static final Heuristic[] HEURISTICS = { Heuristic.NEAREST_NEIGHBOUR, Heuristic.GREEDY_EDGE,
+			Heuristic.SPACE_FILLING_CURVE, Heuristic.RANDOM_INSERTION };
+
+	/**
+	 * Greedy edge only: how much longer each edge may be randomly considered (as a fraction of its length)
+	 */
+	private static final double GREEDY_NOISE = 0.1;
+
+	/**
+	 * Space filling curve only: the number of bits of each coordinate on the curve
+	 */
+	private static final int CURVE_ORDER = 15;
+
+	/**
+	 * Stands for a missing city
+	 */
+	private static final int NONE = -1;
+
+	private Seeding()
+	{
+	}
+
+	/**
+	 * Overwrites a chromosome with a tour built by a heuristic
+	 * @param chromosome: The chromosome seeded
+	 * @param heuristic: The heuristic building the tour
+	 * @param index: The index of the seed (which heuristic ALL uses)
+	 */
+	public static void seed(Chromosome chromosome, Heuristic heuristic, int index)
+	{
+		City[] cities = chromosome.getCities();
+		if(cities.length < 3)
+			return;
+		if(heuristic == Heuristic.ALL)
+			heuristic = HEURISTICS[index % HEURISTICS.length];
+		int[] tour = new int[cities.length];
+		build(cities, heuristic, tour);
+		chromosome.seed(tour);
+	}
+
+	/**
+	 * Builds a tour
+	 * @param cities: The cities
+	 * @param heuristic: The heuristic building the tour (not ALL)
+	 * @param tour: Overwritten with the cities in the order they are visited
+	 */
+	static void build(City[] cities, Heuristic heuristic, int[] tour)
+	{
+		switch(heuristic){
+		case NEAREST_NEIGHBOUR:
+			nearestNeighbour(cities, tour);
+			break;
+		case GREEDY_EDGE:
+			greedyEdge(cities, tour);
+			break;
+		case SPACE_FILLING_CURVE:
+			spaceFillingCurve(cities, tour);
+			break;
+		case RANDOM_INSERTION:
+			randomInsertion(cities, tour);
+			break;
+		default:
+			System.err.println("Invalid seeding heuristic: " + heuristic);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Shuffles the cities into a random order (Fisher-Yates)
+	 * @param tour: Overwritten with a random permutation of the cities
+	 */
+	public static void shuffle(int[] tour)
+	{
+		for(int i = 0; i < tour.length; ++i)
+			tour[i] = i;
+		for(int i = tour.length - 1; i > 0; --i)
+		{
+			int j = Utils.random(0, i);
+			int tmp = tour[i];
+			tour[i] = tour[j];
+			tour[j] = tmp;
+		}
+	}
+
+	private static void nearestNeighbour(City[] cities, int[] tour)
+	{
+		DistanceMatrix distances = cities[0].getDistanceMatrix();
+		CandidateLists candidateLists = cities[0].getCandidateLists();
+		int n = cities.length;
+
+		// The unvisited cities, and the position of each one among them (cities are removed by moving the last one in)
+		int[] unvisited = new int[n], positions = new int[n];
+		for(int i = 0; i < n; ++i)
+			unvisited[i] = positions[i] = i;
+		int remaining = n;
+
+		int city = Utils.random(0, n-1);
+		for(int i = 0; i < n; ++i)
+		{
+			tour[i] = city;
+			int last = unvisited[--remaining];
+			unvisited[positions[city]] = last;
+			positions[last] = positions[city];
+			positions[city] = NONE;
+			if(remaining == 0)
+				break;
+
+			int next = NONE;
+			for(int rank = 0; rank < candidateLists.getCandidateCount() && next == NONE; ++rank)
+			{
+				int candidate = candidateLists.getNeighbour(city, rank);
+				if(positions[candidate] != NONE)
+					next = candidate;
+			}
+			if(next == NONE)
+			{
+				double shortest = Double.MAX_VALUE;
+				for(int j = 0; j < remaining; ++j)
+				{
+					double distance = distances.getDistance(city, unvisited[j]);
+					if(distance < shortest)
+					{
+						shortest = distance;
+						next = unvisited[j];
+					}
+				}
+			}
+			city = next;
+		}
+	}
+
+	private static void greedyEdge(City[] cities, int[] tour)
+	{
+		DistanceMatrix distances = cities[0].getDistanceMatrix();
+		CandidateLists candidateLists = cities[0].getCandidateLists();
+		int n = cities.length, k = candidateLists.getCandidateCount();
+
+		// Candidate edges, sorted by their stretched length: its (non-negative) float bits keep the order of the longs
+		Rng random = Utils.getThreadRandom();
+		long[] edges = new long[n * k];
+		for(int city = 0; city < n; ++city)
+		{
+			for(int rank = 0; rank < k; ++rank)
+			{
+				float length = (float) (distances.getDistance(city, candidateLists.getNeighbour(city, rank)) * (1 + GREEDY_NOISE * random.nextDouble()));
+				edges[city * k + rank] = ((long) Float.floatToIntBits(length) << 32) | (city * k + rank);
+			}
+		}
+		Arrays.sort(edges);
+
+		// The (at most two) neighbours of each city, and the fragment of each city
+		int[] neighbours = new int[2 * n];
+		Arrays.fill(neighbours, NONE);
+		int[] fragments = new int[n];
+		for(int i = 0; i < n; ++i)
+			fragments[i] = i;
+		for(long edge : edges)
+		{
+			int index = (int) edge;
+			int a = index / k, b = candidateLists.getNeighbour(a, index % k);
+			if(neighbours[2*a+1] != NONE || neighbours[2*b+1] != NONE)
+				continue;
+			int fragmentA = find(fragments, a), fragmentB = find(fragments, b);
+			if(fragmentA == fragmentB)
+				continue;
+			fragments[fragmentA] = fragmentB;
+			neighbours[neighbours[2*a] == NONE ? 2*a : 2*a+1] = b;
+			neighbours[neighbours[2*b] == NONE ? 2*b : 2*b+1] = a;
+		}
+
+		// Chain the fragments: from the end of the tour, the closest end of another fragment
+		int[] ends = new int[n];
+		int endCount = 0;
+		for(int city = 0; city < n; ++city)
+		{
+			if(neighbours[2*city+1] == NONE)
+				ends[endCount++] = city;
+		}
+		boolean[] used = new boolean[n];
+		int length = 0;
+		int city = ends[Utils.random(0, endCount-1)];
+		while(true)
+		{
+			// Walk the fragment to its other end
+			int previous = NONE;
+			while(city != NONE)
+			{
+				tour[length++] = city;
+				used[city] = true;
+				int next = neighbours[2*city] != previous ? neighbours[2*city] : neighbours[2*city+1];
+				previous = city;
+				city = next;
+			}
+			if(length == n)
+				break;
+
+			int last = tour[length-1];
+			double shortest = Double.MAX_VALUE;
+			for(int i = 0; i < endCount; ++i)
+			{
+				if(used[ends[i]])
+				{
+					ends[i--] = ends[--endCount];
+					continue;
+				}
+				double distance = distances.getDistance(last, ends[i]);
+				if(distance < shortest)
+				{
+					shortest = distance;
+					city = ends[i];
+				}
+			}
+		}
+	}
+
+	private static int find(int[] fragments, int i)
+	{
+		while(fragments[i] != i)
+		{
+			fragments[i] = fragments[fragments[i]];
+			i = fragments[i];
+		}
+		return i;
+	}
+
+	private static void spaceFillingCurve(City[] cities, int[] tour)
+	{
+		int n = cities.length;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for(City city : cities)
+		{
+			minX = Math.min(minX, city.getx());
+			maxX = Math.max(maxX, city.getx());
+			minY = Math.min(minY, city.gety());
+			maxY = Math.max(maxY, city.gety());
+		}
+		double scale = ((1 << CURVE_ORDER) - 1) / (double) Math.max(1, Math.max(maxX - minX, maxY - minY));
+
+		// Sorted by their distance along the curve, then their name
+		long[] keys = new long[n];
+		for(int i = 0; i < n; ++i)
+		{
+			int x = (int) ((cities[i].getx() - minX) * scale), y = (int) ((cities[i].gety() - minY) * scale);
+			keys[i] = (hilbertIndex(x, y) << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		// The curve is followed from a random point, wrapping around
+		int start = Utils.random(0, n-1);
+		for(int i = 0; i < n; ++i)
+			tour[i] = (int) keys[(start + i) % n];
+	}
+
+	/**
+	 * @return: The distance along the Hilbert curve of order {@link #CURVE_ORDER} of the given point
+	 */
+	static long hilbertIndex(int x, int y)
+	{
+		long index = 0;
+		for(int s = 1 << (CURVE_ORDER - 1); s > 0; s >>= 1)
+		{
+			int rx = (x & s) > 0 ? 1 : 0, ry = (y & s) > 0 ? 1 : 0;
+			index += (long) s * s * ((3 * rx) ^ ry);
+			// Rotate the quadrant so the curve is continuous
+			if(ry == 0)
+			{
+				if(rx == 1)
+				{
+					x = (1 << CURVE_ORDER) - 1 - x;
+					y = (1 << CURVE_ORDER) - 1 - y;
+				}
+				int tmp = x;
+				x = y;
+				y = tmp;
+			}
+		}
+		return index;
+	}
+
+	private static void randomInsertion(City[] cities, int[] tour)
+	{
+		DistanceMatrix distances = cities[0].getDistanceMatrix();
+		CandidateLists candidateLists = cities[0].getCandidateLists();
+		int n = cities.length;
+		int[] order = new int[n];
+		shuffle(order);
+
+		// The tour as a doubly linked list
+		int[] next = new int[n], previous = new int[n];
+		boolean[] inserted = new boolean[n];
+		int head = order[0], tail = order[0];
+		next[head] = previous[head] = NONE;
+		inserted[head] = true;
+
+		// Cities none of whose closest cities are in the tour yet are deferred to the next pass over the order.
+		// If a whole pass inserts none, the first one left goes to an end of the tour
+		int remaining = n - 1;
+		System.arraycopy(order, 1, order, 0, remaining);
+		boolean force = false;
+		while(remaining > 0)
+		{
+			int deferred = 0;
+			for(int i = 0; i < remaining; ++i)
+			{
+				int city = order[i];
+				int bestAfter = NONE - 1; // Not found
+				double bestIncrease = Double.MAX_VALUE;
+				for(int rank = 0; rank < candidateLists.getCandidateCount(); ++rank)
+				{
+					int candidate = candidateLists.getNeighbour(city, rank);
+					if(!inserted[candidate])
+						continue;
+					double toCandidate = distances.getDistance(city, candidate);
+					// After the candidate
+					int after = next[candidate];
+					double increase = toCandidate + (after == NONE ? 0 : distances.getDistance(city, after) - distances.getDistance(candidate, after));
+					if(increase < bestIncrease)
+					{
+						bestIncrease = increase;
+						bestAfter = candidate;
+					}
+					// Before the candidate
+					int before = previous[candidate];
+					increase = toCandidate + (before == NONE ? 0 : distances.getDistance(before, city) - distances.getDistance(before, candidate));
+					if(increase < bestIncrease)
+					{
+						bestIncrease = increase;
+						bestAfter = before;
+					}
+				}
+				if(bestAfter == NONE - 1)
+				{
+					if(!force)
+					{
+						order[deferred++] = city;
+						continue;
+					}
+					bestAfter = distances.getDistance(tail, city) <= distances.getDistance(city, head) ? tail : NONE;
+				}
+				force = false;
+
+				// Insert after bestAfter (at the head if NONE)
+				int after = bestAfter == NONE ? head : next[bestAfter];
+				previous[city] = bestAfter;
+				next[city] = after;
+				if(bestAfter == NONE)
+					head = city;
+				else
+					next[bestAfter] = city;
+				if(after == NONE)
+					tail = city;
+				else
+					previous[after] = city;
+				inserted[city] = true;
+			}
+			force = deferred == remaining;
+			remaining = deferred;
+		}
+
+		int city = head;
+		for(int i = 0; i < n; ++i)
+		{
+			tour[i] = city;
+			city = next[city];
+		}
+	}
+}
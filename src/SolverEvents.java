@@ -0,0 +1,117 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events of the solver, shown under "Travelling Salesman" in JDK Mission Control next to
+ * the GC and safepoint events of the recording. A recording is started with the JVM option
+ *   -XX:StartFlightRecording=filename=run.jfr
+ * or with jcmd <pid> JFR.start on a running solver.
+ *
+ * The events of each generation and phase are only created while a recording enables them (see {@link #GENERATION}
+ * and {@link #PHASE}), so runs without a recording don't allocate them. The others are rare, and without a
+ * recording their begin(), end() and shouldCommit() cost next to nothing. None of them records a stack trace.
+ *
+ * @author Harry Long
+ *
+ */
+public class SolverEvents {
+
+	/**
+	 * The types of the frequent events, to check whether a recording enables them before creating one
+	 */
+	static final EventType GENERATION = EventType.getEventType(Generation.class);
+	static final EventType PHASE = EventType.getEventType(Phase.class);
+
+	private SolverEvents()
+	{
+	}
+
+	/**
+	 * A generation of the run, from the start of the evolution of the islands to the end of its statistics
+	 */
+	@Name("tsp.Generation")
+	@Label("Generation")
+	@Category("Travelling Salesman")
+	@StackTrace(false)
+	public static class Generation extends Event {
+
+		@Label("Generation")
+		int generation;
+
+		@Label("Population Size")
+		int populationSize;
+
+		@Label("Best Cost")
+		@Description("The lowest cost of the population")
+		double bestCost;
+
+		@Label("Mean Cost")
+		double meanCost;
+	}
+
+	/**
+	 * A phase of a generation of an island (see {@link Instrumentation#begin(Instrumentation.Phase)})
+	 */
+	@Name("tsp.Phase")
+	@Label("Phase")
+	@Category("Travelling Salesman")
+	@Description("Children is the parallel pass over the children: their mutation, decoding, evaluation and local search")
+	@StackTrace(false)
+	public static class Phase extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Generation")
+		int generation;
+
+		@Label("Population Size")
+		int populationSize;
+	}
+
+	/**
+	 * A new best tour of all runs
+	 */
+	@Name("tsp.Improvement")
+	@Label("Best Tour Improvement")
+	@Category("Travelling Salesman")
+	@StackTrace(false)
+	public static class Improvement extends Event {
+
+		@Label("Generation")
+		int generation;
+
+		@Label("Previous Cost")
+		@Description("The cost of the previous best tour, 0 for the first one")
+		double previousCost;
+
+		@Label("Cost")
+		double cost;
+	}
+
+	/**
+	 * The writing of a checkpoint, on the solver thread (the flush to disk follows in the background)
+	 */
+	@Name("tsp.Checkpoint")
+	@Label("Checkpoint")
+	@Category("Travelling Salesman")
+	@StackTrace(false)
+	public static class Checkpoint extends Event {
+
+		@Label("Generation")
+		int generation;
+
+		@Label("File")
+		String filename;
+
+		@Label("Size")
+		@DataAmount
+		long size;
+	}
+}
@@ -1,20 +1,73 @@
-
-
+import java.nio.ByteBuffer;
 
 /**
  * Implementation of a state table used for the Evolutionary Programming
- * 
+ *
+ * The table is stored flat, row by row, in a single primitive array. Two layouts are supported:
+ *   - CHAR: 2 bytes per cell
+ *   - PACKED: input i only outputs values from 1 to (number of inputs - i), so its cells are stored
+ *     in ceil(log2(number of inputs - i)) bits. Rows are bit strings in a long[]. Roughly halves the memory for large tables.
+ *
+ * Input 0 is never used (a city is only reached once at least one city is visited) and always outputs 0.
+ *
  * @author harry
  *
  */
 
 public class StateTable {
-	
-	private short startState;
-	private Short[][] table;
+
+	public static enum Layout { CHAR, PACKED };
+
+	private int startState;
+	private final int nStates;
+	private final int nInputs;
+	private final Layout layout;
+
+	// Only one of these is allocated, depending on the layout
+	private char[] cells;
+	private long[] packedCells;
+
+	/**
+	 * Packed layout only: the number of bits of a row, and the offset (in bits) and width of each input within a row.
+	 * Shared between tables of the same size
+	 */
+	private long rowBits;
+	private int[] inputOffsets;
+	private int[] inputWidths;
 
 	StateTable(int nStates, int nInputs) {
-		table = new Short[nStates][nInputs];
+		this(nStates, nInputs, Layout.CHAR);
+	}
+
+	StateTable(int nStates, int nInputs, Layout layout) {
+		this.nStates = nStates;
+		this.nInputs = nInputs;
+		this.layout = layout;
+		switch(layout){
+		case PACKED:
+			inputOffsets = new int[nInputs+1];
+			inputWidths = new int[nInputs];
+			for (int input = 1; input < nInputs; ++input) {
+				inputWidths[input] = 32 - Integer.numberOfLeadingZeros(nInputs - input - 1); // ceil(log2(nInputs - input))
+				inputOffsets[input+1] = inputOffsets[input] + inputWidths[input];
+			}
+			rowBits = inputOffsets[nInputs];
+			long words = (rowBits * nStates + 63) >>> 6;
+			if (words > Integer.MAX_VALUE - 8) {
+				System.err.println("A state table of " + nStates + " states and " + nInputs + " inputs would exceed the maximum array size. Exiting");
+				System.exit(1);
+			}
+			packedCells = new long[(int) words];
+			break;
+		case CHAR:
+		default:
+			if ((long) nStates * nInputs > Integer.MAX_VALUE - 8 || nInputs > Character.MAX_VALUE + 1) {
+				System.err.println("A state table of " + nStates + " states and " + nInputs + " inputs would exceed the maximum array size. Use the PACKED layout. Exiting");
+				System.exit(1);
+			}
+			cells = new char[nStates * nInputs];
+			break;
+		}
 	}
 
 	/**
@@ -22,12 +75,65 @@ public class StateTable {
 	 * @param other: The template state table to copy
 	 */
 	public StateTable(StateTable other) {
-		this.startState = other.getStartState();
-		table = new Short[other.getNumbeOfStates()][other.getNumberOfInputs()];
-		for (int x = 0; x < other.getNumbeOfStates(); ++x) {
-			for (int y = 1; y < other.getNumberOfInputs(); ++y) {
-				setOutput(x, y, other.getOutput(x, y));
-			}
+		this.startState = other.startState;
+		this.nStates = other.nStates;
+		this.nInputs = other.nInputs;
+		this.layout = other.layout;
+		this.rowBits = other.rowBits;
+		this.inputOffsets = other.inputOffsets;
+		this.inputWidths = other.inputWidths;
+		if (other.cells != null)
+			this.cells = other.cells.clone();
+		if (other.packedCells != null)
+			this.packedCells = other.packedCells.clone();
+	}
+
+	/**
+	 * Overwrites this state table with another of the same size and layout, reusing its own memory
+	 * @param other: The state table to copy
+	 */
+	public void copyFrom(StateTable other) {
+		this.startState = other.startState;
+		if (cells != null)
+			System.arraycopy(other.cells, 0, cells, 0, cells.length);
+		else
+			System.arraycopy(other.packedCells, 0, packedCells, 0, packedCells.length);
+	}
+
+	/**
+	 * @return: The number of bytes written by {@link #writeCheckpoint(ByteBuffer)}
+	 */
+	long checkpointSize() {
+		return 4 + (cells != null ? 2L * cells.length : 8L * packedCells.length);
+	}
+
+	/**
+	 * Writes the start state and the cells, as stored, into a checkpoint (see {@link Checkpoint})
+	 * @param out: The buffer written
+	 */
+	void writeCheckpoint(ByteBuffer out) {
+		out.putInt(startState);
+		if (cells != null) {
+			out.asCharBuffer().put(cells);
+			out.position(out.position() + 2 * cells.length);
+		} else {
+			out.asLongBuffer().put(packedCells);
+			out.position(out.position() + 8 * packedCells.length);
+		}
+	}
+
+	/**
+	 * Restores the table written by {@link #writeCheckpoint(ByteBuffer)} from a table of the same size and layout
+	 * @param in: The buffer read
+	 */
+	void readCheckpoint(ByteBuffer in) {
+		startState = in.getInt();
+		if (cells != null) {
+			in.asCharBuffer().get(cells);
+			in.position(in.position() + 2 * cells.length);
+		} else {
+			in.asLongBuffer().get(packedCells);
+			in.position(in.position() + 8 * packedCells.length);
 		}
 	}
 
@@ -37,51 +143,138 @@ public class StateTable {
 	 * @param input
 	 * @return: The corresponding output
 	 */
-	public short getOutput(int currentState, int input) {
-		return table[currentState][input];
+	public int getOutput(int currentState, int input) {
+		if (cells != null)
+			return cells[currentState * nInputs + input];
+		if (input == 0)
+			return 0;
+		return (int) readBits(packedCells, currentState * rowBits + inputOffsets[input], inputWidths[input]) + 1;
 	}
 
-	public void setOutput(int state, int input, Short output) {
-		if (output != null) {
-			table[state][input] = output;
+	/**
+	 * @param state
+	 * @param input
+	 * @param output: From 1 to (number of inputs - input)
+	 */
+	public void setOutput(int state, int input, int output) {
+		if (cells != null)
+			cells[state * nInputs + input] = (char) output;
+		else if (input != 0)
+			writeBits(packedCells, state * rowBits + inputOffsets[input], inputWidths[input], output - 1);
+	}
+
+	/**
+	 * Swaps the outputs of the inputs in [fromInput, toInput) of every state with another table of the same size and layout.
+	 * These are contiguous within a row, so whole ranges are swapped at once.
+	 * @param other: The table to swap with
+	 * @param fromInput: The first input swapped
+	 * @param toInput: The input after the last one swapped
+	 * @return: Whether any output swapped differed (so the tables changed)
+	 */
+	public boolean swapOutputs(StateTable other, int fromInput, int toInput) {
+		if (fromInput >= toInput)
+			return false;
+		boolean changed = false;
+		for (int state = 0; state < nStates; ++state) {
+			if (cells != null) {
+				int from = state * nInputs + fromInput, to = state * nInputs + toInput;
+				for (int i = from; i < to; ++i) {
+					char tmp = cells[i];
+					changed |= tmp != other.cells[i];
+					cells[i] = other.cells[i];
+					other.cells[i] = tmp;
+				}
+			} else {
+				long from = state * rowBits + inputOffsets[fromInput], to = state * rowBits + inputOffsets[toInput];
+				for (long pos = from; pos < to; pos += 32) {
+					int width = (int) Math.min(32, to - pos);
+					long tmp = readBits(packedCells, pos, width), otherBits = readBits(other.packedCells, pos, width);
+					changed |= tmp != otherBits;
+					writeBits(packedCells, pos, width, otherBits);
+					writeBits(other.packedCells, pos, width, tmp);
+				}
+			}
 		}
+		return changed;
 	}
 
-	public short getStartState() {
+	public int getStartState() {
 		return startState;
 	}
 
-	public void setStartState(short state) {
+	public void setStartState(int state) {
 		this.startState = state;
 	}
 
 	public int getNumbeOfStates() {
-		return table.length;
+		return nStates;
 	}
 
 	public int getNumberOfInputs() {
-		return table[0].length;
+		return nInputs;
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return: The memory used by the cells, in bytes
+	 */
+	public long getFootprint() {
+		return cells != null ? 2L * cells.length : 8L * packedCells.length;
+	}
+
+	/**
+	 * Reads up to 32 bits starting at the given bit position
+	 */
+	private static long readBits(long[] words, long position, int width) {
+		int word = (int) (position >>> 6);
+		int shift = (int) (position & 63);
+		long bits = words[word] >>> shift;
+		if (shift + width > 64)
+			bits |= words[word+1] << (64 - shift);
+		return bits & ((1L << width) - 1);
+	}
+
+	/**
+	 * Writes up to 32 bits starting at the given bit position
+	 */
+	private static void writeBits(long[] words, long position, int width, long value) {
+		long mask = (1L << width) - 1;
+		value &= mask;
+		int word = (int) (position >>> 6);
+		int shift = (int) (position & 63);
+		words[word] = (words[word] & ~(mask << shift)) | (value << shift);
+		if (shift + width > 64) {
+			int written = 64 - shift;
+			words[word+1] = (words[word+1] & ~(mask >>> written)) | (value >>> written);
+		}
 	}
 
 	/**
-	 * Utility method to write the state table to a file 
+	 * Utility method to write the state table to a file
 	 * @param filename
 	 */
 	public void writeToFile(String filename) {
+		Integer[][] table = new Integer[nStates][nInputs];
+		for (int x = 0; x < nStates; ++x)
+			for (int y = 0; y < nInputs; ++y)
+				table[x][y] = getOutput(x, y);
 		Utils.writeCSV(table, filename);
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for (int x = 0; x < table.length; ++x) {
-			for (int y = 0; y < table[x].length; ++y) {
+		for (int x = 0; x < nStates; ++x) {
+			for (int y = 0; y < nInputs; ++y) {
 				if (y != 0)
 					sb.append(" , ");
-				sb.append(table[x][y]);
+				sb.append(getOutput(x, y));
 			}
 			sb.append("\n");
 		}
 		return sb.toString();
 	}
-}
\ No newline at end of file
+}
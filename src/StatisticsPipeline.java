@@ -0,0 +1,473 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the statistics of each generation to sinks (files, the console) without the solver waiting for them.
+ *
+ * The solver thread writes a record of primitives per generation into a bounded ring buffer, and a background
+ * consumer thread drains it into the sinks. The ring has a single producer and a single consumer, so publishing
+ * is a few array writes and an ordered store, without lock nor allocation. When the consumer falls behind and
+ * the ring is full, what the solver does depends on the sinks (see {@link Overflow}): it waits for room if any sink
+ * needs every record (the files, by default), otherwise it drops the record. Drops are counted (see
+ * {@link #getDropped()}) and reported as they start and stop.
+ *
+ * Sinks:
+ *   - CSV: a header line, then a line per generation
+ *   - JSONL: a JSON object per line
+ *   - BINARY: fixed size big endian records (int generation, double min, mean, max and standard deviation,
+ *     long best tour id, double evaluations per second), 52 bytes each
+ *   - the progress summary printed every 100 generations (see {@link ProgressSink})
+ *
+ * @author Harry Long
+ *
+ */
+public class StatisticsPipeline {
+
+	public static enum Format { CSV, JSONL, BINARY };
+
+	/**
+	 * What a sink needs when the ring is full:
+	 *   - WAIT: every record, so the solver waits for the consumer to make room
+	 *   - DROP: nothing, the record may be dropped rather than slow the solver down
+	 */
+	public static enum Overflow { WAIT, DROP };
+
+	/**
+	 * Number of records the ring holds (a power of 2)
+	 */
+	private static final int CAPACITY = 1024;
+
+	/**
+	 * How long the solver sleeps between two looks at a full ring, when waiting
+	 */
+	private static final long WAIT_NANOS = 50000;
+
+	/**
+	 * Receives the records, on the consumer thread
+	 */
+	public static interface Sink {
+
+		/**
+		 * @param generation: The generation
+		 * @param min: The lowest cost of the population
+		 * @param mean: The mean cost of the population
+		 * @param max: The highest cost of the population
+		 * @param standardDeviation: The standard deviation of the costs of the population
+		 * @param bestTourId: The hash of the best tour (see {@link Chromosome#getTourHash()})
+		 * @param evaluationsPerSecond: The chromosomes evaluated per second during the generation
+		 */
+		void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+				double evaluationsPerSecond) throws IOException;
+
+		/**
+		 * Called once all records are written
+		 */
+		void close() throws IOException;
+
+		/**
+		 * @return: Whether the solver waits or drops records when the ring is full
+		 */
+		Overflow getOverflow();
+	}
+
+	// The ring: one array per field of the records
+	private final int[] generations = new int[CAPACITY];
+	private final double[] mins = new double[CAPACITY];
+	private final double[] means = new double[CAPACITY];
+	private final double[] maxs = new double[CAPACITY];
+	private final double[] standardDeviations = new double[CAPACITY];
+	private final long[] bestTourIds = new long[CAPACITY];
+	private final double[] evaluationsPerSecond = new double[CAPACITY];
+
+	/**
+	 * Number of records published (written by the producer only) and consumed (written by the consumer only)
+	 */
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong consumed = new AtomicLong();
+
+	private long dropped;
+	private volatile boolean closed;
+
+	/**
+	 * The records dropped since the last one published, and the generation of the first of them
+	 */
+	private long droppedInRow;
+	private int firstDropped;
+
+	private final List<Sink> sinks;
+	private final Thread consumer;
+
+	/**
+	 * Whether a sink needs every record (see {@link Overflow})
+	 */
+	private final boolean waitWhenFull;
+
+	/**
+	 * Starts the consumer thread
+	 * @param sinks: The sinks the records are written to
+	 */
+	public StatisticsPipeline(List<Sink> sinks)
+	{
+		this.sinks = new ArrayList<Sink>(sinks);
+		boolean wait = false;
+		for(Sink sink : sinks)
+			wait |= sink.getOverflow() == Overflow.WAIT;
+		waitWhenFull = wait;
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "Statistics");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Creates the sinks, as configured
+	 * @param generations: The number of generations of the run (for the progress summary)
+	 * @param previousMeans: The mean cost of each generation evolved before a resumed run started, empty for a new run.
+	 *   The statistics file of a resumed run is appended to rather than overwritten
+	 * @return: The sinks
+	 */
+	public static List<Sink> createSinks(int generations, double[] previousMeans)
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		boolean append = previousMeans.length > 0;
+		List<Sink> sinks = new ArrayList<Sink>();
+		sinks.add(new ProgressSink(generations, previousMeans));
+		String filename = config.getStatisticsFile();
+		if(filename == null)
+			return sinks;
+		try
+		{
+			switch(config.getStatisticsFormat()){
+			case JSONL:
+				sinks.add(new JsonlSink(filename, append, config.getStatisticsOverflow()));
+				break;
+			case BINARY:
+				sinks.add(new BinarySink(filename, append, config.getStatisticsOverflow()));
+				break;
+			case CSV:
+			default:
+				sinks.add(new CsvSink(filename, append, config.getStatisticsOverflow()));
+				break;
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to write the statistics to " + filename + ": " + e.getMessage());
+		}
+		return sinks;
+	}
+
+	/**
+	 * Publishes the record of a generation, from the solver thread. When the ring is full, waits for room if a sink
+	 * needs every record, otherwise drops the record
+	 * @return: Whether the record was published, false if it was dropped
+	 */
+	public boolean publish(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+			double evaluationsPerSecond)
+	{
+		long next = published.get();
+		while(waitWhenFull && next - consumed.get() == CAPACITY)
+		{
+			LockSupport.unpark(consumer);
+			LockSupport.parkNanos(this, WAIT_NANOS);
+		}
+		if(next - consumed.get() == CAPACITY)
+		{
+			if(droppedInRow++ == 0)
+			{
+				firstDropped = generation;
+				System.err.println("Generation statistics dropped from generation " + generation + ": the sinks can't keep up");
+			}
+			++dropped;
+			return false;
+		}
+		if(droppedInRow > 0)
+		{
+			System.err.println(droppedInRow + " generation statistics dropped, from generation " + firstDropped + " to " + (generation - 1));
+			droppedInRow = 0;
+		}
+		int slot = (int) next & (CAPACITY - 1);
+		generations[slot] = generation;
+		mins[slot] = min;
+		means[slot] = mean;
+		maxs[slot] = max;
+		standardDeviations[slot] = standardDeviation;
+		bestTourIds[slot] = bestTourId;
+		this.evaluationsPerSecond[slot] = evaluationsPerSecond;
+		published.lazySet(next + 1); // The record is written before the count is seen
+		LockSupport.unpark(consumer);
+		return true;
+	}
+
+	/**
+	 * Publishes the record of a generation of a population, from the solver thread
+	 * @param generation: The generation
+	 * @param chromosomes: The population, evaluated, the best one first
+	 * @param evaluationsPerSecond: The chromosomes evaluated per second during the generation
+	 * @return: Whether the record was published, false if it was dropped
+	 */
+	public boolean publish(int generation, Chromosome[] chromosomes, double evaluationsPerSecond)
+	{
+		double min = Double.MAX_VALUE, max = 0, sum = 0;
+		for(Chromosome c : chromosomes)
+		{
+			min = Math.min(min, c.getCost());
+			max = Math.max(max, c.getCost());
+			sum += c.getCost();
+		}
+		double mean = sum / chromosomes.length, squares = 0;
+		for(Chromosome c : chromosomes)
+			squares += (c.getCost() - mean) * (c.getCost() - mean);
+		return publish(generation, min, mean, max, Math.sqrt(squares / chromosomes.length), chromosomes[0].getTourHash(), evaluationsPerSecond);
+	}
+
+	/**
+	 * @return: The number of records dropped because the ring was full
+	 */
+	public long getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * Waits for the consumer to write the records published, then closes the sinks
+	 */
+	public void close()
+	{
+		closed = true;
+		LockSupport.unpark(consumer);
+		try
+		{
+			consumer.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		if(dropped > 0)
+			System.err.println(dropped + " generation statistics dropped: the sinks couldn't keep up");
+	}
+
+	private void consume()
+	{
+		while(true)
+		{
+			boolean closing = closed; // Read before the count: records published before closing are all seen
+			long next = consumed.get();
+			if(next == published.get())
+			{
+				if(closing)
+					break;
+				LockSupport.park(this);
+				continue;
+			}
+			int slot = (int) next & (CAPACITY - 1);
+			for(int i = 0; i < sinks.size(); ++i)
+			{
+				try
+				{
+					sinks.get(i).write(generations[slot], mins[slot], means[slot], maxs[slot], standardDeviations[slot],
+							bestTourIds[slot], evaluationsPerSecond[slot]);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Unable to write the statistics: " + e.getMessage());
+					sinks.remove(i--);
+				}
+			}
+			consumed.lazySet(next + 1);
+		}
+		for(Sink sink : sinks)
+		{
+			try
+			{
+				sink.close();
+			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to write the statistics: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Prints the progress of the mean cost every 100 generations
+	 */
+	public static class ProgressSink implements Sink {
+
+		private final int generations;
+		private double[] means;
+
+		/**
+		 * @param generations: The number of generations of the run
+		 * @param previousMeans: The mean cost of each generation evolved before the run resumed
+		 */
+		public ProgressSink(int generations, double[] previousMeans)
+		{
+			this.generations = generations;
+			means = Arrays.copyOf(previousMeans, Math.max(generations, previousMeans.length));
+		}
+
+		@Override
+		public void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+				double evaluationsPerSecond)
+		{
+			if(generation >= means.length)
+				means = Arrays.copyOf(means, Math.max(generation + 1, means.length * 2));
+			means[generation] = mean;
+			int next = generation + 1;
+			if(next % 100 != 0 || next >= generations)
+				return;
+			System.out.println("*****GENERATION: " + next + "/" + generations + " ********");
+			System.out.println("/// Progress since start: " + (means[0] - mean) / means[0] * 100d + " %");
+			System.out.println("/// Progress since generation " + (next - 100) + ": " + (means[next - 100] - mean) / means[next - 100] * 100d + " %");
+			System.out.println("/// Evaluations per second: " + (long) evaluationsPerSecond);
+			System.out.println();
+		}
+
+		@Override
+		public void close()
+		{
+		}
+
+		@Override
+		public Overflow getOverflow()
+		{
+			return Overflow.DROP;
+		}
+	}
+
+	/**
+	 * Writes the records as comma separated values, under a header line
+	 */
+	public static class CsvSink implements Sink {
+
+		private final Writer out;
+		private final Overflow overflow;
+
+		/**
+		 * @param filename: The file written
+		 * @param append: Whether to append to the file (the header is only written to empty files)
+		 * @param overflow: Whether the solver waits for the file or drops records when the ring is full
+		 */
+		public CsvSink(String filename, boolean append, Overflow overflow) throws IOException
+		{
+			this.overflow = overflow;
+			boolean empty = !append || new File(filename).length() == 0;
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, append), "US-ASCII"));
+			if(empty)
+				out.write("generation,min,mean,max,standard_deviation,best_tour_id,evaluations_per_second\n");
+		}
+
+		@Override
+		public void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+				double evaluationsPerSecond) throws IOException
+		{
+			out.write(generation + "," + min + "," + mean + "," + max + "," + standardDeviation + "," + Long.toHexString(bestTourId)
+					+ "," + evaluationsPerSecond + "\n");
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+		}
+
+		@Override
+		public Overflow getOverflow()
+		{
+			return overflow;
+		}
+	}
+
+	/**
+	 * Writes the records as JSON objects, one per line
+	 */
+	public static class JsonlSink implements Sink {
+
+		private final Writer out;
+		private final Overflow overflow;
+
+		public JsonlSink(String filename, boolean append, Overflow overflow) throws IOException
+		{
+			this.overflow = overflow;
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, append), "US-ASCII"));
+		}
+
+		@Override
+		public void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+				double evaluationsPerSecond) throws IOException
+		{
+			out.write("{\"generation\":" + generation + ",\"min\":" + min + ",\"mean\":" + mean + ",\"max\":" + max
+					+ ",\"standardDeviation\":" + standardDeviation + ",\"bestTourId\":\"" + Long.toHexString(bestTourId)
+					+ "\",\"evaluationsPerSecond\":" + evaluationsPerSecond + "}\n");
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+		}
+
+		@Override
+		public Overflow getOverflow()
+		{
+			return overflow;
+		}
+	}
+
+	/**
+	 * Writes the records as fixed size binary records (see {@link StatisticsPipeline})
+	 */
+	public static class BinarySink implements Sink {
+
+		private final DataOutputStream out;
+		private final Overflow overflow;
+
+		public BinarySink(String filename, boolean append, Overflow overflow) throws IOException
+		{
+			this.overflow = overflow;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename, append)));
+		}
+
+		@Override
+		public void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+				double evaluationsPerSecond) throws IOException
+		{
+			out.writeInt(generation);
+			out.writeDouble(min);
+			out.writeDouble(mean);
+			out.writeDouble(max);
+			out.writeDouble(standardDeviation);
+			out.writeLong(bestTourId);
+			out.writeDouble(evaluationsPerSecond);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+		}
+
+		@Override
+		public Overflow getOverflow()
+		{
+			return overflow;
+		}
+	}
+}
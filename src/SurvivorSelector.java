@@ -0,0 +1,138 @@
+/**
+ * Survivor selection of Evolutionary Programming.
+ *
+ * Parents and children are paired by fitness (the i-th fittest parent with the i-th fittest child). Then, until
+ * enough survivors are selected or no pair is left:
+ *   1 - A random pair is selected and the fittest of its parent/child becomes the warrior (the parent on a tie)
+ *   2 - The warrior fights Q random remaining children, and the fittest survives (the warrior on a tie)
+ *   3 - A surviving parent breaks its pair, leaving its child on its own. A surviving child is removed along with its pair, if still paired
+ *
+ * The valid pairs and the remaining children are dense arrays of indices, each with the position of every entry,
+ * so sampling and removing a pair or a child are O(1). The Q opponents are drawn by partially shuffling the
+ * remaining children. Costs are copied once into primitive arrays. Selecting from P pairs therefore costs O(P*Q)
+ * on top of sorting the parents and children.
+ *
+ * A selector keeps its scratch memory between selections and isn't meant to be shared between threads.
+ *
+ * @author Harry Long
+ *
+ */
+public class SurvivorSelector {
+
+	private double[] parentCosts = new double[0];
+	private double[] childCosts = new double[0];
+
+	/**
+	 * The pairs still valid are in validPairs[0, validPairCount). pairPositions[i] is the position of pair i in validPairs, -1 once broken
+	 */
+	private int[] validPairs = new int[0];
+	private int[] pairPositions = new int[0];
+	private int validPairCount;
+
+	/**
+	 * The children not yet selected are in remainingChildren[0, remainingChildCount). childPositions[i] is the position of child i in remainingChildren
+	 */
+	private int[] remainingChildren = new int[0];
+	private int[] childPositions = new int[0];
+	private int remainingChildCount;
+
+	/**
+	 * Selects the survivors
+	 * @param parents: The parents, sorted by cost
+	 * @param children: The children, sorted by cost. As many as parents
+	 * @param q: The number of children the warrior of a pair fights
+	 * @param survivors: Filled with the survivors
+	 * @param maxSurvivors: The number of survivors wanted
+	 * @return: The number of survivors selected, less than wanted only if no pair is left
+	 */
+	public int select(Chromosome[] parents, Chromosome[] children, int q, Chromosome[] survivors, int maxSurvivors)
+	{
+		int n = children.length;
+		if(childCosts.length < n)
+		{
+			parentCosts = new double[n];
+			childCosts = new double[n];
+			validPairs = new int[n];
+			pairPositions = new int[n];
+			remainingChildren = new int[n];
+			childPositions = new int[n];
+		}
+		for(int i = 0; i < n; ++i)
+		{
+			parentCosts[i] = parents[i].getCost();
+			childCosts[i] = children[i].getCost();
+			validPairs[i] = pairPositions[i] = i;
+			remainingChildren[i] = childPositions[i] = i;
+		}
+		validPairCount = remainingChildCount = n;
+
+		int survivorCount = 0;
+		while(survivorCount < maxSurvivors && validPairCount > 0)
+		{
+			// Select a random pair, and its fittest as warrior
+			int pair = validPairs[Utils.random(0, validPairCount-1)];
+			boolean warriorIsParent = parentCosts[pair] <= childCosts[pair];
+			double warriorCost = warriorIsParent ? parentCosts[pair] : childCosts[pair];
+
+			// The warrior can't fight itself: keep it out of reach at the end of the remaining children
+			int opponentCount = remainingChildCount;
+			if(!warriorIsParent)
+			{
+				swapChildren(childPositions[pair], remainingChildCount-1);
+				opponentCount--;
+			}
+
+			// Fight Q random children, drawn to the front of the remaining children
+			int tournamentSize = Math.min(q, opponentCount);
+			int winner = -1; // Position of the winning child, -1 if the warrior wins
+			double winnerCost = warriorCost;
+			for(int ii = 0; ii < tournamentSize; ++ii)
+			{
+				swapChildren(ii, Utils.random(ii, opponentCount-1));
+				if(childCosts[remainingChildren[ii]] < winnerCost)
+				{
+					winner = ii;
+					winnerCost = childCosts[remainingChildren[ii]];
+				}
+			}
+
+			if(winner == -1 && warriorIsParent)
+			{
+				survivors[survivorCount++] = parents[pair];
+				breakPair(pair); // Its child remains on its own
+			}
+			else
+			{
+				int child = winner == -1 ? pair : remainingChildren[winner];
+				survivors[survivorCount++] = children[child];
+				removeChild(child);
+				if(pairPositions[child] != -1)
+					breakPair(child);
+			}
+		}
+		return survivorCount;
+	}
+
+	private void breakPair(int pair)
+	{
+		int position = pairPositions[pair];
+		int last = validPairs[--validPairCount];
+		validPairs[position] = last;
+		pairPositions[last] = position;
+		pairPositions[pair] = -1;
+	}
+
+	private void removeChild(int child)
+	{
+		swapChildren(childPositions[child], --remainingChildCount);
+	}
+
+	private void swapChildren(int i, int j)
+	{
+		int a = remainingChildren[i], b = remainingChildren[j];
+		remainingChildren[i] = b;
+		remainingChildren[j] = a;
+		childPositions[b] = i;
+		childPositions[a] = j;
+	}
+}
@@ -1,5 +1,24 @@
 
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -89,9 +108,7 @@ public class TestModule {
 	public void testCityDistanceCalculator() {
 		int cityCount = 20;
 		City[] cities = Utils.generateCityList(cityCount, 100, 100);
-		Integer[] visitedCitiesTracker = new Integer[cities.length];
-		for(int i = 0 ; i < cities.length; ++i)
-			visitedCitiesTracker[i] = 1;
+		long[] visitedCitiesTracker = new long[(cities.length + 63) / 64];
 		
 		for(City city : cities)
 		{
@@ -123,4 +140,1199 @@ public class TestModule {
 			Assert.assertTrue(cost2 <= chromosomes[i].getCost());
 		}
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void testDistanceMatrixLayouts()
+	{
+		City[] cities = Utils.generateCityList(40,100,100);
+		for(DistanceMatrix.Layout layout : DistanceMatrix.Layout.values())
+		{
+			DistanceMatrix matrix = DistanceMatrix.build(cities, layout);
+			for(int from = 0; from < cities.length; ++from)
+			{
+				for(int to = 0; to < cities.length; ++to)
+				{
+					int expected = cities[from].proximity(cities[to].getx(), cities[to].gety());
+					Assert.assertEquals(expected, matrix.getDistance(from, to), 0d);
+					Assert.assertEquals(matrix.getDistance(to, from), matrix.getDistance(from, to), 0d);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCandidateLists()
+	{
+		// Small area so that many cities are at the same distance
+		City[] cities = Utils.generateCityList(300,30,30);
+		DistanceMatrix distances = cities[0].getDistanceMatrix();
+		CandidateLists withTree = CandidateLists.build(cities, distances, 12);
+		CandidateLists withoutTree = CandidateLists.build(distances, null, null, 12);
+		
+		for(int city = 0; city < cities.length; ++city)
+		{
+			char[] ranking = withTree.getCompactRanking(city);
+			for(int rank = 0; rank < ranking.length; ++rank)
+			{
+				Assert.assertEquals(ranking[rank], withTree.getNeighbour(city, rank));
+				Assert.assertEquals(ranking[rank], withoutTree.getNeighbour(city, rank));
+				if(rank > 0)
+					Assert.assertTrue(distances.getDistance(city, ranking[rank-1]) <= distances.getDistance(city, ranking[rank]));
+			}
+		}
+	}
+	
+	@Test
+	public void testEPDecoding()
+	{
+		// Several blocks of 64 ranks past the candidates, read from both ends
+		for(int cityCount : new int[] {200, 1000})
+		{
+			City[] cities = Utils.generateCityList(cityCount,100,100);
+			EPChromosome chromosome = new EPChromosome(cities);
+			StateTable stateTable = chromosome.getStateTable();
+			
+			// Decode by scanning the rankings
+			long[] visited = new long[(cities.length + 63) / 64];
+			int currentCity = stateTable.getStartState();
+			Assert.assertEquals(currentCity, chromosome.getCity(0));
+			visited[currentCity / 64] |= 1L << currentCity;
+			for(int i = 1; i < cities.length; ++i)
+			{
+				currentCity = cities[currentCity].getNthClosestCity(stateTable.getOutput(currentCity, i), visited);
+				Assert.assertEquals(currentCity, chromosome.getCity(i));
+				visited[currentCity / 64] |= 1L << currentCity;
+			}
+		}
+	}
+	
+	@Test
+	public void testRanking()
+	{
+		City[] cities = Utils.generateCityList(30,100,100);
+		Chromosome[] chromosomes = new Chromosome[200];
+		for(int i = 0; i < chromosomes.length; ++i)
+		{
+			chromosomes[i] = new GAChromosome(cities);
+			chromosomes[i].calculateCost();
+		}
+		
+		// Partial selection
+		Chromosome[] selected = chromosomes.clone();
+		Ranking.selectBest(selected, 20);
+		Chromosome[] sorted = chromosomes.clone();
+		Chromosome.sortChromosomes(sorted);
+		for(int i = 0; i < 20; ++i)
+			Assert.assertSame(sorted[i], selected[i]);
+		for(int i = 1; i < sorted.length; ++i)
+			Assert.assertTrue(sorted[i-1].getCost() <= sorted[i].getCost());
+		
+		// Merging of sorted runs
+		Chromosome[] first = Arrays.copyOfRange(chromosomes, 0, 120);
+		Chromosome[] second = Arrays.copyOfRange(chromosomes, 120, 200);
+		Chromosome.sortChromosomes(first);
+		Chromosome.sortChromosomes(second);
+		Chromosome[] merged = new Chromosome[150];
+		Ranking.merge(first, second, merged);
+		for(int i = 0; i < merged.length; ++i)
+			Assert.assertEquals(sorted[i].getCost(), merged[i].getCost(), 0d);
+	}
+	
+	@Test
+	public void testDeltaEvaluation()
+	{
+		City[] cities = Utils.generateCityList(50,100,100);
+		GAChromosome chromosome = new GAChromosome(cities);
+		chromosome.calculateCost();
+		
+		for(int i = 0; i < 1000; ++i)
+		{
+			int from = Utils.random(0, cities.length-1);
+			int to = Utils.random(0, cities.length-1);
+			switch(i % 3){
+			case 0:
+				chromosome.swapCities(from, to);
+				break;
+			case 1:
+				chromosome.reverseCities(from, to);
+				break;
+			default:
+				chromosome.moveCity(from, to);
+				break;
+			}
+			Assert.assertTrue(chromosome.isCostUpToDate());
+			double updatedCost = chromosome.getCost();
+			chromosome.calculateCost();
+			Assert.assertEquals(chromosome.getCost(), updatedCost, 1e-9);
+		}
+		
+		// Still a permutation
+		boolean[] visited = new boolean[cities.length];
+		for(int i = 0; i < cities.length; ++i)
+		{
+			Assert.assertFalse(visited[chromosome.getCity(i)]);
+			visited[chromosome.getCity(i)] = true;
+		}
+	}
+	
+	@Test
+	public void testParallelEvaluation()
+	{
+		ConfigurationManager.instance().setProbabilityOfMutation(0.05d);
+		City[] cities = Utils.generateCityList(60,100,100);
+		Chromosome[] sequential = new Chromosome[40];
+		Chromosome[] parallel = new Chromosome[sequential.length];
+		for(int i = 0; i < sequential.length; ++i)
+		{
+			sequential[i] = new EPChromosome(cities);
+			parallel[i] = new EPChromosome(sequential[i]);
+		}
+		
+		ParallelEvaluator sequentialEvaluator = new ParallelEvaluator(1);
+		ParallelEvaluator parallelEvaluator = new ParallelEvaluator(4);
+		Rng previous = Utils.setThreadRandom(new Rng(42));
+		try
+		{
+			sequentialEvaluator.mutateAndEvaluate(sequential);
+			Utils.setThreadRandom(new Rng(42));
+			parallelEvaluator.mutateAndEvaluate(parallel);
+		}
+		finally
+		{
+			Utils.setThreadRandom(previous);
+			parallelEvaluator.shutdown();
+		}
+		
+		for(int i = 0; i < sequential.length; ++i)
+		{
+			Assert.assertEquals(sequential[i].getCost(), parallel[i].getCost(), 0d);
+			Assert.assertEquals(sequential[i].toString(), parallel[i].toString());
+		}
+	}
+	
+	@Test
+	public void testIslandMigration()
+	{
+		City[] cities = Utils.generateCityList(30,100,100);
+		ParallelEvaluator evaluator = new ParallelEvaluator(1);
+		Island source = new Island(cities, 10, 4, evaluator, new Rng(1));
+		Island destination = new Island(cities, 10, 4, evaluator, new Rng(2));
+		evaluator.evaluate(source.getChromosomes());
+		evaluator.evaluate(destination.getChromosomes());
+		
+		Chromosome[] elites = source.getElites(3);
+		Assert.assertEquals(3, elites.length);
+		Assert.assertEquals(source.getChromosomes()[0].getCost(), elites[0].getCost(), 0d);
+		Assert.assertNotSame(source.getChromosomes()[0], elites[0]); // Copies
+		
+		Chromosome[] before = destination.getChromosomes().clone();
+		Chromosome.sortChromosomes(before);
+		destination.immigrate(elites);
+		Chromosome[] after = destination.getChromosomes();
+		Assert.assertEquals(before.length, after.length);
+		for(int i = 0; i < before.length - elites.length; ++i) // The fittest are kept
+			Assert.assertSame(before[i], after[i]);
+		for(int i = 0; i < elites.length; ++i) // The least fit are overwritten
+		{
+			Assert.assertEquals(elites[i].toString(), after[after.length - elites.length + i].toString());
+			Assert.assertEquals(elites[i].getCost(), after[after.length - elites.length + i].getCost(), 0d);
+		}
+	}
+	
+	@Test
+	public void testPopulationArena()
+	{
+		City[] cities = Utils.generateCityList(20,100,100);
+		Chromosome[] population = new Chromosome[6];
+		for(int i = 0; i < population.length; ++i)
+			population[i] = new GAChromosome(cities);
+		PopulationArena arena = new PopulationArena(population);
+		
+		for(int generation = 0; generation < 5; ++generation)
+		{
+			Chromosome[] current = arena.getPopulation();
+			Chromosome[] children = arena.getChildren(2);
+			current[0].mateInto(current[1], children[0], children[1]);
+			for(Chromosome child : children)
+				for(Chromosome c : current)
+					Assert.assertNotSame(c, child); // Children never overwrite the population
+			
+			// Children replace the last two
+			Chromosome[] next = arena.getNextPopulation();
+			Assert.assertNotSame(current, next);
+			System.arraycopy(current, 0, next, 0, 4);
+			next[4] = children[0];
+			next[5] = children[1];
+			arena.commit(6);
+			Assert.assertSame(next, arena.getPopulation());
+			Assert.assertEquals(8, arena.getSlotCount()); // No more chromosomes than population + children
+		}
+	}
+	
+	@Test
+	public void testPackedStateTable()
+	{
+		int n = 70;
+		Rng random = new Rng(3);
+		StateTable[] tables = new StateTable[4];
+		for(int t = 0; t < tables.length; ++t)
+			tables[t] = new StateTable(n, n, t % 2 == 0 ? StateTable.Layout.CHAR : StateTable.Layout.PACKED);
+		for(int t = 0; t < tables.length; t += 2)
+			for(int state = 0; state < n; ++state)
+				for(int input = 1; input < n; ++input)
+				{
+					int output = 1 + random.nextInt(n - input);
+					tables[t].setOutput(state, input, output);
+					tables[t+1].setOutput(state, input, output);
+				}
+		Assert.assertTrue(tables[1].getFootprint() < tables[0].getFootprint());
+		
+		// Crossover on both layouts
+		tables[0].swapOutputs(tables[2], 1, 40);
+		tables[1].swapOutputs(tables[3], 1, 40);
+		StateTable copy = new StateTable(tables[3].getNumbeOfStates(), tables[3].getNumberOfInputs(), StateTable.Layout.PACKED);
+		copy.copyFrom(tables[3]);
+		for(int state = 0; state < n; ++state)
+			for(int input = 1; input < n; ++input)
+			{
+				Assert.assertEquals(tables[0].getOutput(state, input), tables[1].getOutput(state, input));
+				Assert.assertEquals(tables[2].getOutput(state, input), tables[3].getOutput(state, input));
+				Assert.assertEquals(tables[2].getOutput(state, input), copy.getOutput(state, input));
+			}
+	}
+
+	@Test
+	public void testTournamentSelection()
+	{
+		City[] cities = Utils.generateCityList(20,100,100);
+		Chromosome[] population = new Chromosome[300];
+		for(int i = 0; i < population.length; ++i)
+		{
+			population[i] = new GAChromosome(cities);
+			population[i].calculateCost();
+		}
+		
+		// Always choosing the fittest of tournaments including everyone ranks the population
+		Chromosome[] winners = new Chromosome[100];
+		Chromosome[] losers = new Chromosome[200];
+		new TournamentSelector(population.length, 1d).select(population, population.length, winners.length, winners, losers);
+		Chromosome[] sorted = population.clone();
+		Chromosome.sortChromosomes(sorted);
+		for(int i = 0; i < winners.length; ++i)
+			Assert.assertEquals(sorted[i].getCost(), winners[i].getCost(), 0d);
+		
+		// Losers keep their order
+		int next = 0;
+		for(Chromosome c : population)
+			if(next < losers.length && losers[next] == c)
+				++next;
+		Assert.assertEquals(losers.length, next);
+		
+		// In parallel, the winners don't depend on the number of threads
+		Chromosome[] sequentialWinners = new Chromosome[200];
+		Chromosome[] parallelWinners = new Chromosome[200];
+		ParallelEvaluator parallelEvaluator = new ParallelEvaluator(4);
+		Rng previous = Utils.setThreadRandom(new Rng(7));
+		try
+		{
+			new TournamentSelector(5, 0.6d, new ParallelEvaluator(1)).select(population, population.length, 200, sequentialWinners, null);
+			Utils.setThreadRandom(new Rng(7));
+			new TournamentSelector(5, 0.6d, parallelEvaluator).select(population, population.length, 200, parallelWinners, null);
+		}
+		finally
+		{
+			Utils.setThreadRandom(previous);
+			parallelEvaluator.shutdown();
+		}
+		Assert.assertArrayEquals(sequentialWinners, parallelWinners);
+		Assert.assertEquals(200, new java.util.HashSet<Chromosome>(Arrays.asList(parallelWinners)).size());
+	}
+
+	@Test
+	public void testSurvivorSelection()
+	{
+		City[] cities = Utils.generateCityList(20,100,100);
+		Chromosome[] parents = new Chromosome[50];
+		Chromosome[] children = new Chromosome[parents.length];
+		for(int i = 0; i < parents.length; ++i)
+		{
+			parents[i] = new GAChromosome(cities);
+			parents[i].calculateCost();
+			children[i] = new GAChromosome(cities);
+			children[i].calculateCost();
+		}
+		Chromosome.sortChromosomes(parents);
+		Chromosome.sortChromosomes(children);
+		SurvivorSelector selector = new SurvivorSelector();
+		Chromosome[] survivors = new Chromosome[parents.length * 2];
+		
+		// Without opponents, the fittest of each pair survives
+		Assert.assertEquals(parents.length, selector.select(parents, children, 0, survivors, survivors.length));
+		java.util.Set<Chromosome> selected = new java.util.HashSet<Chromosome>(Arrays.asList(survivors).subList(0, parents.length));
+		for(int i = 0; i < parents.length; ++i)
+		{
+			Chromosome fittest = parents[i].getCost() <= children[i].getCost() ? parents[i] : children[i];
+			Assert.assertTrue(selected.contains(fittest));
+		}
+		
+		// With opponents, survivors are distinct and limited to the number wanted
+		Assert.assertEquals(30, selector.select(parents, children, 3, survivors, 30));
+		Assert.assertEquals(30, new java.util.HashSet<Chromosome>(Arrays.asList(survivors).subList(0, 30)).size());
+		// Running out of pairs stops the selection
+		int count = selector.select(parents, children, 3, survivors, survivors.length);
+		Assert.assertTrue(count >= parents.length && count <= survivors.length);
+	}
+
+	@Test
+	public void testRouletteWheel()
+	{
+		double[] weights = {1, 0, 3, 6};
+		RouletteWheel wheel = new RouletteWheel();
+		int[] counts = new int[weights.length];
+		Rng previous = Utils.setThreadRandom(new Rng(11));
+		try
+		{
+			wheel.reset(weights, weights.length);
+			for(int i = 0; i < 10000; ++i)
+				counts[wheel.spin()]++;
+			Assert.assertEquals(0, counts[1]); // Never selects a null weight
+			Assert.assertEquals(0.6d, counts[3] / 10000d, 0.03d);
+			Assert.assertEquals(0.1d, counts[0] / 10000d, 0.03d);
+			
+			// Without replacement, every index with a weight comes out exactly once
+			wheel.reset(weights, weights.length);
+			boolean[] selected = new boolean[weights.length];
+			for(int i = 0; i < 3; ++i)
+			{
+				int index = wheel.spinWithoutReplacement();
+				Assert.assertFalse(selected[index]);
+				selected[index] = true;
+			}
+			Assert.assertFalse(selected[1]);
+			
+			// Stochastic universal sampling: 10 pointers over weights totalling 10
+			wheel.reset(weights, weights.length);
+			int[] universal = new int[10];
+			wheel.spinUniversal(universal.length, universal);
+			Arrays.fill(counts, 0);
+			for(int index : universal)
+				counts[index]++;
+			Assert.assertArrayEquals(new int[] {1, 0, 3, 6}, counts);
+		}
+		finally
+		{
+			Utils.setThreadRandom(previous);
+		}
+	}
+
+	@Test
+	public void testSeededRuns()
+	{
+		Rng first = Rng.stream(123, 4), second = Rng.stream(123, 4), other = Rng.stream(123, 5);
+		Assert.assertEquals(first.nextLong(), second.nextLong());
+		Assert.assertNotEquals(first.nextLong(), other.nextLong());
+		for(int i = 0; i < 1000; ++i)
+		{
+			int value = first.nextInt(7);
+			Assert.assertTrue(value >= 0 && value < 7);
+			double d = first.nextDouble();
+			Assert.assertTrue(d >= 0 && d < 1);
+		}
+		
+		// Replaying a seed replays the run, whatever the number of threads
+		ConfigurationManager config = ConfigurationManager.instance();
+		int islands = config.getIslands(), threads = config.getThreads();
+		long seed = config.getSeed();
+		String[] results = new String[2];
+		try
+		{
+			config.setSeed(42);
+			config.setIslands(1);
+			for(int run = 0; run < results.length; ++run)
+			{
+				config.setThreads(run * 3 + 1);
+				Rng previous = Utils.setThreadRandom(Rng.stream(config.getSeed(), Rng.MAIN_STREAM));
+				City[] cities = Utils.generateCityList(30,100,100);
+				IslandEngine engine = new IslandEngine(cities);
+				Utils.setThreadRandom(previous);
+				for(int generation = 0; generation < 5; ++generation)
+					engine.evolve();
+				engine.shutdown();
+				results[run] = Arrays.toString(engine.getChromosomes());
+			}
+		}
+		finally
+		{
+			config.setSeed(seed);
+			config.setIslands(islands);
+			config.setThreads(threads);
+		}
+		Assert.assertEquals(results[0], results[1]);
+	}
+	
+	@Test
+	public void testTsplibInstance() throws IOException
+	{
+		// Coordinates in the various number formats of TSPLIB files
+		String coordinates = "DIMENSION: 3\nNODE_COORD_SECTION\n1 0 0\n2 3.0e0 4\n3 1.5 2.5\nEOF\n";
+		TsplibInstance euclidean = TsplibInstance.load(writeTempFile("NAME : test\nTYPE : TSP\nEDGE_WEIGHT_TYPE : EUC_2D\n" + coordinates));
+		Assert.assertEquals("test", euclidean.getName());
+		Assert.assertEquals(3, euclidean.getDimension());
+		Assert.assertEquals(5, euclidean.distance(0, 1), 0);
+		Assert.assertEquals(3, euclidean.distance(0, 2), 0); // 2.92 rounded to the nearest
+		Assert.assertEquals(2, euclidean.distance(1, 2), 0);
+		TsplibInstance ceiling = TsplibInstance.load(writeTempFile("EDGE_WEIGHT_TYPE: CEIL_2D\n" + coordinates));
+		Assert.assertEquals(3, ceiling.distance(1, 2), 0);
+		TsplibInstance att = TsplibInstance.load(writeTempFile("EDGE_WEIGHT_TYPE: ATT\nDIMENSION: 2\nNODE_COORD_SECTION\n1 0 0\n2 10 0\n"));
+		Assert.assertEquals(4, att.distance(0, 1), 0);
+		
+		// The first nodes of burma14
+		TsplibInstance geo = TsplibInstance.load(writeTempFile("EDGE_WEIGHT_TYPE: GEO\nDIMENSION: 3\nNODE_COORD_SECTION\n1 16.47 96.10\n2 16.47 94.44\n3 20.09 92.54\n"));
+		Assert.assertEquals(153, geo.distance(0, 1), 0);
+		Assert.assertEquals(510, geo.distance(0, 2), 0);
+		Assert.assertEquals(422, geo.distance(1, 2), 0);
+		
+		// The same weights in different formats
+		String[] formats = {
+			"FULL_MATRIX\nEDGE_WEIGHT_SECTION\n0 1 2 3\n1 0 4 5\n2 4 0 6\n3 5 6 0\n",
+			"UPPER_ROW\nEDGE_WEIGHT_SECTION\n1 2 3\n4 5\n6\n",
+			"LOWER_ROW\nEDGE_WEIGHT_SECTION\n1\n2 4\n3 5 6\n",
+			"UPPER_DIAG_ROW\nEDGE_WEIGHT_SECTION\n0 1 2 3 0 4 5 0 6 0\n",
+			"LOWER_DIAG_ROW\nEDGE_WEIGHT_SECTION\n0 1 0 2 4 0 3 5 6 0\n"
+		};
+		for(String format : formats)
+		{
+			TsplibInstance explicit = TsplibInstance.load(writeTempFile("TYPE: TSP\nDIMENSION: 4\nEDGE_WEIGHT_TYPE: EXPLICIT\nEDGE_WEIGHT_FORMAT: " + format + "EOF\n"));
+			Assert.assertEquals(format, 1, explicit.distance(0, 1), 0);
+			Assert.assertEquals(format, 3, explicit.distance(3, 0), 0);
+			Assert.assertEquals(format, 5, explicit.distance(1, 3), 0);
+			Assert.assertEquals(format, 6, explicit.distance(2, 3), 0);
+			City[] cities = explicit.toCities(DistanceMatrix.Layout.INT, 2, 100, 100);
+			Assert.assertEquals(format, 4, cities[2].proximity(cities[1]));
+			Assert.assertEquals(format, 0, cities[0].getCandidateLists().getNeighbour(3, 0));
+		}
+		
+		// Cities of an instance get its distances, and are ranked by them
+		City[] cities = euclidean.toCities(DistanceMatrix.Layout.INT, 2, 100, 100);
+		Assert.assertEquals(5, cities[0].proximity(cities[1]));
+		Assert.assertEquals(2, cities[1].getCandidateLists().getNeighbour(1, 0));
+		
+		int[] tour = TsplibInstance.loadTour(writeTempFile("NAME : test.opt.tour\nTYPE : TOUR\nDIMENSION : 3\nTOUR_SECTION\n1\n3\n2\n-1\nEOF\n"));
+		Assert.assertArrayEquals(new int[] {0, 2, 1}, tour);
+	}
+	
+	@Test
+	public void testLocalSearch()
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		boolean debugMode = config.isDebugMode();
+		config.setDebugMode(true); // Checks the gains of the moves against full calculations
+		Rng previous = Utils.setThreadRandom(new Rng(16));
+		try
+		{
+			City[] cities = Utils.generateCityList(200,1000,1000);
+			GAChromosome chromosome = new GAChromosome(cities);
+			chromosome.calculateCost();
+			double initialCost = chromosome.getCost();
+			Assert.assertTrue(chromosome.improve());
+			Assert.assertTrue(chromosome.getCost() < initialCost / 2); // A random tour is several times the length of a 2-opt tour
+			// Don't-look bits only look again around changed edges, so a second search finds little left to improve
+			double improvedCost = chromosome.getCost();
+			chromosome.improve();
+			Assert.assertTrue(chromosome.getCost() <= improvedCost && chromosome.getCost() > improvedCost * 0.95);
+			boolean[] visited = new boolean[cities.length];
+			for(int i = 0; i < cities.length; ++i)
+			{
+				Assert.assertFalse(visited[chromosome.getCity(i)]);
+				visited[chromosome.getCity(i)] = true;
+			}
+			
+			// Improvements of EP tours are written back into their state table
+			EPChromosome epChromosome = new EPChromosome(cities);
+			Assert.assertTrue(epChromosome.improve());
+			String improved = epChromosome.toString();
+			improvedCost = epChromosome.getCost();
+			epChromosome.calculateCost(); // Decodes the state table
+			Assert.assertEquals(improved, epChromosome.toString());
+			Assert.assertEquals(improvedCost, epChromosome.getCost(), 1e-9);
+			
+			// Any tour can be encoded, including jumps beyond the candidates
+			int[] tour = new int[cities.length];
+			for(int i = 0; i < tour.length; ++i)
+				tour[i] = i;
+			for(int i = tour.length - 1; i > 0; --i)
+			{
+				int j = Utils.random(0, i), tmp = tour[i];
+				tour[i] = tour[j];
+				tour[j] = tmp;
+			}
+			int[] decoded = new int[tour.length];
+			EPDecoder decoder = EPDecoder.get(cities[0].getCandidateLists());
+			decoder.encode(tour, epChromosome.getStateTable());
+			decoder.decode(epChromosome.getStateTable(), decoded);
+			Assert.assertArrayEquals(tour, decoded);
+		}
+		finally
+		{
+			config.setDebugMode(debugMode);
+			Utils.setThreadRandom(previous);
+		}
+	}
+	
+	@Test
+	public void testLinKernighan()
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		boolean debugMode = config.isDebugMode();
+		int lkTrials = config.getLkTrials();
+		config.setDebugMode(true); // Checks the gains of the moves against full calculations
+		config.setLkTrials(50);
+		Rng previous = Utils.setThreadRandom(new Rng(17));
+		try
+		{
+			// The closest city is always a tree neighbour, so it has an alpha of 0 and comes first
+			City[] cities = Utils.generateCityList(200,1000,1000);
+			DistanceMatrix distances = cities[0].getDistanceMatrix();
+			CandidateLists candidateLists = cities[0].getCandidateLists();
+			AlphaNearness alphaNearness = candidateLists.getAlphaNearness(5);
+			for(int city = 0; city < cities.length; ++city)
+			{
+				int closest = candidateLists.getNeighbour(city, 0);
+				Assert.assertEquals(distances.getDistance(city, closest), alphaNearness.longestEdgeOnPath(city, closest), 1e-9);
+				Assert.assertEquals(0, distances.getDistance(city, alphaNearness.getCandidate(city, 0)) - alphaNearness.longestEdgeOnPath(city, alphaNearness.getCandidate(city, 0)), 1e-9);
+			}
+
+			// At least as good as 2-opt and Or-opt, and still a tour
+			LKChromosome chromosome = new LKChromosome(cities);
+			GAChromosome localOptimum = new GAChromosome(chromosome);
+			localOptimum.improve();
+			chromosome.mutate();
+			Assert.assertTrue(chromosome.getCost() <= localOptimum.getCost());
+			boolean[] visited = new boolean[cities.length];
+			for(int i = 0; i < cities.length; ++i)
+			{
+				Assert.assertFalse(visited[chromosome.getCity(i)]);
+				visited[chromosome.getCity(i)] = true;
+			}
+
+			// Small maps are solved to optimality
+			for(int map = 0; map < 3; ++map)
+			{
+				City[] smallMap = Utils.generateCityList(8,1000,1000);
+				LKChromosome small = new LKChromosome(smallMap);
+				small.mutate();
+				int[] tour = new int[smallMap.length];
+				boolean[] used = new boolean[smallMap.length];
+				Assert.assertEquals(shortestPath(smallMap[0].getDistanceMatrix(), tour, used, 0), small.getCost(), 1e-6);
+			}
+		}
+		finally
+		{
+			config.setDebugMode(debugMode);
+			config.setLkTrials(lkTrials);
+			Utils.setThreadRandom(previous);
+		}
+	}
+	
+	/**
+	 * Exhaustive search of the shortest open path, from the given number of cities already placed
+	 */
+	private static double shortestPath(DistanceMatrix distances, int[] tour, boolean[] used, int placed)
+	{
+		if(placed == tour.length)
+			return distances.getTourCost(tour);
+		double shortest = Double.MAX_VALUE;
+		for(int city = 0; city < tour.length; ++city)
+		{
+			if(used[city])
+				continue;
+			used[city] = true;
+			tour[placed] = city;
+			shortest = Math.min(shortest, shortestPath(distances, tour, used, placed + 1));
+			used[city] = false;
+		}
+		return shortest;
+	}
+	
+	@Test
+	public void testSeeding()
+	{
+		Rng previous = Utils.setThreadRandom(new Rng(18));
+		try
+		{
+			City[] cities = Utils.generateCityList(500,1000,1000);
+			GAChromosome random = new GAChromosome(cities);
+			random.calculateCost();
+			Seeding.Heuristic[] heuristics = { Seeding.Heuristic.NEAREST_NEIGHBOUR, Seeding.Heuristic.GREEDY_EDGE,
+					Seeding.Heuristic.SPACE_FILLING_CURVE, Seeding.Heuristic.RANDOM_INSERTION };
+			for(Seeding.Heuristic heuristic : heuristics)
+			{
+				// Every heuristic builds a tour several times shorter than a random one
+				GAChromosome chromosome = new GAChromosome(cities);
+				Seeding.seed(chromosome, heuristic, 0);
+				Assert.assertFalse(chromosome.isCostUpToDate());
+				chromosome.calculateCost();
+				Assert.assertTrue(heuristic + ": " + chromosome.getCost(), chromosome.getCost() < random.getCost() / 4);
+				boolean[] visited = new boolean[cities.length];
+				for(int i = 0; i < cities.length; ++i)
+				{
+					Assert.assertFalse(visited[chromosome.getCity(i)]);
+					visited[chromosome.getCity(i)] = true;
+				}
+				
+				// EP state tables encode the seeded tour
+				EPChromosome epChromosome = new EPChromosome(cities);
+				Seeding.seed(epChromosome, heuristic, 0);
+				epChromosome.calculateCost();
+				Assert.assertTrue(epChromosome.getCost() < random.getCost() / 4);
+			}
+			
+			// The curve starts by filling the corner of the plane, one step to a neighbouring point at a time
+			int[] xs = new int[64], ys = new int[64];
+			for(int x = 0; x < 8; ++x)
+			{
+				for(int y = 0; y < 8; ++y)
+				{
+					int index = (int) Seeding.hilbertIndex(x, y);
+					xs[index] = x;
+					ys[index] = y;
+				}
+			}
+			for(int i = 1; i < 64; ++i)
+				Assert.assertEquals(1, Math.abs(xs[i] - xs[i-1]) + Math.abs(ys[i] - ys[i-1]));
+			
+			// Fisher-Yates shuffles give permutations
+			int[] tour = new int[1000];
+			Seeding.shuffle(tour);
+			int[] sorted = tour.clone();
+			Arrays.sort(sorted);
+			for(int i = 0; i < sorted.length; ++i)
+				Assert.assertEquals(i, sorted[i]);
+		}
+		finally
+		{
+			Utils.setThreadRandom(previous);
+		}
+	}
+	
+	@Test
+	public void testFitnessCache()
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		boolean debugMode = config.isDebugMode();
+		FitnessCache.Eviction eviction = config.getFitnessCache();
+		double probabilityOfMutation = config.getProbabilityOfMutation();
+		config.setDebugMode(true); // Checks the hashes updated by the moves against full calculations
+		config.setFitnessCache(FitnessCache.Eviction.LRU);
+		Rng previous = Utils.setThreadRandom(new Rng(19));
+		try
+		{
+			// Tours have the hash of their reverse, not of their rotations
+			int[] tour = {3, 1, 4, 0, 2};
+			Assert.assertEquals(FitnessCache.hash(tour), FitnessCache.hash(new int[] {2, 0, 4, 1, 3}));
+			Assert.assertNotEquals(FitnessCache.hash(tour), FitnessCache.hash(new int[] {1, 4, 0, 2, 3}));
+			
+			// Moves update the hash
+			City[] cities = Utils.generateCityList(50,1000,1000);
+			GAChromosome chromosome = new GAChromosome(cities);
+			chromosome.calculateCost();
+			chromosome.getTourHash();
+			for(int i = 0; i < 100; ++i)
+			{
+				chromosome.swapCities(Utils.random(0, 49), Utils.random(0, 49));
+				chromosome.reverseCities(Utils.random(0, 49), Utils.random(0, 49));
+				chromosome.moveCity(Utils.random(0, 49), Utils.random(0, 49));
+			}
+			Assert.assertEquals(FitnessCache.hash(chromosome.cityList), chromosome.getTourHash());
+			
+			// Children identical to their parents are found in the cache
+			FitnessCache cache = FitnessCache.get(cities[0].getDistanceMatrix());
+			Chromosome[] children = chromosome.mate(chromosome.copy());
+			children[0].evaluate();
+			Assert.assertEquals(chromosome.getCost(), children[0].getCost(), 1e-9);
+			children[1].evaluate();
+			Assert.assertEquals(2, cache.getLookups());
+			Assert.assertEquals(1, cache.getHits());
+			GAChromosome other = new GAChromosome(cities);
+			children = chromosome.mate(other);
+			for(Chromosome child : children)
+			{
+				child.evaluate();
+				Assert.assertEquals(FitnessCache.hash(child.cityList), child.getTourHash());
+			}
+			
+			// A single set of 8 slots: the least recently used is evicted (LRU), or the first not used since the hand passed (CLOCK)
+			for(FitnessCache.Eviction policy : new FitnessCache.Eviction[] { FitnessCache.Eviction.LRU, FitnessCache.Eviction.CLOCK })
+			{
+				FitnessCache small = new FitnessCache(cities[0].getDistanceMatrix(), policy, 8);
+				Assert.assertEquals(8, small.getCapacity());
+				for(int i = 1; i <= 8; ++i)
+					small.store(i, i);
+				Assert.assertEquals(1, small.lookup(1), 0);
+				small.store(9, 9);
+				Assert.assertEquals(1, small.getEvictions());
+				Assert.assertEquals(9, small.lookup(9), 0);
+				if(policy == FitnessCache.Eviction.LRU)
+				{
+					Assert.assertEquals(1, small.lookup(1), 0);
+					Assert.assertTrue(Double.isNaN(small.lookup(2)));
+				}
+				else
+				{
+					// All bits were set, the hand cleared them all and evicted the first slot
+					Assert.assertTrue(Double.isNaN(small.lookup(1)));
+					Assert.assertEquals(2, small.lookup(2), 0);
+				}
+			}
+			
+			// EP chromosomes whose genes don't change keep their cost and tour
+			config.setProbabilityOfMutation(0);
+			EPChromosome epChromosome = new EPChromosome(cities);
+			Chromosome[] epChildren = epChromosome.mate(epChromosome, 10);
+			epChildren[0].mutate();
+			Assert.assertTrue(epChildren[0].isCostUpToDate());
+			Assert.assertEquals(epChromosome.toString(), epChildren[0].toString());
+		}
+		finally
+		{
+			config.setDebugMode(debugMode);
+			config.setFitnessCache(eviction);
+			config.setProbabilityOfMutation(probabilityOfMutation);
+			Utils.setThreadRandom(previous);
+		}
+	}
+	
+	@Test
+	public void testIncrementalDecoding()
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		boolean debugMode = config.isDebugMode();
+		double probabilityOfMutation = config.getProbabilityOfMutation();
+		Rng previous = Utils.setThreadRandom(new Rng(20));
+		config.setDebugMode(true); // Checks the updated costs against full decodings
+		config.setProbabilityOfMutation(0.002);
+		try
+		{
+			City[] cities = Utils.generateCityList(100,100,100);
+			EPChromosome[] population = new EPChromosome[6];
+			for(int i = 0; i < population.length; ++i)
+				population[i] = new EPChromosome(cities);
+			
+			// Children decoded from a step on visit the cities of a full decoding
+			int unchanged = 0;
+			for(int generation = 0; generation < 100; ++generation)
+			{
+				int dad = Utils.random(0, population.length-1), mum = Utils.random(0, population.length-1);
+				Chromosome[] children = population[dad].mate(population[mum], generation % 2 == 0 ? 1 : Utils.random(2, 99));
+				for(Chromosome child : children)
+				{
+					child.mutate();
+					if(child.isCostUpToDate())
+						++unchanged;
+					child.evaluate();
+					EPChromosome decoded = new EPChromosome(child);
+					decoded.calculateCost();
+					Assert.assertEquals(decoded.toString(), child.toString());
+					Assert.assertEquals(decoded.getCost(), child.getCost(), 1e-6);
+				}
+				population[dad] = (EPChromosome) children[0];
+				population[mum] = (EPChromosome) children[1];
+			}
+			Assert.assertTrue(unchanged > 0); // Most mutated cells aren't read by the tour
+			
+			// Swapping cells which the tour doesn't read keeps the tour and its cost
+			EPChromosome chromosome = population[0];
+			EPChromosome other = new EPChromosome(chromosome);
+			StateTable stateTable = other.getStateTable();
+			stateTable.setOutput(chromosome.getCity(5), 3, stateTable.getOutput(chromosome.getCity(5), 3) % 90 + 1);
+			Chromosome[] children = chromosome.mate(other, 10);
+			Assert.assertTrue(children[0].isCostUpToDate());
+			Assert.assertTrue(children[1].isCostUpToDate());
+			Assert.assertEquals(chromosome.toString(), children[0].toString());
+		}
+		finally
+		{
+			config.setDebugMode(debugMode);
+			config.setProbabilityOfMutation(probabilityOfMutation);
+			Utils.setThreadRandom(previous);
+		}
+	}
+	
+	@Test
+	public void testCheckpoint() throws IOException
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		ConfigurationManager.EvolutionaryAlgorithm algorithm = config.getAlgorithm();
+		int islands = config.getIslands(), populationSize = config.getPopulationSize(), children = config.getChildrenPerGeneration();
+		int migrationInterval = config.getMigrationInterval();
+		long seed = config.getSeed();
+		File file = File.createTempFile("checkpoint", ".bin");
+		file.deleteOnExit();
+		try
+		{
+			config.setSeed(43);
+			config.setPopulationSize(12);
+			config.setChildrenPerGeneration(6);
+			config.setMigrationInterval(1); // Migrants are in transit at every checkpoint
+			ConfigurationManager.EvolutionaryAlgorithm[] algorithms = ConfigurationManager.EvolutionaryAlgorithm.values();
+			for(int i = 0; i < algorithms.length; ++i)
+			{
+				config.setAlgorithm(algorithms[i]);
+				config.setIslands(i + 1);
+				Rng previous = Utils.setThreadRandom(Rng.stream(config.getSeed(), Rng.MAIN_STREAM));
+				City[] cities = Utils.generateCityList(40,100,100);
+				Utils.setThreadRandom(previous);
+				IslandEngine engine = new IslandEngine(cities);
+				for(int generation = 0; generation < 3; ++generation)
+					engine.evolve();
+				Chromosome best = engine.getChromosomes()[0].copy();
+				double[] means = { 3, 2, 1 };
+				Checkpoint.Writer writer = new Checkpoint.Writer(file.getPath());
+				Assert.assertTrue(writer.write(3, means, 2, best, engine));
+				writer.close();
+				
+				// A resumed run carries on as if it had never stopped
+				Checkpoint checkpoint = Checkpoint.load(file.getPath());
+				IslandEngine resumed = checkpoint.restore(cities);
+				Assert.assertEquals(3, checkpoint.getGeneration());
+				Assert.assertEquals(2, checkpoint.getBestRunNumber());
+				Assert.assertArrayEquals(new double[] { 3, 2, 1 }, checkpoint.getMeanPerGeneration(), 0);
+				Assert.assertEquals(best.toString(), checkpoint.getBest().toString());
+				Assert.assertEquals(Arrays.toString(engine.getChromosomes()), Arrays.toString(resumed.getChromosomes()));
+				for(int generation = 0; generation < 3; ++generation)
+				{
+					engine.evolve();
+					resumed.evolve();
+				}
+				engine.shutdown();
+				resumed.shutdown();
+				Assert.assertEquals(config.getAlgorithm(), algorithms[i]);
+				Assert.assertEquals(Arrays.toString(engine.getChromosomes()), Arrays.toString(resumed.getChromosomes()));
+				for(int j = 0; j < engine.getChromosomes().length; ++j)
+					Assert.assertEquals(engine.getChromosomes()[j].getCost(), resumed.getChromosomes()[j].getCost(), 0);
+			}
+		}
+		finally
+		{
+			config.setAlgorithm(algorithm);
+			config.setIslands(islands);
+			config.setPopulationSize(populationSize);
+			config.setChildrenPerGeneration(children);
+			config.setMigrationInterval(migrationInterval);
+			config.setSeed(seed);
+		}
+	}
+	
+	@Test
+	public void testStatisticsPipeline() throws IOException
+	{
+		// Sinks which may drop records let the solver carry on: records beyond the capacity of the ring are dropped
+		List<Integer> written = new ArrayList<Integer>();
+		CountDownLatch release = new CountDownLatch(1);
+		StatisticsPipeline pipeline = new StatisticsPipeline(Arrays.asList(blockedSink(written, release, StatisticsPipeline.Overflow.DROP)));
+		int published = 0;
+		for(int generation = 0; generation < 3000; ++generation)
+		{
+			if(pipeline.publish(generation, 1, 2, 3, 0.5, 0xabcL, 10))
+				++published;
+		}
+		release.countDown();
+		pipeline.close();
+		Assert.assertEquals(3000, published + pipeline.getDropped());
+		Assert.assertTrue(pipeline.getDropped() > 0);
+		Assert.assertEquals(published, written.size());
+		for(int i = 1; i < written.size(); ++i)
+			Assert.assertTrue(written.get(i-1) < written.get(i));
+		
+		// Files get every record: the solver waits for them
+		File file = File.createTempFile("statistics", ".csv");
+		file.deleteOnExit();
+		written.clear();
+		final CountDownLatch fileRelease = new CountDownLatch(1);
+		pipeline = new StatisticsPipeline(Arrays.asList(blockedSink(written, fileRelease, StatisticsPipeline.Overflow.DROP),
+				new StatisticsPipeline.CsvSink(file.getPath(), false, StatisticsPipeline.Overflow.WAIT)));
+		new Thread() {
+			@Override
+			public void run() {
+				try
+				{
+					Thread.sleep(200); // The ring fills up meanwhile
+				}
+				catch(InterruptedException e)
+				{
+				}
+				fileRelease.countDown();
+			}
+		}.start();
+		for(int generation = 0; generation < 3000; ++generation)
+			Assert.assertTrue(pipeline.publish(generation, 1, 2, 3, 0.5, 0xabcL, 10));
+		pipeline.close();
+		Assert.assertEquals(0, pipeline.getDropped());
+		Assert.assertEquals(3000, written.size());
+		
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			Assert.assertEquals("generation,min,mean,max,standard_deviation,best_tour_id,evaluations_per_second", reader.readLine());
+			Assert.assertEquals("0,1.0,2.0,3.0,0.5,abc,10.0", reader.readLine());
+			int lines = 1;
+			while(reader.readLine() != null)
+				++lines;
+			Assert.assertEquals(3000, lines);
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		// Statistics of a population
+		City[] cities = Utils.generateCityList(20,100,100);
+		Chromosome[] chromosomes = new Chromosome[2];
+		for(int i = 0; i < chromosomes.length; ++i)
+		{
+			chromosomes[i] = new GAChromosome(cities);
+			chromosomes[i].calculateCost();
+		}
+		final double[] record = new double[4];
+		StatisticsPipeline.Sink collector = new StatisticsPipeline.Sink() {
+			@Override
+			public void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+					double evaluationsPerSecond) {
+				record[0] = min;
+				record[1] = mean;
+				record[2] = max;
+				record[3] = standardDeviation;
+			}
+			
+			@Override
+			public void close() {
+			}
+			
+			@Override
+			public StatisticsPipeline.Overflow getOverflow() {
+				return StatisticsPipeline.Overflow.DROP;
+			}
+		};
+		pipeline = new StatisticsPipeline(Arrays.asList(collector));
+		Assert.assertTrue(pipeline.publish(0, chromosomes, 0));
+		pipeline.close();
+		double low = Math.min(chromosomes[0].getCost(), chromosomes[1].getCost()), high = Math.max(chromosomes[0].getCost(), chromosomes[1].getCost());
+		Assert.assertArrayEquals(new double[] { low, (low + high) / 2, high, (high - low) / 2 }, record, 1e-9);
+	}
+	
+	/**
+	 * A sink adding the generation of the records to a list, once released
+	 */
+	private static StatisticsPipeline.Sink blockedSink(final List<Integer> written, final CountDownLatch release, final StatisticsPipeline.Overflow overflow)
+	{
+		return new StatisticsPipeline.Sink() {
+			@Override
+			public void write(int generation, double min, double mean, double max, double standardDeviation, long bestTourId,
+					double evaluationsPerSecond) {
+				try
+				{
+					release.await();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				written.add(generation);
+			}
+			
+			@Override
+			public void close() {
+			}
+			
+			@Override
+			public StatisticsPipeline.Overflow getOverflow() {
+				return overflow;
+			}
+		};
+	}
+	
+	@Test
+	public void testInstrumentation() throws Exception
+	{
+		// Percentiles are read within the precision of the buckets
+		Histogram histogram = new Histogram();
+		for(long value = 1; value <= 100000; ++value)
+			histogram.record(value);
+		Assert.assertEquals(100000, histogram.getCount());
+		Assert.assertEquals(50000.5, histogram.getMean(), 1e-9);
+		Assert.assertEquals(100000, histogram.getMax());
+		Assert.assertEquals(50000, histogram.getValueAtPercentile(50), 50000 / 16);
+		Assert.assertEquals(99000, histogram.getValueAtPercentile(99), 99000 / 16);
+		Assert.assertEquals(100000, histogram.getValueAtPercentile(100));
+		for(long value : new long[] { 0, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE })
+		{
+			int bucket = Histogram.bucket(value);
+			Assert.assertTrue(Histogram.lowestValue(bucket) <= value && value <= Histogram.highestValue(bucket));
+		}
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+		
+		if(!Instrumentation.ENABLED)
+			return;
+		ConfigurationManager config = ConfigurationManager.instance();
+		ConfigurationManager.EvolutionaryAlgorithm algorithm = config.getAlgorithm();
+		int populationSize = config.getPopulationSize(), children = config.getChildrenPerGeneration();
+		try
+		{
+			config.setAlgorithm(ConfigurationManager.EvolutionaryAlgorithm.EVOLUTIONARY_PROGRAMMING);
+			config.setPopulationSize(12);
+			config.setChildrenPerGeneration(6);
+			IslandEngine engine = new IslandEngine(Utils.generateCityList(40,100,100));
+			Instrumentation instrumentation = Instrumentation.instance();
+			instrumentation.reset();
+			long evaluations = engine.getEvaluations();
+			for(int generation = 0; generation < 3; ++generation)
+				engine.evolve();
+			for(Instrumentation.Phase phase : new Instrumentation.Phase[] { Instrumentation.Phase.SELECTION, Instrumentation.Phase.MATING,
+					Instrumentation.Phase.MUTATION, Instrumentation.Phase.DECODE, Instrumentation.Phase.EVALUATION, Instrumentation.Phase.SURVIVOR_SELECTION })
+				Assert.assertTrue(phase.toString(), instrumentation.getHistogram(phase).getCount() > 0);
+			Assert.assertEquals(engine.getEvaluations() - evaluations, instrumentation.getEvaluations());
+			for(Instrumentation.Phase phase : Instrumentation.Phase.values())
+				Assert.assertEquals(instrumentation.getHistogram(phase).getMax() / 1e3, instrumentation.getMaxMicros()[phase.ordinal()], 0);
+			engine.shutdown();
+			
+			// Readable through JMX
+			Instrumentation.register();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(Instrumentation.NAME);
+			Assert.assertArrayEquals(instrumentation.getCounts(), (long[]) server.getAttribute(name, "Counts"));
+			Assert.assertEquals(Instrumentation.Phase.values().length, ((String[]) server.getAttribute(name, "Phases")).length);
+		}
+		finally
+		{
+			config.setAlgorithm(algorithm);
+			config.setPopulationSize(populationSize);
+			config.setChildrenPerGeneration(children);
+		}
+	}
+	
+	@Test
+	public void testFlightRecorderEvents() throws IOException
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		ConfigurationManager.EvolutionaryAlgorithm algorithm = config.getAlgorithm();
+		int populationSize = config.getPopulationSize();
+		File file = File.createTempFile("checkpoint", ".bin"), recordingFile = File.createTempFile("recording", ".jfr");
+		file.deleteOnExit();
+		recordingFile.deleteOnExit();
+		Recording recording = new Recording();
+		try
+		{
+			config.setAlgorithm(ConfigurationManager.EvolutionaryAlgorithm.GENETIC_ALGORITHM);
+			config.setPopulationSize(20);
+			IslandEngine engine = new IslandEngine(Utils.generateCityList(30,100,100));
+			recording.enable(SolverEvents.Phase.class);
+			recording.enable(SolverEvents.Checkpoint.class);
+			recording.start();
+		Assert.assertTrue(SolverEvents.PHASE.isEnabled()); // Phase events are only created while recorded
+			for(int generation = 0; generation < 2; ++generation)
+				engine.evolve();
+			Checkpoint.Writer writer = new Checkpoint.Writer(file.getPath());
+			Assert.assertTrue(writer.write(2, new double[] { 2, 1 }, 1, engine.getChromosomes()[0], engine));
+			writer.close();
+			engine.shutdown();
+			recording.stop();
+			recording.dump(recordingFile.toPath());
+			
+			List<String> phases = new ArrayList<String>();
+			int checkpoints = 0;
+			for(RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath()))
+			{
+				if(event.getEventType().getName().equals("tsp.Phase"))
+				{
+					phases.add(event.getString("phase"));
+					Assert.assertEquals(20, event.getInt("populationSize"));
+					Assert.assertTrue(event.getInt("generation") < 2);
+				}
+				else if(event.getEventType().getName().equals("tsp.Checkpoint"))
+				{
+					++checkpoints;
+					Assert.assertEquals(2, event.getInt("generation"));
+					Assert.assertEquals(file.length(), event.getLong("size"));
+				}
+			}
+			for(String phase : new String[] { "GENERATION", "SELECTION", "MATING", "CHILDREN", "SURVIVOR_SELECTION" })
+				Assert.assertEquals(phase, 2, Collections.frequency(phases, phase));
+			Assert.assertEquals(1, checkpoints);
+		}
+		finally
+		{
+			recording.close();
+			config.setAlgorithm(algorithm);
+			config.setPopulationSize(populationSize);
+		}
+	}
+	
+	@Test
+	public void testAllocationAccounting()
+	{
+		ConfigurationManager config = ConfigurationManager.instance();
+		ConfigurationManager.EvolutionaryAlgorithm algorithm = config.getAlgorithm();
+		int populationSize = config.getPopulationSize(), children = config.getChildrenPerGeneration();
+		try
+		{
+			config.setAlgorithm(ConfigurationManager.EvolutionaryAlgorithm.EVOLUTIONARY_PROGRAMMING);
+			config.setPopulationSize(12);
+			config.setChildrenPerGeneration(6);
+			City[] cities = Utils.generateCityList(40,100,100);
+			IslandEngine engine = new IslandEngine(cities);
+			
+			// Footprints: the payload of the arrays
+			DistanceMatrix distances = cities[0].getDistanceMatrix();
+			Assert.assertEquals(distances.getLayout() == DistanceMatrix.Layout.QUANTIZED ? 2L * distances.size() : 4L * distances.size(), distances.getFootprint());
+			Chromosome chromosome = engine.getChromosomes()[0];
+			Assert.assertEquals(8L * cities.length, chromosome.getFootprint()); // City list and positions
+			Assert.assertEquals(engine.getAllocatedChromosomes() * chromosome.getFootprint(), engine.getFootprint());
+			Assert.assertEquals(engine.getAllocatedChromosomes() * ((EPChromosome) chromosome).getStateTable().getFootprint(), engine.getStateTableFootprint());
+			Assert.assertTrue(AllocationAccounting.footprint(cities, engine).contains("State tables"));
+			
+			AllocationAccounting.setEnabled(true);
+			if(!AllocationAccounting.isEnabled())
+				return; // Not supported by this JVM, or instrumentation off
+			for(int generation = 0; generation < 3; ++generation)
+			{
+				long evaluations = engine.getEvaluations();
+				AllocationAccounting.startGeneration();
+				engine.evolve();
+				AllocationAccounting.endGeneration(engine.getEvaluations() - evaluations);
+			}
+			engine.shutdown();
+			Assert.assertEquals(3, AllocationAccounting.getGenerationBytes().getCount());
+			Assert.assertTrue(AllocationAccounting.getGenerationBytes().getTotal() > 0);
+			Assert.assertTrue(AllocationAccounting.getBytesPerEvaluation() > 0);
+			long[] bytes = AllocationAccounting.getPhaseBytes();
+			Assert.assertTrue(bytes[Instrumentation.Phase.GENERATION.ordinal()] > 0); // The first generation allocates the children
+			for(long phaseBytes : bytes)
+				Assert.assertTrue(phaseBytes >= 0);
+			Assert.assertTrue(AllocationAccounting.report().contains("SURVIVOR_SELECTION"));
+		}
+		finally
+		{
+			AllocationAccounting.setEnabled(false);
+			config.setAlgorithm(algorithm);
+			config.setPopulationSize(populationSize);
+			config.setChildrenPerGeneration(children);
+		}
+	}
+	
+	private static String writeTempFile(String content) throws IOException
+	{
+		File file = File.createTempFile("tsplib", ".tsp");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(content.getBytes("US-ASCII"));
+		}
+		finally
+		{
+			out.close();
+		}
+		return file.getPath();
+	}
+}
@@ -1,89 +1,220 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Selects chromosomes through repeated tournaments, without replacement.
+ *
+ * Candidates are kept as a pool of indices in a primitive array. A tournament draws its
+ * competitors by partially shuffling the front of the pool, the winner is found by a linear
+ * scan of the costs, and is then removed by swapping it with the last candidate of the pool.
+ * Selecting n winners out of P chromosomes therefore costs O(P + n*K).
+ *
+ * In parallel mode the (shuffled) pool is split in partitions of about {@link #WINNERS_PER_PARTITION}
+ * winners, each running its tournaments independently. The partitions don't depend on the number
+ * of threads, so neither do the winners.
+ *
+ * A selector keeps its scratch memory between selections and isn't meant to be shared between threads.
+ *
+ * @author Harry Long
+ *
+ */
+public class TournamentSelector {
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+	/**
+	 * Number of winners selected by each partition in parallel mode
+	 */
+	private static final int WINNERS_PER_PARTITION = 64;
 
+	private final int tournamentSize;
+	private final double probabilityOfChosingElite;
+
+	/**
+	 * Runs partitions in parallel, null to run all tournaments on the calling thread
+	 */
+	private final ParallelEvaluator parallelEvaluator;
+
+	// Scratch memory, grown as needed
+	private int[] pool = new int[0];
+	private double[] costs = new double[0];
+	private boolean[] won = new boolean[0];
 
-public class TournamentSelector {
-	
-	Chromosome[] winningChromosomes;
-	
 	/**
-	 * Constructor which also starts the tournament selection mechanism
-	 * @param - chromosomes: List of all chromosomes which can be selected for the tournament
-	 * <b>Important: Each chromosome which wins a tournament and so is deemed selected is removed from this initial list</b>
-	 * @param - nRequestedChromosomes: The number of chromosomes wanted at the end (i.e number of tournaments to run)
-	 * @param - tournamentSize: The number of genotypes to include for each tournament
-	 * @param - probabilityOfChosingElite: The probability of choosing the fitest genotype in each tournament
+	 * @param tournamentSize: The number of genotypes to include for each tournament
+	 * @param probabilityOfChosingElite: The probability of choosing the fitest genotype in each tournament
 	 */
-	TournamentSelector(List<Chromosome> chromosomes, int nRequestedChromosomes, int tournamentSize, double probabilityOfChosingElite)
-	{	
-		if(nRequestedChromosomes > chromosomes.size())
+	TournamentSelector(int tournamentSize, double probabilityOfChosingElite)
+	{
+		this(tournamentSize, probabilityOfChosingElite, null);
+	}
+
+	/**
+	 * @param tournamentSize: The number of genotypes to include for each tournament
+	 * @param probabilityOfChosingElite: The probability of choosing the fitest genotype in each tournament
+	 * @param parallelEvaluator: Runs the tournaments in parallel partitions, null to run them all on the calling thread
+	 */
+	TournamentSelector(int tournamentSize, double probabilityOfChosingElite, ParallelEvaluator parallelEvaluator)
+	{
+		this.tournamentSize = tournamentSize;
+		this.probabilityOfChosingElite = probabilityOfChosingElite;
+		this.parallelEvaluator = parallelEvaluator;
+	}
+
+	/**
+	 * Runs the tournaments
+	 * @param chromosomes: The chromosomes which can be selected (the first <count>)
+	 * @param count: The number of chromosomes which can be selected
+	 * @param nRequestedChromosomes: The number of chromosomes wanted at the end (i.e number of tournaments to run)
+	 * @param winners: Filled with the chromosomes which won a tournament
+	 * @param losers: Filled with the other chromosomes, in their original order. May be null
+	 */
+	public void select(Chromosome[] chromosomes, int count, int nRequestedChromosomes, Chromosome[] winners, Chromosome[] losers)
+	{
+		if(nRequestedChromosomes > count)
 		{
-			System.err.println("Can't get " + nRequestedChromosomes + " from a total population of " + chromosomes.size() + " chromosomes. Exiting");
+			System.err.println("Can't get " + nRequestedChromosomes + " from a total population of " + count + " chromosomes. Exiting");
 			System.exit(1);
 		}
-		
-		List<Integer> validIndices = new ArrayList<Integer>(chromosomes.size());
-		for(int i = 0 ; i < chromosomes.size(); ++i)
-			validIndices.add(i);
-		
-		winningChromosomes = new Chromosome[nRequestedChromosomes];
-		
-		for(int i = 0; i < nRequestedChromosomes; ++i)
+
+		if(pool.length < count)
+		{
+			pool = new int[count];
+			costs = new double[count];
+			won = new boolean[count];
+		}
+		for(int i = 0; i < count; ++i)
 		{
-			int thisTournamentSize = Math.min(validIndices.size(), tournamentSize);
-			Chromosome[] tournament = new Chromosome[thisTournamentSize];
-			List<Integer> tournamentIndices = new ArrayList<Integer>();
-			Map<Chromosome, Integer> chromosomeToIdxMapping = new HashMap<Chromosome, Integer>();
-			
-			// Create the tournament
-			for(int ii = 0; ii < thisTournamentSize; ++ii)
+			pool[i] = i;
+			costs[i] = chromosomes[i].getCost();
+		}
+
+		int partitions = parallelEvaluator != null ? nRequestedChromosomes / WINNERS_PER_PARTITION : 1;
+		if(partitions <= 1)
+		{
+			runTournaments(chromosomes, 0, count, winners, 0, nRequestedChromosomes);
+		}
+		else
+		{
+			// Shuffle the whole pool so the partitions are random, then give each its share of the winners
+			for(int i = count - 1; i > 0; --i)
+				swap(pool, i, Utils.random(0, i));
+			long[] seeds = new long[partitions];
+			for(int p = 0; p < partitions; ++p)
+				seeds[p] = Utils.randomSeed();
+			parallelEvaluator.run(new PartitionTask(chromosomes, count, winners, nRequestedChromosomes, seeds, 0, partitions));
+		}
+
+		if(losers != null)
+		{
+			int next = 0;
+			for(int i = 0; i < count; ++i)
 			{
-				int randomIndex = validIndices.get(Utils.random(0, validIndices.size()-1));
-				Chromosome selectedC = chromosomes.get(randomIndex);
-				tournament[ii] = selectedC;
-				
-				// Update indices
-				tournamentIndices.add(randomIndex);
-				validIndices.remove(Integer.valueOf(randomIndex));
-
-				chromosomeToIdxMapping.put(selectedC, randomIndex);
+				if(!won[i])
+					losers[next++] = chromosomes[i];
 			}
-			
-			Chromosome.sortChromosomes(tournament); // Get fittest
-			
-			Chromosome winner;
-			if(thisTournamentSize < 2 || Utils.getTrueWithProbability(probabilityOfChosingElite))
+		}
+		Arrays.fill(won, 0, count, false);
+	}
+
+	/**
+	 * Runs tournaments between the candidates of pool[from, to)
+	 */
+	private void runTournaments(Chromosome[] chromosomes, int from, int to, Chromosome[] winners, int winnersFrom, int winnersTo)
+	{
+		for(int w = winnersFrom; w < winnersTo; ++w)
+		{
+			int thisTournamentSize = Math.min(to - from, tournamentSize);
+
+			// Create the tournament at the front of the pool
+			for(int ii = 0; ii < thisTournamentSize; ++ii)
+				swap(pool, from + ii, Utils.random(from + ii, to - 1));
+
+			// Get fittest
+			int fittest = from;
+			for(int ii = from + 1; ii < from + thisTournamentSize; ++ii)
 			{
-				winner = tournament[0];
+				if(costs[pool[ii]] < costs[pool[fittest]])
+					fittest = ii;
 			}
-			else // Select at random from the rest
+
+			int winner = fittest;
+			if(thisTournamentSize >= 2 && !Utils.getTrueWithProbability(probabilityOfChosingElite)) // Select at random from the rest
 			{
-				winner = tournament[Utils.random(1, thisTournamentSize-1)];
+				winner = from + Utils.random(0, thisTournamentSize - 2);
+				if(winner >= fittest)
+					winner++;
 			}
-			winningChromosomes[i] = winner;
+			winners[w] = chromosomes[pool[winner]];
+			won[pool[winner]] = true;
 
-			// Remove winning chromosome index from list of tournament indices
-			tournamentIndices.remove(Integer.valueOf(chromosomeToIdxMapping.get(winner)));
-			
-			// Re-append all but the winning chromosome index to the list of valid indices
-			validIndices.addAll(tournamentIndices);
+			// Remove the winner from the pool
+			swap(pool, winner, --to);
 		}
-		
-		// Remove all parent chromosomes from original list
-		for(Chromosome c : winningChromosomes)
-			chromosomes.remove(c);
 	}
-	
+
+	private static void swap(int[] array, int i, int j)
+	{
+		int tmp = array[i];
+		array[i] = array[j];
+		array[j] = tmp;
+	}
+
 	/**
-	 * Get the winners from the tournament
-	 * @return: The genotypes which survived the tournament
+	 * Runs the tournaments of a range of partitions, splitting the work until a single partition is left
 	 */
-	public Chromosome[] getWinners()
-	{
-		return winningChromosomes;
+	private class PartitionTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 2319467326713428802L;
+
+		private final Chromosome[] chromosomes;
+		private final Chromosome[] winners;
+		private final int count, nWinners;
+		private final long[] seeds;
+		private final int fromPartition, toPartition;
+
+		PartitionTask(Chromosome[] chromosomes, int count, Chromosome[] winners, int nWinners, long[] seeds, int fromPartition, int toPartition)
+		{
+			this.chromosomes = chromosomes;
+			this.count = count;
+			this.winners = winners;
+			this.nWinners = nWinners;
+			this.seeds = seeds;
+			this.fromPartition = fromPartition;
+			this.toPartition = toPartition;
+		}
+
+		@Override
+		protected void compute() {
+			if(toPartition - fromPartition == 1)
+			{
+				int partitions = seeds.length;
+				int winnersFrom = bound(nWinners, fromPartition, partitions), winnersTo = bound(nWinners, fromPartition + 1, partitions);
+				// Each partition gets as many candidates as winners, plus its share of the others
+				int from = winnersFrom + bound(count - nWinners, fromPartition, partitions);
+				int to = winnersTo + bound(count - nWinners, fromPartition + 1, partitions);
+				Rng previous = Utils.setThreadRandom(new Rng(seeds[fromPartition]));
+				try
+				{
+					runTournaments(chromosomes, from, to, winners, winnersFrom, winnersTo);
+				}
+				finally
+				{
+					Utils.setThreadRandom(previous);
+				}
+			}
+			else
+			{
+				int split = (fromPartition + toPartition) >>> 1;
+				invokeAll(new PartitionTask(chromosomes, count, winners, nWinners, seeds, fromPartition, split),
+						new PartitionTask(chromosomes, count, winners, nWinners, seeds, split, toPartition));
+			}
+		}
+
+		/**
+		 * Start of a partition when splitting <total> items in <partitions>
+		 */
+		private int bound(int total, int partition, int partitions)
+		{
+			return (int) ((long) total * partition / partitions);
+		}
 	}
 }
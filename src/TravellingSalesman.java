@@ -10,10 +10,7 @@ import java.awt.Panel;
 import java.awt.TextField;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * This class implements the Traveling Salesman problem
@@ -22,6 +19,11 @@ import java.util.List;
 public class TravellingSalesman extends Applet
   implements Runnable {
 
+  /**
+   * The number of generations of a run
+   */
+  private static final int GENERATIONS = 1000;
+  
   /**
    * Whether to run in GUI mode or command-line mode 
    */
@@ -62,6 +64,11 @@ public class TravellingSalesman extends Applet
    */
   protected Chromosome [] chromosomes;
 
+  /**
+   * Evolves the population(s)
+   */
+  protected IslandEngine islands;
+
   /**
    * The Start button.
    */
@@ -89,9 +96,14 @@ public class TravellingSalesman extends Applet
   private String status = "";
   
   /**
-   * The mean cost per generation
+   * The mean cost per generation, grown as needed
    */
-  private Double[] meanPerGeneration = new Double[1000];
+  private double[] meanPerGeneration = new double[GENERATIONS];
+  
+  /**
+   * Publishes the statistics of each generation to the sinks, off the solver thread
+   */
+  private StatisticsPipeline statistics;
   
   /**
    * The configuration for this run
@@ -108,6 +120,21 @@ public class TravellingSalesman extends Applet
    */
   private int bestRunNumber;
   
+  /**
+   * The checkpoint the run resumes from, null for a new run
+   */
+  private Checkpoint resumeFrom;
+  
+  /**
+   * Writes the checkpoints of the run, null if not configured
+   */
+  private Checkpoint.Writer checkpointWriter;
+  
+  /**
+   * The generation of the last checkpoint
+   */
+  private int lastCheckpoint;
+  
   public TravellingSalesman()
   {
 	  this(true); // Default to GUI
@@ -122,6 +149,8 @@ public class TravellingSalesman extends Applet
   {
 	// Check configuration
 	switch(config.getAlgorithm()){
+	case LIN_KERNIGHAN:
+		break; // No parents, each chromosome is improved on its own
 	case EVOLUTIONARY_PROGRAMMING:
 	case GENETIC_ALGORITHM:
 	default:
@@ -191,27 +220,45 @@ public class TravellingSalesman extends Applet
 			yBound = bottom - 10;
 		}
 		
+		// Every random draw of the run derives from the master seed
+		Rng previous = Utils.setThreadRandom(Rng.stream(config.getSeed(), Rng.MAIN_STREAM));
+		
 		// Initialize initial city list
-		cities = Utils.generateCityList(config.getCityCount(), xBound, yBound);
+		if(config.getTsplibFile() != null)
+		{
+			TsplibInstance instance = TsplibInstance.load(config.getTsplibFile());
+			config.setCityCount(instance.getDimension());
+			cities = instance.toCities(config.getDistanceLayout(), config.getCandidateListSize(), xBound, yBound);
+		}
+		else
+			cities = Utils.generateCityList(config.getCityCount(), xBound, yBound);
 		
 		bestOfAllRuns = null;
 		
-		switch(config.getAlgorithm()){
-		case EVOLUTIONARY_PROGRAMMING:
-			chromosomes = new EPChromosome[config.getPopulationSize()];
-			for(int i = 0 ; i < chromosomes.length ; ++i)
-				chromosomes[i] = new EPChromosome(cities);
-			break;
-		case GENETIC_ALGORITHM:
-			chromosomes = new GAChromosome[config.getPopulationSize()];
-			for(int i = 0 ; i < chromosomes.length ; ++i)
-				chromosomes[i] = new GAChromosome(cities);
-			break;
-		}
+		if(islands != null)
+			islands.shutdown();
+		islands = resumeFrom != null ? resumeFrom.restore(cities) : new IslandEngine(cities);
+		chromosomes = islands.getChromosomes();
+		Utils.setThreadRandom(previous);
 
 		// start up the background thread
 		started = true;
 		generation = 0;
+		double[] previousMeans = new double[0];
+		if(resumeFrom != null)
+		{
+			generation = resumeFrom.getGeneration();
+			bestOfAllRuns = resumeFrom.getBest();
+			bestRunNumber = resumeFrom.getBestRunNumber();
+			previousMeans = resumeFrom.getMeanPerGeneration();
+			meanPerGeneration = Arrays.copyOf(previousMeans, Math.max(GENERATIONS, previousMeans.length));
+			resumeFrom = null;
+		}
+		lastCheckpoint = generation;
+		statistics = new StatisticsPipeline(StatisticsPipeline.createSinks(GENERATIONS, previousMeans));
+		Instrumentation.register();
+		AllocationAccounting.setEnabled(config.isAllocationAccounting());
+		checkpointWriter = config.getCheckpointFile() != null ? new Checkpoint.Writer(config.getCheckpointFile()) : null;
 
 		if (worker != null)
 			worker = null;
@@ -276,257 +323,88 @@ public class TravellingSalesman extends Applet
 	  update();
   }
   
-  /**
-   * Evolves the genotypes by a single generation using Evolutionary Programming
-   */
-  private void evolveThroughEP()
-  {
-	  int nParents = config.getChildrenPerGeneration(); // 2-2 Relationship
-	  
-	  List<Chromosome> nextGenPopulation = new ArrayList<Chromosome>();
-	  
-	  //*** PARENT SELECTION ***//
-	  List<Chromosome> unusedPopulation = new ArrayList<Chromosome>(Arrays.asList(chromosomes)); // Population not used for mating
-	  Chromosome[] parentPopulation;
-	  if(nParents == chromosomes.length) // No need performing tournament selection if # parents to select == # children
-	  {
-		  parentPopulation = chromosomes;
-		  unusedPopulation.clear();
-	  }
-	  else
-		  parentPopulation = new TournamentSelector(unusedPopulation, nParents, config.getK(), config.getProbabilityOfSelectingFittestParent()).getWinners(); 
-	  
-
-	  //*** Mating ***//
-	  Chromosome[] childPopulation = new Chromosome[nParents];
-	  for(int index = 0; index < nParents-1; index +=2)
-	  {
-		  Chromosome[] children = parentPopulation[index].mate(parentPopulation[index+1]);
-		  childPopulation[index] = children[0];
-		  childPopulation[index+1] = children[1];  // Non-mutated
-	  }
-	  
-	  //*** MUTATION ***//
-	  for(Chromosome c : childPopulation) // Sort children
-	  {
-		  c.mutate();
-		  c.calculateCost();
-	  }
-
-	  //*** SURVIVOR SELECTION ***//
-	  /*
-	   *  1 - Pair parents and children by fitness
-	   *  2 - Randomly select a pair and select the fitest of the parent/child. Call it F
-	   *  3 - Randomly select Q other children
-	   *  4 - Select the fittest of Q U F 
-	   *  5 - Repeat <population_size> times
-	   */
-	  Chromosome.sortChromosomes(parentPopulation);
-	  Chromosome.sortChromosomes(childPopulation);
-	  Utils.TupleCollection<Chromosome> pairedGenotypes = 
-			  new Utils.TupleCollection<Chromosome>(parentPopulation, childPopulation);
-	  while(nextGenPopulation.size() < config.getPopulationSize() && pairedGenotypes.remainingPairs() > 0)
-	  {	
-		  // Select a random pair
-		  Chromosome[] pair = pairedGenotypes.getRandomPair().toArray(new Chromosome[0]);
-		  
-		  // Identify and select winner of pair
-		  Chromosome.sortChromosomes(pair);
-				
-		  // Create tournament with this and x randomly selected children
-		  List<Chromosome> remainingChildren = new ArrayList<Chromosome>(pairedGenotypes.getYs());
-		  if(remainingChildren.contains(pair[0])) // if warrior is a child, remove it from possible tournament enemies
-			  remainingChildren.remove(pair[0]);
-				
-		  // Tournament size has a maximum of remaining children + 1 (being the chosen chromosome warrior)
-		  int tournamentSize = Math.min(config.getQ(), remainingChildren.size()) + 1;
-		  Chromosome[] tournament = new Chromosome[tournamentSize];	
-		  tournament[0] = pair[0]; // Add the initial warrior
-		  for(int ii = 1; ii < tournamentSize; ++ii)
-		  {
-			  int randomIndex = Utils.random(0, remainingChildren.size()-1);
-			  tournament[ii] = remainingChildren.get(randomIndex);
-			  remainingChildren.remove(randomIndex);
-		  }
-		  
-		  // Get winner from tournament
-		  Chromosome.sortChromosomes(tournament);
-		  
-		  // Add to next generation population
-		  nextGenPopulation.add(tournament[0]);
-
-		  // Remove winner
-		  pairedGenotypes.remove(tournament[0]);		  
-	  }
-	  
-	  int i = 0;
-	  while(nextGenPopulation.size() < config.getPopulationSize() && i < unusedPopulation.size())
-		  nextGenPopulation.add(unusedPopulation.get(i++));
-	  	  
-	  chromosomes = nextGenPopulation.toArray(new Chromosome[0]);
-  }
-  
-  /**
-   * Evolves the genotypes by a single generation using Genetic Algorithms
-   */
-  private void evolveThroughGA()
-  {
-	  int nParents = 100;
-	  int populationSize = config.getPopulationSize();
-	  
-	  // Parent Selection
-	  /**
-	   * Uses ranked based roulette wheel selection
-	   * The fitter individuals are assigned a probability slightly higher than unfit ones
-	   */
-	  int[] parentsUsed = new int[chromosomes.length];
-		
-	  double totalCost = 0;
-	  double [] relativeCost = new double[chromosomes.length];
-	  for (int i=0; i< chromosomes.length; i++)
-	  {
-		  chromosomes[i].calculateCost();
-		  totalCost += chromosomes[i].getCost(); //Calculating summed cost of generation
-	  }
-	  Chromosome.sortChromosomes(chromosomes, populationSize);
-
-	  for (int i= 0; i<chromosomes.length; i++)
-	  {
-		  relativeCost[i] = (chromosomes[i].getCost())/totalCost; // calculating relative costs for each chromosome.
-	  }
-
-	  double sumNew = 0;
-	  double[] newCosts = new double[chromosomes.length]; 
-	  double [] percOfParent = new double[chromosomes.length];
-	  for (int i=0; i<chromosomes.length; i++)
-	  {
-		  newCosts[i] = totalCost - relativeCost[i];
-		  sumNew += newCosts[i];
-	  }
-
-	  double[] percentage = new double[chromosomes.length];
-	  double cumPercentage = 0;
-	  for (int i =0; i<chromosomes.length; i++)
-	  {
-		  percentage[i] = newCosts[i]/sumNew;
-		  cumPercentage += percentage[i];
-		  percOfParent[i] = cumPercentage;
-		  parentsUsed[i] = 1; // Initializing all chromosomes to 1 (Havent been selected for mating)
-	  }
-	  int[] indexParents = new int[nParents];
-	  Chromosome [] parentArray = new Chromosome[nParents];
-	  for (int i =0; i< nParents; i++) // Choosing Parents using Roulette wheel.
-	  {
-		  boolean found = false;
-		  int j =0;
-		  while ((!found) &&(j <1000) )
-		  {
-
-			  double rand = Math.random();
-
-			  if ((percOfParent[j] - rand) >= 0)
-			  {
-				  if (parentsUsed[j] == 1)
-				  {
-					  parentArray[i] = chromosomes[j];
-					  parentsUsed[j] = 0;
-					  indexParents[i] = j;
-					  found = true;
-				  }
-				  else
-				  {
-					  j = 0;
-					  continue;
-				  }	
-			  }
-			  else j += 1;
-		  }		  
-	  }
-
-	  // Mating of chosen parents. Each pair of parents produce a pair of children
-	  Chromosome[] childPopulation = new Chromosome[nParents];
-	  for (int i=0; i<nParents-1; i += 2)
-	  {
-		  Chromosome[] children = parentArray[i].mate(parentArray[i+1]);
-		  childPopulation[i] = children[0];
-		  childPopulation[i+1] = children[1];
-	  }
-	  for (Chromosome c : childPopulation)
-	  {
-		  c.mutate();
-		  c.calculateCost();
-	  }
-	 
-	  // Recombination
-	  Chromosome[] allSolutions = new Chromosome[populationSize + nParents];
-	  int populationIndex = 0;
-	  while(populationIndex < populationSize) // Fill with parent population
-	  {
-		  allSolutions[populationIndex] = chromosomes[populationIndex];
-		  populationIndex ++;
-	  }
-	  while(populationIndex < populationSize+nParents) // Fill with child population
-	  {
-		  allSolutions[populationIndex] = childPopulation[populationIndex-populationSize];
-		  populationIndex ++;
-	  }
-	  Chromosome.sortChromosomes(allSolutions);
-		
-	  chromosomes = Arrays.copyOfRange(allSolutions, 0, populationSize); // Take best 1000 solutions to use in next generation
-
-  }
-  
   /**
    * The main loop for the background thread.
    */
   public void run() {
 	  update();		
 
-	  while (generation < 1000) {
-		  // Quick summary
-		  if(generation != 0 && generation%100 == 0)
-		  {
-			  System.out.println("*****GENERATION: " + generation + "/1000 ********");
-			  System.out.println("/// Progress since start: " + getProgress(0, generation-1) + " %");
-			  System.out.println("/// Progress since generation " + (generation-100) + ": " + getProgress(generation-100, generation-1) + " %");
-			  System.out.println();
-		  }
-		  
-		  switch(config.getAlgorithm()){
-		  case EVOLUTIONARY_PROGRAMMING:
-			  evolveThroughEP();
-			  break;
-		  case GENETIC_ALGORITHM:
-			  evolveThroughGA();
-			  break;
-		  default:
-			  System.err.println("Invalid Algorithm Chosen!"); // This will never happen
-			  break;
-		  }
+	  long evaluations = islands.getEvaluations(), time = System.nanoTime();
+	  while (generation < GENERATIONS) {
+		  SolverEvents.Generation event = SolverEvents.GENERATION.isEnabled() ? new SolverEvents.Generation() : null;
+		  if(event != null)
+			  event.begin();
+		  AllocationAccounting.startGeneration();
+		  islands.evolve();
+		  chromosomes = islands.getChromosomes();
 		  
 		  //*************STATISTIC GATHERING****************//
+		  if(generation == meanPerGeneration.length)
+			  meanPerGeneration = Arrays.copyOf(meanPerGeneration, generation * 2);
 		  meanPerGeneration[generation] = 0d;
 		  for(Chromosome c : chromosomes)
 			  meanPerGeneration[generation] += c.getCost();
-		  meanPerGeneration[generation] /= config.getPopulationSize();	
+		  meanPerGeneration[generation] /= chromosomes.length;	
 		  
-		  Chromosome.sortChromosomes(chromosomes); // Get the absolute best for this run
+		  Ranking.selectBest(chromosomes, 1); // Get the absolute best for this run
 		  double cost = chromosomes[0].getCost();
-		  NumberFormat nf = NumberFormat.getInstance();
-		  nf.setMinimumFractionDigits(2);
-		  nf.setMinimumFractionDigits(2);
 		  
 		  // Check it its the best of all time
 		  if(bestOfAllRuns == null || bestOfAllRuns.getCost() > chromosomes[0].getCost())
 		  {
-			  bestOfAllRuns = chromosomes[0];
+			  SolverEvents.Improvement improvement = new SolverEvents.Improvement();
+			  if(improvement.shouldCommit())
+			  {
+				  improvement.generation = generation;
+				  improvement.previousCost = bestOfAllRuns == null ? 0 : bestOfAllRuns.getCost();
+				  improvement.cost = cost;
+				  improvement.commit();
+			  }
+			  // Chromosomes are recycled by the next generations, so keep a copy
+			  if(bestOfAllRuns == null)
+				  bestOfAllRuns = chromosomes[0].copy();
+			  else
+				  bestOfAllRuns.copyFrom(chromosomes[0]);
 			  bestRunNumber = generation;
 		  }
+		  
+		  // Printed and written to files by the statistics thread
+		  long now = System.nanoTime(), evaluated = islands.getEvaluations();
+		  statistics.publish(generation, chromosomes, (evaluated - evaluations) * 1e9 / Math.max(1, now - time));
+		  AllocationAccounting.endGeneration(evaluated - evaluations);
+		  evaluations = evaluated;
+		  time = now;
+		  if(event != null)
+		  {
+			  event.end();
+			  if(event.shouldCommit())
+			  {
+				  event.generation = generation;
+				  event.populationSize = chromosomes.length;
+				  event.bestCost = cost;
+				  event.meanCost = meanPerGeneration[generation];
+				  event.commit();
+			  }
+		  }
 
 		  setStatus("Generation " + generation + " Cost " + (int) cost);	
 		  update();
 		  generation++;
+		  
+		  // Checkpoints are taken between generations, the migrants in transit with them
+		  if(checkpointWriter != null && generation - lastCheckpoint >= Math.max(1, config.getCheckpointInterval())
+				  && checkpointWriter.write(generation, meanPerGeneration, bestRunNumber, bestOfAllRuns, islands))
+			  lastCheckpoint = generation;
 	  }
+	  if(checkpointWriter != null)
+	  {
+		  // The end of the run too, so the last checkpoint holds the final population
+		  if(lastCheckpoint != generation && bestOfAllRuns != null)
+			  checkpointWriter.writeLast(generation, meanPerGeneration, bestRunNumber, bestOfAllRuns, islands);
+		  checkpointWriter.close();
+	  }
+	  statistics.close();
+	  islands.shutdown();
 	  summarizeRun();
 	  setStatus("Solution found after " + generation + " generations.");
 	  
@@ -557,12 +435,47 @@ public class TravellingSalesman extends Applet
 	  System.out.println(config);
 	  System.out.println("Progress: " + progress + " %");
 	  System.out.println("Minimum calculated cost from all runs: " + bestOfAllRuns.getCost() + " ( run number " + bestRunNumber + " )");
-	  
-	  // Write to file
-//	  String filename = "/home/harry/Uni/Evolutionary Computation/Assignment 1/comparison_statistics/" + config.getAsFilename();
-//	  Double[][] meansAsCSV = new Double[1][];
-//	  meansAsCSV[0] = meanPerGeneration;
-//	  Utils.writeCSV(meansAsCSV, filename);
+	  if(config.getOptimalTourFile() != null)
+		  summarizeOptimalTour(config.getOptimalTourFile());
+	  FitnessCache fitnessCache = FitnessCache.get(cities[0].getDistanceMatrix());
+	  if(fitnessCache != null)
+		  System.out.println(fitnessCache);
+	  if(Instrumentation.ENABLED)
+		  System.out.println(Instrumentation.instance());
+	  if(AllocationAccounting.isEnabled())
+	  {
+		  System.out.println(AllocationAccounting.report());
+		  System.out.println(AllocationAccounting.footprint(cities, islands));
+	  }
+  }
+  
+  /**
+   * Prints the cost of a known optimal tour next to the best tour found.
+   * Tours found are open paths, so the optimal (closed) tour is also given without its longest edge:
+   * the cost of the best open path is at most that.
+   * @param filename: The TSPLIB tour file
+   */
+  private void summarizeOptimalTour(String filename)
+  {
+	  int[] tour = TsplibInstance.loadTour(filename);
+	  boolean[] visited = new boolean[cities.length];
+	  for(int city : tour)
+	  {
+		  if(tour.length != cities.length || visited[city])
+		  {
+			  System.err.println(filename + " isn't a tour of the " + cities.length + " cities");
+			  return;
+		  }
+		  visited[city] = true;
+	  }
+	  DistanceMatrix distances = cities[0].getDistanceMatrix();
+	  double openCost = distances.getTourCost(tour);
+	  double longestEdge = distances.getDistance(tour[tour.length-1], tour[0]);
+	  for(int i = 0; i < tour.length-1; ++i)
+		  longestEdge = Math.max(longestEdge, distances.getDistance(tour[i], tour[i+1]));
+	  double closedCost = openCost + distances.getDistance(tour[tour.length-1], tour[0]);
+	  System.out.println("Optimal tour cost: " + closedCost + " ( " + (closedCost - longestEdge) + " without its longest edge )");
+	  System.out.println("Gap to the optimal tour without its longest edge: " + ((bestOfAllRuns.getCost() - (closedCost - longestEdge)) / (closedCost - longestEdge) * 100d) + " %");
   }
   
   /**
@@ -581,6 +494,12 @@ public class TravellingSalesman extends Applet
 	  if(args.length != 0) 
 		  ConfigurationManager.instance().parse(args);
 	  TravellingSalesman tsm = new TravellingSalesman(false);
+	  if(ConfigurationManager.instance().getResumeFile() != null)
+	  {
+		  // The run carries on with the configuration of the checkpoint, overridden by the options given with it
+		  tsm.resumeFrom = Checkpoint.load(ConfigurationManager.instance().getResumeFile());
+		  ConfigurationManager.instance().parse(args);
+	  }
 	  System.out.println(ConfigurationManager.instance());
 	  tsm.init();
   }
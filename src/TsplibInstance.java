@@ -0,0 +1,628 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A symmetric TSP instance read from a TSPLIB file, and the distances between its nodes.
+ *
+ * Supported edge weight types are EUC_2D, CEIL_2D, GEO, ATT and EXPLICIT. Explicit weights can be given in
+ * any of the FULL_MATRIX, UPPER_ROW, LOWER_ROW, UPPER_DIAG_ROW and LOWER_DIAG_ROW formats (or their column
+ * equivalents). Only the upper triangle of a full matrix is read, as the instance is symmetric.
+ *
+ * Files are parsed byte by byte through a memory-mapped {@link FileChannel}: numbers are decoded straight from
+ * the mapped bytes, so a file of hundreds of thousands of nodes is read without allocating a String per line.
+ * Coordinates are kept as compact arrays, and City objects are only built on demand.
+ *
+ * Nodes are numbered from 1 in the file and named from 0 (their index) once loaded.
+ *
+ * @author Harry Long
+ *
+ */
+public class TsplibInstance implements DistanceMatrix.Metric {
+
+	public static enum EdgeWeightType { EUC_2D, CEIL_2D, GEO, ATT, EXPLICIT };
+
+	/**
+	 * Radius of the earth and value of pi, as defined by TSPLIB for the GEO distance
+	 */
+	private static final double EARTH_RADIUS = 6378.388;
+	private static final double PI = 3.141592;
+
+	private String name = "";
+	private int dimension = -1;
+	private EdgeWeightType edgeWeightType;
+	private String edgeWeightFormat = "FULL_MATRIX";
+
+	/**
+	 * The coordinates of each node (from NODE_COORD_SECTION, or DISPLAY_DATA_SECTION for explicit weights). null if not given
+	 */
+	private double[] xs;
+	private double[] ys;
+
+	/**
+	 * GEO only: latitude and longitude of each node, in radians
+	 */
+	private double[] latitudes;
+	private double[] longitudes;
+
+	/**
+	 * EXPLICIT only: the upper triangle of the weights, flattened row by row as in {@link DistanceMatrix}
+	 */
+	private float[] weights;
+
+	private TsplibInstance()
+	{
+	}
+
+	/**
+	 * Reads a TSPLIB file
+	 * @param filename: The file
+	 * @return: The instance
+	 */
+	public static TsplibInstance load(String filename)
+	{
+		TsplibInstance instance = new TsplibInstance();
+		MappedReader reader = MappedReader.open(filename);
+		try
+		{
+			instance.parse(reader, filename);
+		}
+		finally
+		{
+			reader.close();
+		}
+		return instance;
+	}
+
+	/**
+	 * Reads the tour of a TSPLIB tour file (such as the .opt.tour of an instance)
+	 * @param filename: The file
+	 * @return: The names (from 0) of the nodes in the order they are visited
+	 */
+	public static int[] loadTour(String filename)
+	{
+		MappedReader reader = MappedReader.open(filename);
+		try
+		{
+			int dimension = -1;
+			while(reader.skipWhitespace())
+			{
+				String keyword = reader.readWord();
+				if(keyword.equals("TOUR_SECTION"))
+				{
+					if(dimension < 0)
+						fail(filename, "DIMENSION must come before TOUR_SECTION");
+					int[] tour = new int[dimension];
+					for(int i = 0; i < dimension; ++i)
+					{
+						int node = reader.readInt();
+						if(node < 1 || node > dimension)
+							fail(filename, "Invalid node " + node + " in TOUR_SECTION");
+						tour[i] = node - 1;
+					}
+					return tour;
+				}
+				else if(keyword.equals("EOF"))
+					break;
+				String value = reader.readValue();
+				if(keyword.equals("DIMENSION"))
+					dimension = Integer.parseInt(value);
+			}
+			fail(filename, "No TOUR_SECTION");
+			return null;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private void parse(MappedReader reader, String filename)
+	{
+		boolean hasWeights = false;
+		while(reader.skipWhitespace())
+		{
+			String keyword = reader.readWord();
+			switch(keyword){
+			case "NODE_COORD_SECTION":
+			case "DISPLAY_DATA_SECTION":
+				checkDimension(filename, keyword);
+				readCoordinates(reader, filename);
+				break;
+			case "EDGE_WEIGHT_SECTION":
+				checkDimension(filename, keyword);
+				readWeights(reader, filename);
+				hasWeights = true;
+				break;
+			case "EOF":
+				break;
+			default:
+				String value = reader.readValue();
+				switch(keyword){
+				case "NAME":
+					name = value;
+					break;
+				case "TYPE":
+					if(!value.equals("TSP"))
+						fail(filename, "Only symmetric TSP instances are supported, not " + value);
+					break;
+				case "DIMENSION":
+					dimension = Integer.parseInt(value);
+					break;
+				case "EDGE_WEIGHT_TYPE":
+					try
+					{
+						edgeWeightType = EdgeWeightType.valueOf(value);
+					}
+					catch(IllegalArgumentException e)
+					{
+						fail(filename, "Unsupported EDGE_WEIGHT_TYPE " + value);
+					}
+					break;
+				case "EDGE_WEIGHT_FORMAT":
+					edgeWeightFormat = value;
+					break;
+				default: // COMMENT, DISPLAY_DATA_TYPE...
+					break;
+				}
+				break;
+			}
+			if(keyword.equals("EOF"))
+				break;
+		}
+
+		if(dimension < 0 || edgeWeightType == null)
+			fail(filename, "DIMENSION and EDGE_WEIGHT_TYPE are required");
+		if(edgeWeightType == EdgeWeightType.EXPLICIT ? !hasWeights : xs == null)
+			fail(filename, "No " + (edgeWeightType == EdgeWeightType.EXPLICIT ? "EDGE_WEIGHT_SECTION" : "NODE_COORD_SECTION"));
+
+		if(edgeWeightType == EdgeWeightType.GEO)
+		{
+			latitudes = new double[dimension];
+			longitudes = new double[dimension];
+			for(int i = 0; i < dimension; ++i)
+			{
+				latitudes[i] = toRadians(xs[i]);
+				longitudes[i] = toRadians(ys[i]);
+			}
+		}
+	}
+
+	private void readCoordinates(MappedReader reader, String filename)
+	{
+		xs = new double[dimension];
+		ys = new double[dimension];
+		for(int i = 0; i < dimension; ++i)
+		{
+			int node = reader.readInt();
+			if(node < 1 || node > dimension)
+				fail(filename, "Invalid node " + node);
+			xs[node-1] = reader.readDouble();
+			ys[node-1] = reader.readDouble();
+		}
+	}
+
+	private void readWeights(MappedReader reader, String filename)
+	{
+		long size = (long) dimension * (dimension-1) / 2;
+		if(size > Integer.MAX_VALUE - 8)
+			fail(filename, "The weights of " + dimension + " nodes would exceed the maximum array size");
+		weights = new float[(int) size];
+
+		// Column formats list the same weights as the opposite row formats
+		boolean upper, diagonal, full = false;
+		switch(edgeWeightFormat){
+		case "FULL_MATRIX":
+			upper = diagonal = full = true;
+			break;
+		case "UPPER_ROW":
+		case "LOWER_COL":
+			upper = true;
+			diagonal = false;
+			break;
+		case "LOWER_ROW":
+		case "UPPER_COL":
+			upper = diagonal = false;
+			break;
+		case "UPPER_DIAG_ROW":
+		case "LOWER_DIAG_COL":
+			upper = diagonal = true;
+			break;
+		case "LOWER_DIAG_ROW":
+		case "UPPER_DIAG_COL":
+			upper = false;
+			diagonal = true;
+			break;
+		default:
+			fail(filename, "Unsupported EDGE_WEIGHT_FORMAT " + edgeWeightFormat);
+			return;
+		}
+
+		for(int row = 0; row < dimension; ++row)
+		{
+			int from = full ? 0 : upper ? (diagonal ? row : row+1) : 0;
+			int to = full ? dimension : upper ? dimension : (diagonal ? row+1 : row);
+			for(int column = from; column < to; ++column)
+			{
+				double weight = reader.readDouble();
+				if(column > row || (!upper && column < row))
+					weights[index(row, column)] = (float) weight;
+			}
+		}
+	}
+
+	private void checkDimension(String filename, String section)
+	{
+		if(dimension < 0)
+			fail(filename, "DIMENSION must come before " + section);
+	}
+
+	private static void fail(String filename, String message)
+	{
+		System.err.println("Unable to read " + filename + ": " + message + ". Exiting");
+		System.exit(1);
+	}
+
+	/**
+	 * Converts a TSPLIB GEO coordinate (degrees.minutes) to radians
+	 */
+	private static double toRadians(double coordinate)
+	{
+		int degrees = (int) coordinate;
+		double minutes = coordinate - degrees;
+		return PI * (degrees + 5.0 * minutes / 3.0) / 180.0;
+	}
+
+	/**
+	 * Index of the (from,to) pair in the flattened upper triangle
+	 */
+	private int index(int from, int to)
+	{
+		int lo = Math.min(from, to), hi = Math.max(from, to);
+		return (int) (((long) lo * (2 * dimension - lo - 1)) >>> 1) + (hi - lo - 1);
+	}
+
+	/**
+	 * The distance between two nodes, as defined by TSPLIB for the edge weight type of the instance
+	 * @param from: The first node name (from 0)
+	 * @param to: The second node name (from 0)
+	 * @return: The distance, always an integer
+	 */
+	@Override
+	public double distance(int from, int to)
+	{
+		if(from == to)
+			return 0;
+		switch(edgeWeightType){
+		case EXPLICIT:
+			return weights[index(from, to)];
+		case GEO:
+			double q1 = Math.cos(longitudes[from] - longitudes[to]);
+			double q2 = Math.cos(latitudes[from] - latitudes[to]);
+			double q3 = Math.cos(latitudes[from] + latitudes[to]);
+			return (int) (EARTH_RADIUS * Math.acos(0.5 * ((1.0 + q1) * q2 - (1.0 - q1) * q3)) + 1.0);
+		case ATT:
+			double xd = xs[from] - xs[to], yd = ys[from] - ys[to];
+			double r = Math.sqrt((xd * xd + yd * yd) / 10.0);
+			double t = (int) (r + 0.5);
+			return t < r ? t + 1 : t;
+		case CEIL_2D:
+			return Math.ceil(euclidean(from, to));
+		case EUC_2D:
+		default:
+			return (int) (euclidean(from, to) + 0.5);
+		}
+	}
+
+	private double euclidean(int from, int to)
+	{
+		double xd = xs[from] - xs[to], yd = ys[from] - ys[to];
+		return Math.sqrt(xd * xd + yd * yd);
+	}
+
+	/**
+	 * Creates the cities of the instance, and calculates their distances
+	 * @param layout: How the distances are stored
+	 * @param candidateCount: The number of closest cities to rank upfront for each city
+	 * @param xBound: The maximum horizontal point of the displayed cities
+	 * @param yBound: The maximum vertical point of the displayed cities
+	 * @return: The cities. Their coordinates are scaled to the given bounds for display, the distances being those of the instance
+	 */
+	public City[] toCities(DistanceMatrix.Layout layout, int candidateCount, int xBound, int yBound)
+	{
+		City[] cities = new City[dimension];
+		if(xs != null)
+		{
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for(int i = 0; i < dimension; ++i)
+			{
+				minX = Math.min(minX, xs[i]);
+				maxX = Math.max(maxX, xs[i]);
+				minY = Math.min(minY, ys[i]);
+				maxY = Math.max(maxY, ys[i]);
+			}
+			double scale = Math.min(xBound / Math.max(maxX - minX, 1e-9), yBound / Math.max(maxY - minY, 1e-9));
+			for(int i = 0; i < dimension; ++i)
+				cities[i] = new City((int) ((xs[i] - minX) * scale), (int) ((ys[i] - minY) * scale), i);
+		}
+		else // No coordinates to display: lay the cities on a circle
+		{
+			for(int i = 0; i < dimension; ++i)
+			{
+				double angle = 2 * Math.PI * i / dimension;
+				cities[i] = new City((int) (xBound * (1 + Math.cos(angle)) / 2), (int) (yBound * (1 + Math.sin(angle)) / 2), i);
+			}
+		}
+
+		// The k-d tree needs coordinates whose rounded down euclidean distance never exceeds the distance of the instance
+		double[] treeXs = null, treeYs = null;
+		switch(edgeWeightType){
+		case EUC_2D:
+		case CEIL_2D:
+			treeXs = xs;
+			treeYs = ys;
+			break;
+		case ATT:
+			treeXs = new double[dimension];
+			treeYs = new double[dimension];
+			for(int i = 0; i < dimension; ++i)
+			{
+				treeXs[i] = xs[i] / Math.sqrt(10.0);
+				treeYs[i] = ys[i] / Math.sqrt(10.0);
+			}
+			break;
+		default:
+			break;
+		}
+		City.calculateCityDistances(cities, this, treeXs, treeYs, layout, candidateCount);
+		return cities;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getDimension()
+	{
+		return dimension;
+	}
+
+	public EdgeWeightType getEdgeWeightType()
+	{
+		return edgeWeightType;
+	}
+
+	/**
+	 * @return: The horizontal coordinate of each node, null if the file has none
+	 */
+	public double[] getXs()
+	{
+		return xs;
+	}
+
+	/**
+	 * @return: The vertical coordinate of each node, null if the file has none
+	 */
+	public double[] getYs()
+	{
+		return ys;
+	}
+
+	/**
+	 * Tokenizer over a memory-mapped file. The file is mapped in windows, so files above 2GB can be read too
+	 */
+	private static class MappedReader {
+
+		/**
+		 * Size of a mapped window
+		 */
+		private static final long WINDOW = 1L << 26;
+
+		/**
+		 * Exact powers of ten
+		 */
+		private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+		};
+
+		private final String filename;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final long size;
+		private MappedByteBuffer buffer;
+		private long windowStart;
+		private long position;
+
+		private MappedReader(String filename, RandomAccessFile file) throws IOException
+		{
+			this.filename = filename;
+			this.file = file;
+			this.channel = file.getChannel();
+			this.size = channel.size();
+			map(0);
+		}
+
+		static MappedReader open(String filename)
+		{
+			try
+			{
+				return new MappedReader(filename, new RandomAccessFile(new File(filename), "r"));
+			}
+			catch(IOException e)
+			{
+				fail(filename, e.getMessage());
+				return null;
+			}
+		}
+
+		void close()
+		{
+			try
+			{
+				file.close();
+			}
+			catch(IOException e)
+			{
+				// Nothing left to read
+			}
+		}
+
+		private void map(long start)
+		{
+			try
+			{
+				windowStart = start;
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+			}
+			catch(IOException e)
+			{
+				fail(filename, e.getMessage());
+			}
+		}
+
+		/**
+		 * @return: The byte at the current position, -1 at the end of the file
+		 */
+		private int peek()
+		{
+			if(position >= size)
+				return -1;
+			if(position - windowStart >= buffer.limit())
+				map(position);
+			return buffer.get((int) (position - windowStart));
+		}
+
+		/**
+		 * Skips spaces and line breaks
+		 * @return: Whether anything is left to read
+		 */
+		boolean skipWhitespace()
+		{
+			int c;
+			while((c = peek()) != -1 && c <= ' ')
+				position++;
+			return c != -1;
+		}
+
+		/**
+		 * @return: The next keyword, ending at a space or a colon
+		 */
+		String readWord()
+		{
+			skipWhitespace();
+			StringBuilder sb = new StringBuilder();
+			int c;
+			while((c = peek()) > ' ' && c != ':')
+			{
+				sb.append((char) c);
+				position++;
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * @return: The value of a header line (the rest of the line after the colon), trimmed
+		 */
+		String readValue()
+		{
+			int c;
+			while((c = peek()) == ' ' || c == '\t' || c == ':')
+				position++;
+			StringBuilder sb = new StringBuilder();
+			while((c = peek()) != -1 && c != '\n' && c != '\r')
+			{
+				sb.append((char) c);
+				position++;
+			}
+			return sb.toString().trim();
+		}
+
+		int readInt()
+		{
+			double value = readDouble();
+			if(value != (int) value)
+				fail(filename, "Integer expected instead of " + value + " at byte " + position);
+			return (int) value;
+		}
+
+		/**
+		 * Decodes a number straight from the mapped bytes
+		 */
+		double readDouble()
+		{
+			if(!skipWhitespace())
+				fail(filename, "Unexpected end of file");
+			long start = position;
+			boolean negative = false;
+			int c = peek();
+			if(c == '-' || c == '+')
+			{
+				negative = c == '-';
+				position++;
+			}
+
+			long mantissa = 0;
+			int exponent = 0, digits = 0;
+			boolean point = false, any = false;
+			while(true)
+			{
+				c = peek();
+				if(c >= '0' && c <= '9')
+				{
+					any = true;
+					if(digits < 18) // Further digits don't fit in the mantissa, only their magnitude counts
+					{
+						mantissa = mantissa * 10 + (c - '0');
+						if(mantissa != 0)
+							digits++;
+						if(point)
+							exponent--;
+					}
+					else if(!point)
+						exponent++;
+				}
+				else if(c == '.' && !point)
+					point = true;
+				else
+					break;
+				position++;
+			}
+			if(!any)
+				fail(filename, "Number expected at byte " + start);
+
+			if(c == 'e' || c == 'E')
+			{
+				position++;
+				boolean negativeExponent = false;
+				c = peek();
+				if(c == '-' || c == '+')
+				{
+					negativeExponent = c == '-';
+					position++;
+				}
+				int e = 0;
+				while((c = peek()) >= '0' && c <= '9')
+				{
+					e = Math.min(e * 10 + (c - '0'), 10000);
+					position++;
+				}
+				exponent += negativeExponent ? -e : e;
+			}
+
+			double value;
+			if(exponent == 0)
+				value = mantissa;
+			else if(exponent > 0 && exponent < POWERS_OF_TEN.length)
+				value = mantissa * POWERS_OF_TEN[exponent];
+			else if(exponent < 0 && -exponent < POWERS_OF_TEN.length)
+				value = mantissa / POWERS_OF_TEN[-exponent]; // Correctly rounded for mantissas below 2^53
+			else
+				value = mantissa * Math.pow(10, exponent);
+			return negative ? -value : value;
+		}
+	}
+}
@@ -9,14 +9,73 @@ import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 
 
 public class Utils {
+	/**
+	 * Random generator set for the calling thread (see {@link #setThreadRandom(Rng)}), null if none
+	 */
+	private static final ThreadLocal<Rng> threadRandom = new ThreadLocal<Rng>();
+	
+	/**
+	 * Generator of threads which weren't given one: the main stream of the master seed, so draws outside the
+	 * solver (building the cities, tests, benchmarks) are reproduced by the seed. Worker threads of a pool
+	 * run tasks in whatever order they steal them: drawing there without the generator of the task would make
+	 * the run depend on the scheduling, so it stops the program instead
+	 */
+	private static final ThreadLocal<Rng> defaultRandom = new ThreadLocal<Rng>() {
+		@Override
+		protected Rng initialValue() {
+			if(Thread.currentThread() instanceof ForkJoinWorkerThread)
+			{
+				System.err.println("Random draw on worker thread " + Thread.currentThread().getName()
+						+ " without the generator of its task (see Utils.setThreadRandom). Exiting");
+				System.exit(1);
+			}
+			return Rng.stream(ConfigurationManager.instance().getSeed(), Rng.MAIN_STREAM);
+		}
+	};
+	
+	/**
+	 * Sets the random generator used by the calling thread
+	 * @param random: The random generator. null to go back to the default generator of the thread
+	 * @return: The generator previously set for the calling thread (null if none), to restore once done
+	 */
+	static Rng setThreadRandom(Rng random)
+	{
+		Rng previous = threadRandom.get();
+		threadRandom.set(random);
+		return previous;
+	}
+	
+	/**
+	 * @return: The random generator of the calling thread, for bulk draws
+	 */
+	static Rng getThreadRandom()
+	{
+		Rng random = threadRandom.get();
+		return random != null ? random : defaultRandom.get();
+	}
+	
+	/**
+	 * @return: A random value in the range [0,1) from the generator of the calling thread
+	 */
+	public static double randomDouble()
+	{
+		return getThreadRandom().nextDouble();
+	}
+	
+	/**
+	 * @return: A random seed for a new random generator, drawn from the generator of the calling thread
+	 */
+	public static long randomSeed()
+	{
+		return getThreadRandom().nextLong();
+	}
+	
 	/**
 	 * 
 	 * @param from : the lower range (inclusive)
@@ -25,7 +84,7 @@ public class Utils {
 	 */
 	public static int random(int from, int to)
 	{
-		return from + (int) (Math.random() * (to - from + 1));
+		return from + getThreadRandom().nextInt(to - from + 1);
 	}
 	
 	/**
@@ -67,7 +126,7 @@ public class Utils {
 	 */
 	public static boolean getTrueWithProbability(double probability)
 	{
-		return (Math.random() <= probability ? true : false);
+		return (randomDouble() <= probability ? true : false);
 	}
 	
 	/**
@@ -107,137 +166,16 @@ public class Utils {
 		City[] cities = new City[cityCount];
 		for (int i = 0; i < cityCount; i++) {
 			cities[i] = new City(
-					(int) (Math.random() * xBound),
-					(int) (Math.random() * yBound),
+					(int) (randomDouble() * xBound),
+					(int) (randomDouble() * yBound),
 					i);
 		}
-		for(City c : cities)
-		{
-			c.calculateCityDistances(cities);
-		}
+		City.calculateCityDistances(cities, ConfigurationManager.instance().getDistanceLayout(),
+				ConfigurationManager.instance().getCandidateListSize());
 		
 		return cities;
 	}
 	
-	/**
-	 * Implements a tuple collection <X,Y> such that:
-	 *   - Upon creation all tuples are valid (i.e they are paired)
-	 *   - When removing an X, it retains the Y value in a seperate collection and invalidates the given pair
-	 *   - The Collection of remaining Ys can be accessed easily and efficiently 
-	 *  
-	 * The main use for this class is for pairing genotypes by Parent/Child pair
-	 * 
-	 * @author harry
-	 *
-	 * @param <T>
-	 */
-	public static class TupleCollection<T>
-	{
-		private final List<T> totalXList;
-		private final List<T> totalYList;
-		
-		private List<T> remainingYList;
-		private List<T> solitaryYs;
-
-		List<Integer> validPairIndices;
-		
-		int lastSelectedPairIndex; // For performance optimization
-		
-		public TupleCollection(T[] xs, T[] ys)
-		{
-			totalXList = new ArrayList<T>(Arrays.asList(xs));
-			totalYList  = new ArrayList<T>(Arrays.asList(ys));
-			remainingYList = new ArrayList<T>(Arrays.asList(ys));
-			solitaryYs = new ArrayList<T>();
-			lastSelectedPairIndex = -1;
-			
-			validPairIndices = new ArrayList<Integer>();
-			for(int i = 0; i < totalYList.size() ; ++i)
-				validPairIndices.add(i);
-		}
-		
-		public List<T> getYs()
-		{
-			return remainingYList;
-		}
-		
-		public int remainingPairs()
-		{
-			return validPairIndices.size();
-		}
-		
-		public void remove(T toRemove)
-		{			
-			if(totalXList.get(lastSelectedPairIndex) == toRemove) // Winner is parent
-			{
-				validPairIndices.remove(Integer.valueOf(lastSelectedPairIndex));
-				solitaryYs.add(totalYList.get(lastSelectedPairIndex));
-				return;	
-			}
-			else // It is a child 
-			{
-				// Remove from list of children
-				if(!remainingYList.remove(toRemove))
-				{
-					System.err.println("Could not find child to remove! This should not happen");
-					System.exit(1);
-				}
-				
-				// Option 1 : It is already a solitary child
-				if(solitaryYs.contains(toRemove))
-				{
-					solitaryYs.remove(toRemove);
-					return;
-				}
-				// Option 2 : It is still a valid pair - Find it + remove it
-				Iterator<Integer> indexIt = validPairIndices.iterator();
-				while(indexIt.hasNext())
-				{
-					Integer index = indexIt.next();
-					if(totalYList.get(index) == toRemove)
-					{
-						indexIt.remove();
-						return;
-					}
-				}
-			}
-			
-			// Should NEVER come here
-			System.err.println("Could not find child to remove! This should not happen");
-			System.exit(1);
-		}
-		
-		/**
-		 * Utility method which prints the pairs in human-readable format
-		 */
-		public void printValidPairs()
-		{
-			for(Integer i : validPairIndices)
-			{
-				System.out.print(i + " --> ");
-				System.out.print("[" + ((Chromosome)totalXList.get(i)).getCost() + " , " + ((Chromosome)totalYList.get(i)).getCost() + "]   ");
-			}
-		}
-		
-		/**
-		 * Retrieve a random pair
-		 * 
-		 * @return
-		 */
-		public List<T> getRandomPair()
-		{
-			if(validPairIndices.isEmpty()) // No more valid pairs, return an empty list
-				return new ArrayList<T>();
-			
-			List<T> ret = new ArrayList<>();
-			int randomIndex = validPairIndices.get(Utils.random(0, validPairIndices.size()-1));
-			ret.add(totalXList.get(randomIndex));
-			ret.add(totalYList.get(randomIndex));
-			lastSelectedPairIndex = randomIndex;
-			return ret;
-		}
-	}
-	
 	/**
 	 * Implements a simple timer with stop/start capabilities
 	 * 